@@ -8,6 +8,7 @@ bin_hadoop=`echo target/lib/*.jar target/lefex*.jar`  # binaries are in the defa
 hadoop_xmx_mb=8192
 hadoop_mb=8000
 queue=shortrunning
+threads=1  # mapper threads per container, each thread loads its own copy of the models
 corpus=$1
 output=$2
 
@@ -36,6 +37,7 @@ HADOOP_CLASSPATH=$path hadoop \
     -Dmapred.max.split.size=2000000 \
     -Dholing.mwe.vocabulary=src/main/resources/data/voc-ner.csv \
     -Dholing.mwe.ner=true \
+    -Dholing.threads=$threads \
     $corpus \
     $output \
     false
@@ -0,0 +1,110 @@
+package de.uhh.lt.lefex.CoNLL;
+
+import de.tudarmstadt.ukp.dkpro.core.api.lexmorph.type.pos.POS;
+import de.tudarmstadt.ukp.dkpro.core.api.ner.type.NamedEntity;
+import de.tudarmstadt.ukp.dkpro.core.api.segmentation.type.Lemma;
+import de.tudarmstadt.ukp.dkpro.core.api.segmentation.type.Sentence;
+import de.tudarmstadt.ukp.dkpro.core.api.syntax.type.dependency.Dependency;
+import de.tudarmstadt.ukp.dkpro.core.api.segmentation.type.Token;
+import org.apache.uima.jcas.JCas;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Rebuilds the annotations of a sentence written by HadoopMap -- tokens, lemmas, part-of-speech tags, dependencies
+ * and named entities -- in a JCas, so that the parsed corpus can be processed like the output of the NLP pipeline.
+ * The document text is the tokens separated by single spaces. Empty columns are missing annotations: an empty lemma
+ * gives a Lemma without value, as the lemmatizer leaves it for tokens it can not lemmatize, so lemmatized holing
+ * skips the token, and an empty part of speech, an unknown governor or an empty entity tag give no annotation. Lines
+ * with another number of columns than 10 are skipped.
+ */
+public class CasLoader {
+
+    /**
+     * Loads one sentence block, i.e. the comment lines and the token lines between two empty lines.
+     * Returns false if the block contains no tokens, e.g. for the "# newdoc" blocks.
+     * */
+    public static boolean load(JCas jCas, String block, boolean loadEntities) {
+        List<Line> lines = new ArrayList<>();
+        for (String text : block.split("\n")) {
+            // only the line break is removed, the last column can be empty
+            Line line = Line.parse(text.endsWith("\r") ? text.substring(0, text.length() - 1) : text);
+            if (line != null) lines.add(line);
+        }
+        if (lines.isEmpty()) return false;
+
+        StringBuilder text = new StringBuilder();
+        int[] begins = new int[lines.size()];
+        for (int i = 0; i < lines.size(); i++) {
+            if (i > 0) text.append(' ');
+            begins[i] = text.length();
+            text.append(lines.get(i).token);
+        }
+        jCas.setDocumentText(text.toString());
+        jCas.setDocumentLanguage("en");
+        new Sentence(jCas, 0, text.length()).addToIndexes();
+
+        HashMap<Integer, Token> idToToken = new HashMap<>();
+        List<Token> tokens = new ArrayList<>();
+        for (int i = 0; i < lines.size(); i++) {
+            Line line = lines.get(i);
+            int begin = begins[i];
+            int end = begin + line.token.length();
+            Token token = new Token(jCas, begin, end);
+            Lemma lemma = new Lemma(jCas, begin, end);
+            lemma.setValue(line.lemma.isEmpty() ? null : line.lemma);
+            lemma.addToIndexes();
+            token.setLemma(lemma);
+            if (!line.posFull.isEmpty()) {
+                POS pos = new POS(jCas, begin, end);
+                pos.setPosValue(line.posFull);
+                pos.addToIndexes();
+                token.setPos(pos);
+            }
+            token.addToIndexes();
+            idToToken.put(line.idSrc, token);
+            tokens.add(token);
+        }
+
+        for (int i = 0; i < lines.size(); i++) {
+            Line line = lines.get(i);
+            Token governor = idToToken.get(line.idDst);
+            if (governor == null) continue;
+            Token dependent = tokens.get(i);
+            Dependency dep = new Dependency(jCas, dependent.getBegin(), dependent.getEnd());
+            dep.setGovernor(governor);
+            dep.setDependent(dependent);
+            dep.setDependencyType(line.depType);
+            dep.addToIndexes();
+        }
+
+        if (loadEntities) {
+            int entityBegin = -1;
+            int entityEnd = -1;
+            String entityType = null;
+            for (int i = 0; i <= lines.size(); i++) {
+                String bio = i < lines.size() ? lines.get(i).bio : "O";
+                boolean continues = bio.startsWith("I-") && entityType != null && entityType.equals(bio.substring(2));
+                if (continues) {
+                    entityEnd = tokens.get(i).getEnd();
+                    continue;
+                }
+                if (entityType != null) addEntity(jCas, entityBegin, entityEnd, entityType);
+                entityType = null;
+                if (bio.startsWith("B-") || bio.startsWith("I-")) {
+                    entityBegin = tokens.get(i).getBegin();
+                    entityEnd = tokens.get(i).getEnd();
+                    entityType = bio.substring(2);
+                }
+            }
+        }
+        return true;
+    }
+
+    private static void addEntity(JCas jCas, int begin, int end, String type) {
+        NamedEntity entity = new NamedEntity(jCas, begin, end);
+        entity.setValue(type);
+        entity.addToIndexes();
+    }
+}
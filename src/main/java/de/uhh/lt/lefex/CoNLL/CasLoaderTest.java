@@ -0,0 +1,63 @@
+package de.uhh.lt.lefex.CoNLL;
+
+import de.tudarmstadt.ukp.dkpro.core.api.ner.type.NamedEntity;
+import de.tudarmstadt.ukp.dkpro.core.api.segmentation.type.Token;
+import de.tudarmstadt.ukp.dkpro.core.api.syntax.type.dependency.Dependency;
+import de.uhh.lt.lefex.Utils.EnginePool;
+import org.apache.uima.fit.util.JCasUtil;
+import org.apache.uima.jcas.JCas;
+import org.junit.Test;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class CasLoaderTest {
+
+    @Test
+    public void sentenceIsLoaded() throws Exception {
+        JCas jCas = EnginePool.acquireJCas(false);
+        String block = "# sent_id = 1\n"
+                + "1\tPeter\tPeter\tNNP\tNNP\t_\t2\tnsubj\t_\tB-PERSON\n"
+                + "2\tsleeps\tsleep\tVBZ\tVBZ\t_\t0\tROOT\t_\tO\n";
+        assertTrue(CasLoader.load(jCas, block, true));
+        assertEquals("Peter sleeps", jCas.getDocumentText());
+
+        List<Token> tokens = new ArrayList<>(JCasUtil.select(jCas, Token.class));
+        assertEquals(2, tokens.size());
+        assertEquals("sleep", tokens.get(1).getLemma().getValue());
+        assertEquals("VBZ", tokens.get(1).getPos().getPosValue());
+        Dependency dep = JCasUtil.selectSingle(jCas, Dependency.class);
+        assertEquals("nsubj", dep.getDependencyType());
+        assertEquals(tokens.get(1), dep.getGovernor());
+        assertEquals("PERSON", JCasUtil.selectSingle(jCas, NamedEntity.class).getValue());
+    }
+
+    @Test
+    public void emptyColumnsAreMissingAnnotations() throws Exception {
+        JCas jCas = EnginePool.acquireJCas(false);
+        // no lemma, no part of speech, a governor that is not in the sentence and no entity tag
+        String block = "1\tfoo\t\t\t\t_\t7\tdep\t_\t\n";
+        assertTrue(CasLoader.load(jCas, block, true));
+
+        Token token = JCasUtil.selectSingle(jCas, Token.class);
+        assertNotNull(token.getLemma());
+        assertNull("An empty lemma column must give a lemma without value.", token.getLemma().getValue());
+        assertNull(token.getPos());
+        assertTrue(JCasUtil.select(jCas, Dependency.class).isEmpty());
+        assertTrue(JCasUtil.select(jCas, NamedEntity.class).isEmpty());
+    }
+
+    @Test
+    public void linesWithMissingColumnsAreSkipped() throws Exception {
+        JCas jCas = EnginePool.acquireJCas(false);
+        String block = "1\tPeter\tPeter\tNNP\tNNP\t_\t2\tnsubj\t_\n"
+                + "2\tsleeps\tsleep\tVBZ\tVBZ\t_\t0\tROOT\t_\tO\n";
+        assertTrue(CasLoader.load(jCas, block, false));
+        assertEquals("sleeps", jCas.getDocumentText());
+
+        jCas.reset();
+        assertFalse("A block without complete token lines must not be loaded.",
+                CasLoader.load(jCas, "# newdoc\n1\tPeter\tPeter\n", false));
+    }
+}
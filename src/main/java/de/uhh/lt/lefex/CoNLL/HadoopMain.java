@@ -1,5 +1,8 @@
 package de.uhh.lt.lefex.CoNLL;
 
+import de.uhh.lt.lefex.Utils.CostBalancedTextInputFormat;
+import de.uhh.lt.lefex.Utils.RecordWatchdog;
+import de.uhh.lt.lefex.Utils.SampledTextInputFormat;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.conf.Configured;
 import org.apache.hadoop.fs.Path;
@@ -22,6 +25,7 @@ public class HadoopMain extends Configured implements Tool {
         Job job = Job.getInstance(conf);
         job.setJarByClass(HadoopMain.class);
         FileInputFormat.addInputPath(job, new Path(inDir));
+        if (!SampledTextInputFormat.configure(job)) CostBalancedTextInputFormat.configure(job);
         FileOutputFormat.setOutputPath(job, new Path(outDir));
 
         job.setMapperClass(HadoopMap.class);
@@ -30,6 +34,7 @@ public class HadoopMain extends Configured implements Tool {
         job.setOutputKeyClass(Text.class);
         job.setOutputValueClass(NullWritable.class);
         job.setNumReduceTasks(0);
+        RecordWatchdog.addSkippedOutput(job);
         job.setJobName("lefex: CoNLL");
 
         String[] mwePaths = conf.getStrings("mweVocabulary", "");
@@ -9,7 +9,12 @@ import de.tudarmstadt.ukp.dkpro.core.opennlp.OpenNlpPosTagger;
 import de.tudarmstadt.ukp.dkpro.core.stanfordnlp.StanfordLemmatizer;
 import de.tudarmstadt.ukp.dkpro.core.stanfordnlp.StanfordNamedEntityRecognizer;
 import de.tudarmstadt.ukp.dkpro.core.stanfordnlp.StanfordSegmenter;
+import de.uhh.lt.lefex.Utils.EnginePool;
+import de.uhh.lt.lefex.Utils.MapperMetrics;
+import de.uhh.lt.lefex.Utils.RecordWatchdog;
+import de.uhh.lt.lefex.Utils.SentenceFilter;
 import org.apache.commons.io.IOUtils;
+import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.io.LongWritable;
 import org.apache.hadoop.io.NullWritable;
 import org.apache.hadoop.io.Text;
@@ -17,11 +22,9 @@ import org.apache.hadoop.mapreduce.Mapper;
 import org.apache.log4j.Logger;
 import org.apache.uima.analysis_engine.AnalysisEngine;
 import org.apache.uima.cas.CASException;
-import org.apache.uima.fit.factory.AnalysisEngineFactory;
 import org.apache.uima.fit.util.JCasUtil;
 import org.apache.uima.jcas.JCas;
 import org.apache.uima.resource.ResourceInitializationException;
-import org.apache.uima.util.CasCreationUtils;
 import java.io.*;
 import java.nio.file.Files;
 import java.util.Collection;
@@ -32,20 +35,17 @@ import de.tudarmstadt.ukp.dkpro.core.stanfordnlp.StanfordParser;
 import org.jsoup.Jsoup;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
-import static org.apache.uima.fit.factory.TypeSystemDescriptionFactory.createTypeSystemDescription;
 import org.jobimtext.collapsing.annotator.CollapsedDependenciesAnnotator;
 import org.jobimtext.collapsing.type.NewCollapsedDependency;
 
 
 public class HadoopMap extends Mapper<LongWritable, Text, Text, NullWritable> {
     Logger log = Logger.getLogger("de.uhh.lt.lefex");
-    AnalysisEngine segmenter;
-    AnalysisEngine posTagger;
-    AnalysisEngine lemmatizer;
-    AnalysisEngine parser;
-    AnalysisEngine collapser;
-    AnalysisEngine nerEngine;
-    JCas jCas;
+    Engines engines;
+    JCas jCas; // the CAS of engines
+    RecordWatchdog watchdog;
+    boolean sharedEngines;
+    String rulesPath;
     boolean collapsing;
     String parserName;
     boolean verbose = false;
@@ -57,9 +57,30 @@ public class HadoopMap extends Mapper<LongWritable, Text, Text, NullWritable> {
     Pattern htmlRegex = Pattern.compile("<[a-z ='\"/:0-9]+[^>]*>");
     Pattern latinTextRegex = Pattern.compile("^[#±§-‒–—―©®™½¾@€£$¥&\u20BD\u00A0\u00AD%\\[\\])(（）;:,\\..?!\"'×Þß÷þøA-zÀ-ÿćęłńóśźżĄĆĘŁŃÓŚŹŻ0-9\\s-\\t/+α-ωΑ-Ω-]+$");
     Pattern someLettersRegex = Pattern.compile("[A-z]+");
+    MapperMetrics metrics;
+    MapperMetrics.Counter numSkippedLongSentences;
+    MapperMetrics.Counter numTokensTotal;
+    MapperMetrics.Counter numTokensSkipped;
+    MapperMetrics.Counter numTokens;
+    MapperMetrics.Counter numEntityOccurrences;
+    MapperMetrics.Counter numDependencies;
+    MapperMetrics.Counter numProcessedSentences;
+    MapperMetrics.Counter numProcessedDocuments;
+    MapperMetrics.Timer outputTime;
 
     @Override
     public void setup(Context context) throws IOException, InterruptedException {
+        metrics = new MapperMetrics(context.getConfiguration());
+        numSkippedLongSentences = metrics.counter("de.uhh.lt.lefex", "NUM_SKIPPED_SENTENCES_2");
+        numTokensTotal = metrics.counter("de.uhh.lt.lefex", "NUM_TOKENS_TOTAL");
+        numTokensSkipped = metrics.counter("de.uhh.lt.lefex", "NUM_TOKENS_SKIPPED");
+        numTokens = metrics.counter("de.uhh.lt.lefex", "NUM_TOKENS");
+        numEntityOccurrences = metrics.counter("de.uhh.lt.lefex", "NUM_ENTITY_OCCURRENCES");
+        numDependencies = metrics.counter("de.uhh.lt.lefex", "NUM_DEPENDENCIES");
+        numProcessedSentences = metrics.counter("de.uhh.lt.lefex", "NUM_PROCESSED_SENTENCES");
+        numProcessedDocuments = metrics.counter("de.uhh.lt.lefex", "NUM_PROCESSED_DOCUMENTS");
+        outputTime = metrics.timer("OUTPUT");
+
         context.write(new Text("# parser = MaltParser Language: English. Parser configuration: Stack. Transition system: Projective. Model: de.tudarmstadt.ukp.dkpro.core.maltparser-upstream-parser-en-linear. Model version: 20120312."), NullWritable.get());
 
         parserName = context.getConfiguration().getStrings("parserName", "malt")[0];
@@ -72,42 +93,98 @@ public class HadoopMap extends Mapper<LongWritable, Text, Text, NullWritable> {
         if (!inputType.equals(DOCUMENT) && !inputType.equals(SENTENCE)) inputType = SENTENCE;
         log.info("Input type ('sentence' or 'document'): " + inputType);
 
+        watchdog = new RecordWatchdog(context, "de.uhh.lt.lefex");
+        log.info("Record budget (0 -- none): " + watchdog.getTimeoutMs() + " ms, " + watchdog.getMaxBytes() + " bytes");
+
+        sharedEngines = context.getConfiguration().getBoolean(EnginePool.SHARED, true);
+        if (collapsing) rulesPath = extractRulesFile();
+        engines = createEngines(context);
+        jCas = engines.jCas;
+    }
+
+    /**
+     * The engines and the CAS of a mapper. They are replaced together when the analysis of a record runs over its
+     * time budget, as the abandoned worker thread may still use them, see RecordWatchdog. The analysis times its
+     * stages with the metrics of the engines, which map() adds to those of the mapper when the analysis is done.
+     */
+    static class Engines {
+        AnalysisEngine segmenter;
+        AnalysisEngine posTagger;
+        AnalysisEngine lemmatizer;
+        AnalysisEngine parser;
+        AnalysisEngine collapser;
+        AnalysisEngine nerEngine;
+        JCas jCas;
+        final MapperMetrics metrics;
+        final MapperMetrics.Counter numSkippedSentences;
+        final MapperMetrics.Timer cleanupTime;
+        final MapperMetrics.Timer segmenterTime;
+        final MapperMetrics.Timer posTaggerTime;
+        final MapperMetrics.Timer lemmatizerTime;
+        final MapperMetrics.Timer nerTime;
+        final MapperMetrics.Timer parserTime;
+        final MapperMetrics.Timer collapserTime;
+
+        Engines(Configuration conf) {
+            metrics = new MapperMetrics(conf);
+            numSkippedSentences = metrics.counter("de.uhh.lt.lefex", "NUM_SKIPPED_SENTENCES");
+            cleanupTime = metrics.timer("HTML_CLEANUP");
+            segmenterTime = metrics.timer("SEGMENTER");
+            posTaggerTime = metrics.timer("POS_TAGGER");
+            lemmatizerTime = metrics.timer("LEMMATIZER");
+            nerTime = metrics.timer("NER");
+            parserTime = metrics.timer("PARSER");
+            collapserTime = metrics.timer("COLLAPSER");
+        }
+
+        void release() {
+            EnginePool.release(segmenter, posTagger, lemmatizer, parser, collapser, nerEngine, jCas);
+        }
+
+        /** Drops the engines and the CAS of an abandoned analysis from the pool. */
+        void discard() {
+            EnginePool.discard(segmenter, posTagger, lemmatizer, parser, collapser, nerEngine, jCas);
+        }
+    }
+
+    private Engines createEngines(Context context) {
+        Engines engines = new Engines(context.getConfiguration());
         try {
-            segmenter = AnalysisEngineFactory.createEngine(StanfordSegmenter.class);
-            posTagger = AnalysisEngineFactory.createEngine(OpenNlpPosTagger.class);
-            lemmatizer = AnalysisEngineFactory.createEngine(StanfordLemmatizer.class);
+            engines.segmenter = EnginePool.acquire(sharedEngines, StanfordSegmenter.class);
+            engines.posTagger = EnginePool.acquire(sharedEngines, OpenNlpPosTagger.class);
+            engines.lemmatizer = EnginePool.acquire(sharedEngines, StanfordLemmatizer.class);
             if (parserName.toLowerCase().contains("malt")) {
                 synchronized (MaltParser.class) {
-                    parser = AnalysisEngineFactory.createEngine(MaltParser.class);
+                    engines.parser = EnginePool.acquire(sharedEngines, MaltParser.class);
                 }
             }
             else if (parserName.toLowerCase().contains("stanford")) {
-                parser = AnalysisEngineFactory.createEngine(StanfordParser.class,
+                engines.parser = EnginePool.acquire(sharedEngines, StanfordParser.class,
                         StanfordParser.PARAM_VARIANT, "pcfg",
                         StanfordParser.PARAM_LANGUAGE, "en");
             }
             else {
                 synchronized (MaltParser.class) {
-                    parser = AnalysisEngineFactory.createEngine(MaltParser.class);
+                    engines.parser = EnginePool.acquire(sharedEngines, MaltParser.class);
                 }
             }
             if (collapsing){
-                String rulesPath = extractRulesFile();
-                collapser = AnalysisEngineFactory.createEngine(
+                engines.collapser = EnginePool.acquire(sharedEngines,
                         CollapsedDependenciesAnnotator.class,
                         CollapsedDependenciesAnnotator.RULE_MANAGER, rulesPath);
             }
 
-            nerEngine = AnalysisEngineFactory.createEngine(StanfordNamedEntityRecognizer.class,
+            engines.nerEngine = EnginePool.acquire(sharedEngines, StanfordNamedEntityRecognizer.class,
                     StanfordNamedEntityRecognizer.PARAM_LANGUAGE, "en",
                     StanfordNamedEntityRecognizer.PARAM_VARIANT, "all.3class.distsim.crf");
 
-            jCas = CasCreationUtils.createCas(createTypeSystemDescription(), null, null).getJCas();
+            engines.jCas = EnginePool.acquireJCas(sharedEngines);
         } catch (ResourceInitializationException e) {
             log.error("Couldn't initialize analysis engine", e);
         } catch (CASException e) {
             log.error("Couldn't create new CAS", e);
         }
+        return engines;
     }
 
     private String extractRulesFile() throws IOException {
@@ -122,19 +199,19 @@ public class HadoopMap extends Mapper<LongWritable, Text, Text, NullWritable> {
         return rulesPath.getAbsolutePath();
     }
 
-    public String cleanup(String document, Context context) {
+    public String cleanup(String document, Engines engines) {
         try {
             document = Jsoup.parse(document.replace("   ", " . ")).text();
-            jCas.reset();
-            jCas.setDocumentText(document);
-            jCas.setDocumentLanguage("en");
-            segmenter.process(jCas);
+            engines.jCas.reset();
+            engines.jCas.setDocumentText(document);
+            engines.jCas.setDocumentLanguage("en");
+            engines.segmenter.process(engines.jCas);
             StringBuilder d = new StringBuilder();
 
-            for (Sentence sentence : JCasUtil.select(jCas, Sentence.class)) {
-                Collection<Token> tokens = JCasUtil.selectCovered(jCas, Token.class, sentence.getBegin(), sentence.getEnd());
+            for (Sentence sentence : JCasUtil.select(engines.jCas, Sentence.class)) {
+                Collection<Token> tokens = JCasUtil.selectCovered(engines.jCas, Token.class, sentence.getBegin(), sentence.getEnd());
                 if (tokens.size() > maxSentenceSizeTokens) {
-                    context.getCounter("de.uhh.lt.lefex", "NUM_SKIPPED_SENTENCES").increment(1);
+                    engines.numSkippedSentences.increment(1);
                     continue;
                 }
 
@@ -182,12 +259,44 @@ public class HadoopMap extends Mapper<LongWritable, Text, Text, NullWritable> {
         return "O";
     }
 
+    /**
+     * Runs the engines on the text of a record, in the worker thread of the watchdog if there is a time budget.
+     * */
+    private Boolean analyze(Engines e, String text, boolean cleanup) throws Exception {
+        long t = System.nanoTime();
+        if (cleanup) text = cleanup(text, e);
+        t = e.cleanupTime.stop(t);
+
+        e.jCas.reset();
+        e.jCas.setDocumentText(text);
+        e.jCas.setDocumentLanguage("en");
+        e.segmenter.process(e.jCas);
+        // the sentences that are too long for the output are not tagged and parsed, they are skipped in map()
+        List<Sentence> longSentences = SentenceFilter.hideLongSentences(e.jCas, maxSentenceSizeTokens);
+        t = e.segmenterTime.stop(t);
+        e.posTagger.process(e.jCas);
+        t = e.posTaggerTime.stop(t);
+        e.lemmatizer.process(e.jCas);
+        t = e.lemmatizerTime.stop(t);
+        e.nerEngine.process(e.jCas);
+        t = e.nerTime.stop(t);
+        e.parser.process(e.jCas);
+        t = e.parserTime.stop(t);
+        if (collapsing) e.collapser.process(e.jCas);
+        SentenceFilter.restoreSentences(longSentences);
+        e.collapserTime.stop(t);
+        return true;
+    }
+
     @Override
     public void map(LongWritable key, Text line, Context context) throws IOException, InterruptedException {
+        metrics.record(context);
+        if (watchdog.skipBySize(key.get(), line.getLength())) return;
         try {
             String url = "";
             String s3 = "";
             String text = "";
+            boolean html = false;
             if (inputType.equals(SENTENCE)){
                 text = line.toString();
             } else {
@@ -195,19 +304,22 @@ public class HadoopMap extends Mapper<LongWritable, Text, Text, NullWritable> {
                 if (fields.length == 3){
                     url = fields[0];
                     s3 = fields[1];
-                    text = cleanup(fields[2], context);
+                    text = fields[2];
+                    html = true;
                 }
             }
 
-            jCas.reset();
-            jCas.setDocumentText(text);
-            jCas.setDocumentLanguage("en");
-            segmenter.process(jCas);
-            posTagger.process(jCas);
-            lemmatizer.process(jCas);
-            nerEngine.process(jCas);
-            parser.process(jCas);
-            if (collapsing) collapser.process(jCas);
+            String record = text;
+            boolean cleanup = html;
+            Engines analyzed = engines;
+            if (watchdog.call(() -> analyze(analyzed, record, cleanup), key.get(), line.getLength()) == null) {
+                // the abandoned worker may still use the engines and the CAS, the next records get new ones
+                analyzed.discard();
+                engines = createEngines(context);
+                jCas = engines.jCas;
+                return;
+            }
+            metrics.add(analyzed.metrics);
 
             // For each dependency output a field with ten columns ending with the bio named entity: http://universaldependencies.org/docs/format.html
             // IN_ID TOKEN LEMMA POS_COARSE POS_FULL MORPH ID_OUT TYPE _ NE_BIO
@@ -216,23 +328,24 @@ public class HadoopMap extends Mapper<LongWritable, Text, Text, NullWritable> {
 
             if (inputType.equals(DOCUMENT)){
                 context.write(new Text("\n# newdoc\turl = " + url + "\ts3 = " + s3), NullWritable.get());
-                context.getCounter("de.uhh.lt.lefex", "NUM_PROCESSED_DOCUMENTS").increment(1);
+                numProcessedDocuments.increment(1);
             }
 
             int sentenceId = 1;
             for (Sentence sentence : JCasUtil.select(jCas, Sentence.class)) {
+                long sentenceStart = System.nanoTime();
                 Collection<Token> tokens = JCasUtil.selectCovered(jCas, Token.class, sentence.getBegin(), sentence.getEnd());
-                context.getCounter("de.uhh.lt.lefex", "NUM_TOKENS_TOTAL").increment(tokens.size());
+                numTokensTotal.increment(tokens.size());
                 if (tokens.size() > maxSentenceSizeTokens) {
-                    context.getCounter("de.uhh.lt.lefex", "NUM_SKIPPED_SENTENCES_2").increment(1);
-                    context.getCounter("de.uhh.lt.lefex", "NUM_TOKENS_SKIPPED").increment(tokens.size());
+                    numSkippedLongSentences.increment(1);
+                    numTokensSkipped.increment(tokens.size());
                     continue;
                 }
-                context.getCounter("de.uhh.lt.lefex", "NUM_TOKENS").increment(tokens.size());
+                numTokens.increment(tokens.size());
 
                 HashMap<Token, Integer> tokenToID = collectionToMap(tokens);
                 List<NamedEntity> ngrams = JCasUtil.selectCovered(jCas, NamedEntity.class, sentence);
-                context.getCounter("de.uhh.lt.lefex", "NUM_ENTITY_OCCURRENCES").increment(ngrams.size());
+                numEntityOccurrences.increment(ngrams.size());
                 context.write(new Text("\n# sent_id = " + url + "#" + sentenceId), NullWritable.get());
                 context.write(new Text("# text = " + sentence.getCoveredText()), NullWritable.get());
 
@@ -262,7 +375,7 @@ public class HadoopMap extends Mapper<LongWritable, Text, Text, NullWritable> {
                             getBIO(ngrams, dep.getBegin(), dep.getEnd())
                     );
                     conllLines.put(idSrc, l);
-                    context.getCounter("de.uhh.lt.lefex", "NUM_DEPENDENCIES").increment(1);
+                    numDependencies.increment(1);
                 }
 
                 for (Integer id : conllLines.keySet()) {
@@ -270,8 +383,9 @@ public class HadoopMap extends Mapper<LongWritable, Text, Text, NullWritable> {
                     context.write(new Text(res), NullWritable.get());
                 }
 
-                context.getCounter("de.uhh.lt.lefex", "NUM_PROCESSED_SENTENCES").increment(1);
+                numProcessedSentences.increment(1);
                 sentenceId += 1;
+                metrics.sentenceHoling(tokens.size(), outputTime.stop(sentenceStart) - sentenceStart);
             }
         } catch(Exception e){
             if (verbose) log.error("Can't process line: " + line.toString(), e);
@@ -279,6 +393,13 @@ public class HadoopMap extends Mapper<LongWritable, Text, Text, NullWritable> {
         }
     }
 
+    @Override
+    public void cleanup(Context context) throws IOException, InterruptedException {
+        metrics.publish(context);
+        watchdog.close();
+        engines.release();
+    }
+
     private HashMap<Token, Integer> collectionToMap(Collection<Token> tokens){
         HashMap<Token,Integer> token2id = new HashMap<>();
         Integer id = 0;
@@ -31,6 +31,21 @@ public class Line {
                 idSrc, token, lemma, pos, posFull, morph, idDst, depType, enhancedDepType, bio);
     }
 
+    /**
+     * Parses a line written by getText(). Returns null for comments, empty and malformed lines.
+     * */
+    public static Line parse(String text){
+        if (text.isEmpty() || text.startsWith("#")) return null;
+        String[] fields = text.split("\t", -1);
+        if (fields.length != 10) return null;
+        try {
+            return new Line(Integer.parseInt(fields[0]), fields[1], fields[2], fields[3], fields[4], fields[5],
+                    Integer.parseInt(fields[6]), fields[7], fields[8], fields[9]);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
     public String getTextNoId(){
         return String.format("%s\t%s\t%s\t%s\t%s\t%d\t%s\t%s\t%s",
                 token, lemma, pos, posFull, morph, idDst, depType, enhancedDepType, bio);
@@ -0,0 +1,37 @@
+package de.uhh.lt.lefex.EncodeFeatureIds;
+
+import de.uhh.lt.lefex.Utils.ChannelKey;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.VLongWritable;
+import org.apache.hadoop.mapreduce.Mapper;
+import java.io.IOException;
+
+/**
+ * Reads the "word<TAB>feature<TAB>count" lines of the WF output and emits the word and the feature with the count.
+ * The vocabularies are taken from WF and not from W and F, because the words of W may differ from the words of WF,
+ * e.g. W contains part-of-speech tags that trigram holing does not output.
+ */
+public class DictionaryMap extends Mapper<LongWritable, Text, ChannelKey, VLongWritable> {
+    private final ChannelKey outKey = new ChannelKey();
+    private final VLongWritable outCount = new VLongWritable();
+
+    @Override
+    public void map(LongWritable key, Text line, Context context) throws IOException, InterruptedException {
+        byte[] bytes = line.getBytes();
+        int length = line.getLength();
+        int first = 0;
+        while (first < length && bytes[first] != '\t') first++;
+        int last = length - 1;
+        while (last > first && bytes[last] != '\t') last--;
+        if (last <= first) {
+            context.getCounter("de.uhh.lt.lefex", "NUM_MALFORMED_LINES").increment(1);
+            return;
+        }
+        outCount.set(Long.parseLong(Text.decode(bytes, last + 1, length - last - 1)));
+        outKey.set(ChannelKey.W, bytes, 0, first);
+        context.write(outKey, outCount);
+        outKey.set(ChannelKey.F, bytes, first + 1, last - first - 1);
+        context.write(outKey, outCount);
+    }
+}
@@ -0,0 +1,51 @@
+package de.uhh.lt.lefex.EncodeFeatureIds;
+
+import de.uhh.lt.lefex.Utils.ChannelKey;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.VLongWritable;
+import org.apache.hadoop.mapreduce.Reducer;
+import org.apache.hadoop.mapreduce.lib.output.MultipleOutputs;
+import java.io.IOException;
+
+/**
+ * Runs as the only reducer and assigns the ids 0, 1, 2, ... to the words and to the features in byte order of the
+ * terms, so the position of a term in the sorted dictionary is its id. Writes "id<TAB>term<TAB>count" lines, where
+ * count is the sum of the word-feature counts of the term.
+ */
+public class DictionaryReduce extends Reducer<ChannelKey, VLongWritable, Text, LongWritable> {
+    public static final String WORDS = "WordIds";
+    public static final String FEATURES = "FeatureIds";
+    private static final byte[] TAB = {'\t'};
+
+    private MultipleOutputs<Text, LongWritable> mos;
+    private final Text outKey = new Text();
+    private final LongWritable outCount = new LongWritable();
+    private int nextWordId = 0;
+    private int nextFeatureId = 0;
+
+    @Override
+    public void setup(Context context) {
+        mos = new MultipleOutputs<>(context);
+    }
+
+    @Override
+    public void cleanup(Context context) throws IOException, InterruptedException {
+        mos.close();
+        context.getCounter("de.uhh.lt.lefex", "NUM_WORD_IDS").increment(nextWordId);
+        context.getCounter("de.uhh.lt.lefex", "NUM_FEATURE_IDS").increment(nextFeatureId);
+    }
+
+    @Override
+    public void reduce(ChannelKey key, Iterable<VLongWritable> counts, Context context) throws IOException, InterruptedException {
+        long sum = 0;
+        for (VLongWritable count : counts) sum += count.get();
+
+        int id = key.getChannel() == ChannelKey.F ? nextFeatureId++ : nextWordId++;
+        outKey.set(Integer.toString(id));
+        outKey.append(TAB, 0, 1);
+        outKey.append(key.getBytes(), 0, key.getLength());
+        outCount.set(sum);
+        mos.write(key.getChannel() == ChannelKey.F ? FEATURES : WORDS, outKey, outCount);
+    }
+}
@@ -0,0 +1,87 @@
+package de.uhh.lt.lefex.EncodeFeatureIds;
+
+import de.uhh.lt.lefex.Utils.SortedTermIndex;
+import org.apache.hadoop.io.IntWritable;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapreduce.Mapper;
+import org.apache.hadoop.util.LineReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+
+/**
+ * Replaces the word and the feature of the "word<TAB>feature<TAB>count" lines of the WF output by their ids. The
+ * dictionaries are looked up with the raw bytes of the line.
+ */
+public class EncodeMap extends Mapper<LongWritable, Text, LongWritable, IntWritable> {
+    public static final String WORDS_CACHE_NAME = "word_ids";
+    public static final String FEATURES_CACHE_NAME = "feature_ids";
+
+    private SortedTermIndex words;
+    private SortedTermIndex features;
+    private final LongWritable outIds = new LongWritable();
+    private final IntWritable outCount = new IntWritable();
+
+    @Override
+    public void setup(Context context) throws IOException {
+        words = loadDictionary(new File(WORDS_CACHE_NAME));
+        features = loadDictionary(new File(FEATURES_CACHE_NAME));
+        context.getCounter("de.uhh.lt.lefex", "NUM_WORD_IDS_LOADED").setValue(words.size());
+        context.getCounter("de.uhh.lt.lefex", "NUM_FEATURE_IDS_LOADED").setValue(features.size());
+    }
+
+    /**
+     * Reads a dictionary written by DictionaryReduce. Its lines are sorted by term, so the line number is the id.
+     * */
+    static SortedTermIndex loadDictionary(File file) throws IOException {
+        SortedTermIndex index = new SortedTermIndex();
+        try (FileInputStream in = new FileInputStream(file)) {
+            LineReader reader = new LineReader(in);
+            Text line = new Text();
+            while (reader.readLine(line) > 0) {
+                byte[] bytes = line.getBytes();
+                int first = 0;
+                while (first < line.getLength() && bytes[first] != '\t') first++;
+                int last = line.getLength() - 1;
+                while (last > first && bytes[last] != '\t') last--;
+                if (last <= first) throw new IOException("Malformed dictionary line in " + file + ": " + line);
+                int id = index.add(bytes, first + 1, last - first - 1);
+                if (id != Integer.parseInt(Text.decode(bytes, 0, first))) {
+                    throw new IOException("Dictionary " + file + " is not sorted by id at line " + (id + 1));
+                }
+            }
+        }
+        return index;
+    }
+
+    @Override
+    public void map(LongWritable key, Text line, Context context) throws IOException, InterruptedException {
+        byte[] bytes = line.getBytes();
+        int length = line.getLength();
+        int first = 0;
+        while (first < length && bytes[first] != '\t') first++;
+        int last = length - 1;
+        while (last > first && bytes[last] != '\t') last--;
+        if (last <= first) {
+            context.getCounter("de.uhh.lt.lefex", "NUM_MALFORMED_LINES").increment(1);
+            return;
+        }
+
+        int wordId = words.find(bytes, 0, first);
+        int featureId = features.find(bytes, first + 1, last - first - 1);
+        if (wordId < 0 || featureId < 0) {
+            context.getCounter("de.uhh.lt.lefex", "NUM_UNKNOWN_TERMS").increment(1);
+            return;
+        }
+        outIds.set(TripleOutputFormat.pack(wordId, featureId));
+        long count = Long.parseLong(Text.decode(bytes, last + 1, length - last - 1));
+        if (count > Integer.MAX_VALUE) {
+            // the triples have 32 bit counts
+            context.getCounter("de.uhh.lt.lefex", "NUM_SATURATED_COUNTS").increment(1);
+            count = Integer.MAX_VALUE;
+        }
+        outCount.set((int) count);
+        context.write(outIds, outCount);
+    }
+}
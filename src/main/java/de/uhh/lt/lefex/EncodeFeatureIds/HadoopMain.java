@@ -0,0 +1,124 @@
+package de.uhh.lt.lefex.EncodeFeatureIds;
+
+import java.net.URI;
+import java.util.Arrays;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.conf.Configured;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.IntWritable;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.VLongWritable;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
+import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
+import org.apache.hadoop.mapreduce.lib.output.LazyOutputFormat;
+import org.apache.hadoop.mapreduce.lib.output.MultipleOutputs;
+import org.apache.hadoop.mapreduce.lib.output.TextOutputFormat;
+import org.apache.hadoop.util.Tool;
+import org.apache.hadoop.util.ToolRunner;
+import de.uhh.lt.lefex.Utils.ChannelKey;
+import de.uhh.lt.lefex.Utils.FrontCodedFile;
+import de.uhh.lt.lefex.Utils.FrontCodedTextInputFormat;
+import de.uhh.lt.lefex.Utils.VLongSumReducer;
+
+/**
+ * Encodes the WF output of ExtractTermFeatureScores with dense integer ids. The first job writes the dictionaries
+ * <output>/dict/WordIds-r-00000 and <output>/dict/FeatureIds-r-00000 ("id<TAB>term<TAB>count"), the second job
+ * writes the word-feature counts as binary (wordId, featureId, count) triples to <output>/WF/WF-m-*.bin.
+ */
+public class HadoopMain extends Configured implements Tool {
+
+	/**
+	 * Reads front-coded WF outputs as "word<TAB>feature<TAB>count" lines, so the mappers work for both formats.
+	 * */
+	private static void setInputFormat(Job job, String wfGlob) throws Exception {
+		Path glob = new Path(wfGlob);
+		FileStatus[] files = glob.getFileSystem(job.getConfiguration()).globStatus(glob);
+		if (files != null && files.length > 0 && files[0].getPath().getName().endsWith(FrontCodedFile.EXTENSION)) {
+			job.setInputFormatClass(FrontCodedTextInputFormat.class);
+		}
+	}
+
+	private Configuration newConf() {
+		Configuration conf = new Configuration(getConf());
+		// The inputs are lines of text, whatever input the feature extraction had
+		conf.unset("textinputformat.record.delimiter");
+		return conf;
+	}
+
+	private boolean runDictionaryJob(String wfGlob, Path dictDir) throws Exception {
+		Configuration conf = newConf();
+		conf.setBoolean("mapred.output.compress", false);
+		Job job = Job.getInstance(conf);
+		job.setJarByClass(HadoopMain.class);
+		FileInputFormat.addInputPath(job, new Path(wfGlob));
+		setInputFormat(job, wfGlob);
+		FileOutputFormat.setOutputPath(job, dictDir);
+		job.setMapperClass(DictionaryMap.class);
+		job.setMapOutputKeyClass(ChannelKey.class);
+		job.setMapOutputValueClass(VLongWritable.class);
+		job.setCombinerClass(VLongSumReducer.class);
+		job.setReducerClass(DictionaryReduce.class);
+		job.setNumReduceTasks(1); // the ids are assigned in one sorted pass
+		job.setOutputKeyClass(Text.class);
+		job.setOutputValueClass(LongWritable.class);
+		LazyOutputFormat.setOutputFormatClass(job, TextOutputFormat.class);
+		MultipleOutputs.addNamedOutput(job, DictionaryReduce.WORDS, TextOutputFormat.class, Text.class, LongWritable.class);
+		MultipleOutputs.addNamedOutput(job, DictionaryReduce.FEATURES, TextOutputFormat.class, Text.class, LongWritable.class);
+		job.setJobName("lefex: Feature Id Dictionaries");
+		return job.waitForCompletion(true);
+	}
+
+	private boolean runEncodeJob(String wfGlob, Path dictDir, Path outDir) throws Exception {
+		Configuration conf = newConf();
+		conf.set("mapreduce.output.basename", "WF");
+		Job job = Job.getInstance(conf);
+		job.setJarByClass(HadoopMain.class);
+		FileInputFormat.addInputPath(job, new Path(wfGlob));
+		setInputFormat(job, wfGlob);
+		FileOutputFormat.setOutputPath(job, outDir);
+		job.setMapperClass(EncodeMap.class);
+		job.setNumReduceTasks(0);
+		job.setOutputKeyClass(LongWritable.class);
+		job.setOutputValueClass(IntWritable.class);
+		job.setOutputFormatClass(TripleOutputFormat.class);
+
+		FileSystem fs = dictDir.getFileSystem(conf);
+		Path words = fs.makeQualified(new Path(dictDir, DictionaryReduce.WORDS + "-r-00000"));
+		Path features = fs.makeQualified(new Path(dictDir, DictionaryReduce.FEATURES + "-r-00000"));
+		job.addCacheFile(new URI(words.toUri() + "#" + EncodeMap.WORDS_CACHE_NAME));
+		job.addCacheFile(new URI(features.toUri() + "#" + EncodeMap.FEATURES_CACHE_NAME));
+		job.setJobName("lefex: Feature Id Encoding");
+		return job.waitForCompletion(true);
+	}
+
+	public boolean runJobs(String featuresDir, String outDir) throws Exception {
+		String wfGlob = featuresDir + "/WF-r-*";
+		Path dictDir = new Path(outDir, "dict");
+		return runDictionaryJob(wfGlob, dictDir) && runEncodeJob(wfGlob, dictDir, new Path(outDir, "WF"));
+	}
+
+	@Override
+	public int run(String[] args) throws Exception {
+		System.out.println("args:" + Arrays.asList(args));
+		if (args.length < 2) {
+			System.out.println("Usage: <input-path-to-features> <output-path-to-ids>");
+			System.out.println("The input is the output directory of ExtractTermFeatureScores.");
+			System.exit(1);
+		}
+		System.out.println("Input: " + args[0]);
+		System.out.println("Output: " + args[1]);
+
+		boolean success = runJobs(args[0], args[1]);
+		return success ? 0 : 1;
+	}
+
+	public static void main(final String[] args) throws Exception {
+		Configuration conf = new Configuration();
+		int res = ToolRunner.run(conf, new HadoopMain(), args);
+		System.exit(res);
+	}
+}
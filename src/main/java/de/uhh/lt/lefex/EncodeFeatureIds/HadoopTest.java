@@ -0,0 +1,63 @@
+package de.uhh.lt.lefex.EncodeFeatureIds;
+
+import de.uhh.lt.lefex.TestPaths;
+import de.uhh.lt.lefex.Utils.Format;
+import org.apache.commons.io.FileUtils;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.util.ToolRunner;
+import org.junit.Test;
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class HadoopTest {
+    private static List<String> loadTerms(File dictionary) throws Exception {
+        List<String> terms = new ArrayList<>();
+        for (String line : FileUtils.readLines(dictionary, "UTF-8")) {
+            String[] fields = line.split("\t");
+            assertEquals("Ids must be dense.", terms.size(), Integer.parseInt(fields[0]));
+            terms.add(fields[1]);
+        }
+        return terms;
+    }
+
+    @Test
+    public void testTrigramIds() throws Exception {
+        TestPaths paths = new TestPaths("");
+        Configuration conf = new Configuration();
+        conf.setBoolean("holing.coocs", false);
+        conf.setInt("holing.sentences.maxlength", 100);
+        conf.setStrings("holing.type", "trigram");
+        conf.setBoolean("holing.output.ids", true);
+        ToolRunner.run(conf, new de.uhh.lt.lefex.ExtractTermFeatureScores.HadoopMain(),
+                new String[]{paths.getInputPath(), paths.getOutputDir(), "true"});
+
+        File idsDir = new File(paths.getOutputDir(), "ids");
+        List<String> words = loadTerms(new File(idsDir, "dict/WordIds-r-00000"));
+        List<String> features = loadTerms(new File(idsDir, "dict/FeatureIds-r-00000"));
+
+        Set<String> decoded = new HashSet<>();
+        for (File bin : new File(idsDir, "WF").listFiles((dir, name) -> name.endsWith(TripleOutputFormat.EXTENSION))) {
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(bin)))) {
+                while (true) {
+                    int wordId;
+                    try {
+                        wordId = in.readInt();
+                    } catch (EOFException e) {
+                        break;
+                    }
+                    decoded.add(words.get(wordId) + "\t" + features.get(in.readInt()) + "\t" + in.readInt());
+                }
+            }
+        }
+
+        List<String> lines = Format.readGzipAsList((new File(paths.getOutputDir(), "WF-r-00000.gz")).getAbsolutePath());
+        assertEquals("Number of lines is wrong.", 410, lines.size());
+        assertEquals(new HashSet<>(lines), decoded);
+    }
+}
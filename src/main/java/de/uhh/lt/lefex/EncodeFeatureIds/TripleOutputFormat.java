@@ -0,0 +1,52 @@
+package de.uhh.lt.lefex.EncodeFeatureIds;
+
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.IntWritable;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.mapreduce.RecordWriter;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * Writes the encoded word-feature counts as a flat sequence of big-endian int triples (wordId, featureId, count),
+ * 12 bytes each, without any header. The key holds wordId << 32 | featureId. A file can be read into primitive
+ * arrays with a DataInputStream or mapped with a java.nio.IntBuffer.
+ */
+public class TripleOutputFormat extends FileOutputFormat<LongWritable, IntWritable> {
+    public static final String EXTENSION = ".bin";
+
+    @Override
+    public RecordWriter<LongWritable, IntWritable> getRecordWriter(TaskAttemptContext context) throws IOException {
+        Path file = getDefaultWorkFile(context, EXTENSION);
+        FSDataOutputStream fileOut = file.getFileSystem(context.getConfiguration()).create(file, false);
+        return new TripleRecordWriter(new DataOutputStream(new BufferedOutputStream(fileOut, 1 << 16)));
+    }
+
+    public static long pack(int wordId, int featureId) {
+        return ((long) wordId << 32) | (featureId & 0xFFFFFFFFL);
+    }
+
+    private static class TripleRecordWriter extends RecordWriter<LongWritable, IntWritable> {
+        private final DataOutputStream out;
+
+        TripleRecordWriter(DataOutputStream out) {
+            this.out = out;
+        }
+
+        @Override
+        public void write(LongWritable ids, IntWritable count) throws IOException {
+            out.writeInt((int) (ids.get() >>> 32));
+            out.writeInt((int) ids.get());
+            out.writeInt(count.get());
+        }
+
+        @Override
+        public void close(TaskAttemptContext context) throws IOException {
+            out.close();
+        }
+    }
+}
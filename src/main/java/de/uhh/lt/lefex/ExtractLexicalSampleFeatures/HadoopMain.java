@@ -1,5 +1,7 @@
 package de.uhh.lt.lefex.ExtractLexicalSampleFeatures;
 
+import de.uhh.lt.lefex.Utils.CostBalancedTextInputFormat;
+import de.uhh.lt.lefex.Utils.SampledTextInputFormat;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.conf.Configured;
 import org.apache.hadoop.fs.FileSystem;
@@ -31,6 +33,7 @@ public class HadoopMain extends Configured implements Tool {
 
         job.setJarByClass(HadoopMain.class);
         FileInputFormat.addInputPath(job, new Path(inDir));
+        if (!SampledTextInputFormat.configure(job)) CostBalancedTextInputFormat.configure(job);
         FileOutputFormat.setOutputPath(job, new Path(_outDir));
         job.setMapperClass(HadoopMap.class);
         job.setMapOutputKeyClass(Text.class);
@@ -1,12 +1,13 @@
 package de.uhh.lt.lefex.ExtractLexicalSampleFeatures;
 
-import static org.apache.uima.fit.factory.TypeSystemDescriptionFactory.createTypeSystemDescription;
 import java.io.IOException;
 import java.util.*;
 
 import de.uhh.lt.lefex.Const;
 import de.tudarmstadt.ukp.dkpro.core.stanfordnlp.StanfordLemmatizer;
 import de.uhh.lt.lefex.Utils.Format;
+import de.uhh.lt.lefex.Utils.EnginePool;
+import de.uhh.lt.lefex.Utils.MapperMetrics;
 import de.tudarmstadt.ukp.dkpro.core.api.segmentation.type.Sentence;
 import org.apache.hadoop.io.IntWritable;
 import org.apache.hadoop.io.LongWritable;
@@ -16,11 +17,9 @@ import org.apache.log4j.Logger;
 import org.apache.uima.analysis_engine.AnalysisEngine;
 import org.apache.uima.analysis_engine.AnalysisEngineProcessException;
 import org.apache.uima.cas.CASException;
-import org.apache.uima.fit.factory.AnalysisEngineFactory;
 import org.apache.uima.fit.util.JCasUtil;
 import org.apache.uima.jcas.JCas;
 import org.apache.uima.resource.ResourceInitializationException;
-import org.apache.uima.util.CasCreationUtils;
 import de.tudarmstadt.ukp.dkpro.core.api.segmentation.type.Token;
 import de.tudarmstadt.ukp.dkpro.core.api.syntax.type.dependency.Dependency;
 import de.tudarmstadt.ukp.dkpro.core.maltparser.MaltParser;
@@ -39,10 +38,22 @@ public class HadoopMap extends Mapper<LongWritable, Text, Text, IntWritable> {
     boolean semantifyDependencies;
     String holingType;
     boolean lemmatize;
-
+    MapperMetrics metrics;
+    MapperMetrics.Counter numProcessedSentences;
+    MapperMetrics.Timer segmenterTime;
+    MapperMetrics.Timer taggingTime;
+    MapperMetrics.Timer parserTime;
+    MapperMetrics.Timer holingTime;
 
     @Override
     public void setup(Context context) {
+        metrics = new MapperMetrics(context.getConfiguration());
+        numProcessedSentences = metrics.counter("de.uhh.lt.lefex", "NUM_PROCESSED_SENTENCES");
+        segmenterTime = metrics.timer("SEGMENTER");
+        taggingTime = metrics.timer("POS_TAGGER_AND_LEMMATIZER");
+        parserTime = metrics.timer("PARSER");
+        holingTime = metrics.timer("HOLING");
+
         holingType = context.getConfiguration().getStrings("holing.type", "dependency")[0];
         log.info("Holing type: " + holingType);
 
@@ -52,14 +63,16 @@ public class HadoopMap extends Mapper<LongWritable, Text, Text, IntWritable> {
         lemmatize = context.getConfiguration().getBoolean("holing.lemmatize", true);
         log.info("Lemmatize: " + lemmatize);
 
+        boolean sharedEngines = context.getConfiguration().getBoolean(EnginePool.SHARED, true);
+
         try {
-            segmenter = AnalysisEngineFactory.createEngine(OpenNlpSegmenter.class);
-            posTagger = AnalysisEngineFactory.createEngine(OpenNlpPosTagger.class);
-            lemmatizer = AnalysisEngineFactory.createEngine(StanfordLemmatizer.class);
+            segmenter = EnginePool.acquire(sharedEngines, OpenNlpSegmenter.class);
+            posTagger = EnginePool.acquire(sharedEngines, OpenNlpPosTagger.class);
+            lemmatizer = EnginePool.acquire(sharedEngines, StanfordLemmatizer.class);
             if (holingType.contains("dependency")) synchronized(MaltParser.class) {
-                depParser = AnalysisEngineFactory.createEngine(MaltParser.class);
+                depParser = EnginePool.acquire(sharedEngines, MaltParser.class);
             }
-            jCas = CasCreationUtils.createCas(createTypeSystemDescription(), null, null).getJCas();
+            jCas = EnginePool.acquireJCas(sharedEngines);
         } catch (ResourceInitializationException e) {
             log.error("Couldn't initialize analysis engine", e);
         } catch (CASException e) {
@@ -69,12 +82,15 @@ public class HadoopMap extends Mapper<LongWritable, Text, Text, IntWritable> {
 
     @Override
     public void map(LongWritable key, Text line, Context context) throws IOException, InterruptedException {
+        metrics.record(context);
         try {
             LexicalSampleDataset lexSample = new LexicalSampleDataset(line.toString());
             jCas.reset();
             jCas.setDocumentText(lexSample.context);
             jCas.setDocumentLanguage("en");
+            long t = System.nanoTime();
             segmenter.process(jCas);
+            segmenterTime.stop(t);
 
             List<String> wordFeatures = new LinkedList<>();
             List<String> holingAllFeatures = new LinkedList <>();
@@ -82,12 +98,14 @@ public class HadoopMap extends Mapper<LongWritable, Text, Text, IntWritable> {
 
             for (Sentence sentence : JCasUtil.select(jCas, Sentence.class)) {
                 // Increment word features
+                long sentenceStart = System.nanoTime();
                 Collection<Token> tokens = JCasUtil.selectCovered(jCas, Token.class, sentence.getBegin(), sentence.getEnd());
-                context.getCounter("de.uhh.lt.lefex", "NUM_PROCESSED_SENTENCES").increment(1);
+                numProcessedSentences.increment(1);
                 if(lemmatize) {
                     posTagger.process(jCas);
                     lemmatizer.process(jCas);
                 }
+                t = taggingTime.stop(sentenceStart);
 
                 for (Token wordToken : tokens) {
                     String word;
@@ -99,6 +117,8 @@ public class HadoopMap extends Mapper<LongWritable, Text, Text, IntWritable> {
 
                 // Increment holing features
                 if (holingType.contains("dependency")) {
+                    depParser.process(jCas);
+                    t = parserTime.stop(t);
                     HolingResult res = dependencyHoling(tokens, lexSample.target);
                     holingAllFeatures.addAll(res.allFeatures);
                     holingTargetFeatures.addAll(res.targetFeatures);
@@ -109,6 +129,7 @@ public class HadoopMap extends Mapper<LongWritable, Text, Text, IntWritable> {
                     holingAllFeatures.addAll(res.allFeatures);
                     holingTargetFeatures.addAll(res.targetFeatures);
                 }
+                metrics.sentenceHoling(tokens.size(), holingTime.stop(t) - t);
             }
 
             lexSample.setFeatures(wordFeatures, holingAllFeatures, holingTargetFeatures);
@@ -120,6 +141,12 @@ public class HadoopMap extends Mapper<LongWritable, Text, Text, IntWritable> {
         }
     }
 
+    @Override
+    public void cleanup(Context context) {
+        metrics.publish(context);
+        EnginePool.release(segmenter, posTagger, lemmatizer, depParser, jCas);
+    }
+
     private HolingResult trigramHoling(Collection<Token> tokens, String lexSampleTarget) throws AnalysisEngineProcessException, IOException, InterruptedException {
         String center = Const.BEGEND_CHAR;
         String left = Const.BEGEND_CHAR;
@@ -155,7 +182,6 @@ public class HadoopMap extends Mapper<LongWritable, Text, Text, IntWritable> {
     private HolingResult dependencyHoling(Collection<Token> tokens, String lexSampleTarget) throws AnalysisEngineProcessException, IOException, InterruptedException {
         List<String> allFeatures = new LinkedList<>();
         List<String> targetFeatures = new LinkedList<>();
-        depParser.process(jCas);
         Collection<Dependency> deps = JCasUtil.select(jCas, Dependency.class);
         Collection<Dependency> depsCollapsed = Format.collapseDependencies(jCas, deps, tokens);
         for (Dependency dep : depsCollapsed) {
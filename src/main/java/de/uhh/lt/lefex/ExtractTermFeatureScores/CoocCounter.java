@@ -0,0 +1,101 @@
+package de.uhh.lt.lefex.ExtractTermFeatureScores;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Collects the words of one sentence and computes their co-occurrences. Every unordered pair of distinct words is
+ * produced once, with the lexicographically smaller word first; the reducer writes the mirrored pair. Every word
+ * also co-occurs with itself. With a window > 0 only words at most window tokens apart co-occur, otherwise all
+ * words of the sentence do.
+ */
+class CoocCounter {
+    private final int window;
+    private final HashMap<String, Integer> ids = new HashMap<>();
+    private final List<String> words = new ArrayList<>();
+    private long[] occurrences = new long[64]; // position << 32 | word id
+    private int numOccurrences;
+    private long[] pairs = new long[256]; // first word id << 32 | second word id
+    private int numPairs;
+
+    CoocCounter(int window) {
+        this.window = window;
+    }
+
+    void clear() {
+        ids.clear();
+        words.clear();
+        numOccurrences = 0;
+        numPairs = 0;
+    }
+
+    /**
+     * @param position index of the (first) token of the word in the sentence
+     * */
+    void add(int position, String word) {
+        Integer id = ids.get(word);
+        if (id == null) {
+            id = words.size();
+            ids.put(word, id);
+            words.add(word);
+        }
+        if (numOccurrences == occurrences.length) occurrences = Arrays.copyOf(occurrences, 2 * numOccurrences);
+        occurrences[numOccurrences++] = ((long) position << 32) | id;
+    }
+
+    /** Computes the distinct co-occurring pairs of the words added since the last clear(). */
+    void computePairs() {
+        numPairs = 0;
+        if (window <= 0) {
+            for (int i = 0; i < words.size(); i++) {
+                for (int j = i; j < words.size(); j++) addPair(i, j);
+            }
+        } else {
+            Arrays.sort(occurrences, 0, numOccurrences);
+            for (int a = 0; a < numOccurrences; a++) {
+                long positionA = occurrences[a] >>> 32;
+                for (int b = a; b < numOccurrences && (occurrences[b] >>> 32) - positionA <= window; b++) {
+                    addPair((int) occurrences[a], (int) occurrences[b]);
+                }
+            }
+            Arrays.sort(pairs, 0, numPairs);
+            int unique = 0;
+            for (int i = 0; i < numPairs; i++) {
+                if (unique == 0 || pairs[i] != pairs[unique - 1]) pairs[unique++] = pairs[i];
+            }
+            numPairs = unique;
+        }
+    }
+
+    private void addPair(int i, int j) {
+        if (words.get(i).compareTo(words.get(j)) > 0) {
+            int tmp = i;
+            i = j;
+            j = tmp;
+        }
+        if (numPairs == pairs.length) pairs = Arrays.copyOf(pairs, 2 * numPairs);
+        pairs[numPairs++] = ((long) i << 32) | j;
+    }
+
+    int getNumWords() {
+        return words.size();
+    }
+
+    String getWord(int i) {
+        return words.get(i);
+    }
+
+    int getNumPairs() {
+        return numPairs;
+    }
+
+    String getPairFirst(int pair) {
+        return words.get((int) (pairs[pair] >>> 32));
+    }
+
+    String getPairSecond(int pair) {
+        return words.get((int) pairs[pair]);
+    }
+}
@@ -0,0 +1,49 @@
+package de.uhh.lt.lefex.ExtractTermFeatureScores;
+
+import de.uhh.lt.lefex.Utils.ChannelKey;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.VLongWritable;
+import org.apache.hadoop.mapreduce.Mapper;
+import org.apache.hadoop.mapreduce.lib.input.FileSplit;
+import java.io.IOException;
+
+/**
+ * Reads the "key<TAB>count" lines of earlier outputs of this job and emits them on the channel of their file, e.g.
+ * channel WF for WF-r-00000.gz, so that MultiOutputLongSumReducer adds up the counts of several outputs. Of the
+ * mirrored CoocWF pairs only the pair with the smaller word first is emitted, as by CoocCounter; the reducer writes
+ * the mirrored pair again.
+ */
+class CountsMergeMap extends Mapper<LongWritable, Text, ChannelKey, VLongWritable> {
+    private final ChannelKey outKey = new ChannelKey();
+    private final VLongWritable outCount = new VLongWritable();
+    private byte channel;
+
+    @Override
+    public void setup(Context context) {
+        String name = ((FileSplit) context.getInputSplit()).getPath().getName();
+        channel = ChannelKey.getChannel(name.substring(0, name.indexOf("-r-")));
+    }
+
+    @Override
+    public void map(LongWritable key, Text line, Context context) throws IOException, InterruptedException {
+        byte[] bytes = line.getBytes();
+        int length = line.getLength();
+        int last = length - 1;
+        while (last >= 0 && bytes[last] != '\t') last--;
+        if (last < 0) {
+            context.getCounter("de.uhh.lt.lefex", "NUM_MALFORMED_LINES").increment(1);
+            return;
+        }
+        if (channel == ChannelKey.COOC_WF) {
+            int first = 0;
+            while (first < last && bytes[first] != '\t') first++;
+            if (first < last && Text.decode(bytes, 0, first).compareTo(Text.decode(bytes, first + 1, last - first - 1)) > 0) {
+                return;
+            }
+        }
+        outCount.set(Long.parseLong(Text.decode(bytes, last + 1, length - last - 1)));
+        outKey.set(channel, bytes, 0, last);
+        context.write(outKey, outCount);
+    }
+}
@@ -0,0 +1,49 @@
+package de.uhh.lt.lefex.ExtractTermFeatureScores;
+
+import de.uhh.lt.lefex.Utils.ChannelKey;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.VLongWritable;
+import org.apache.hadoop.mapreduce.Mapper;
+import org.apache.hadoop.mapreduce.lib.input.FileSplit;
+import java.io.IOException;
+
+/**
+ * Reads the WF and F outputs of a run with holing.derive_features and emits the feature counts on channel F, so that
+ * MultiOutputLongSumReducer adds them up: the count of a "word<TAB>feature<TAB>count" line for its feature unless
+ * the word contains a space, and the "feature<TAB>count" lines that HadoopMap wrote for the other pairs as they are.
+ */
+class FeatureCountsMap extends Mapper<LongWritable, Text, ChannelKey, VLongWritable> {
+    private final ChannelKey outKey = new ChannelKey();
+    private final VLongWritable outCount = new VLongWritable();
+    private byte channel;
+
+    @Override
+    public void setup(Context context) {
+        String name = ((FileSplit) context.getInputSplit()).getPath().getName();
+        channel = ChannelKey.getChannel(name.substring(0, name.indexOf("-r-")));
+    }
+
+    @Override
+    public void map(LongWritable key, Text line, Context context) throws IOException, InterruptedException {
+        byte[] bytes = line.getBytes();
+        int length = line.getLength();
+        int last = length - 1;
+        while (last >= 0 && bytes[last] != '\t') last--;
+        int start = 0;
+        if (channel == ChannelKey.WF) {
+            while (start < last && bytes[start] != '\t') {
+                if (bytes[start] == ' ') return; // a multiword expression, its pairs have their own feature counts
+                start++;
+            }
+            start++;
+        }
+        if (last < start) {
+            context.getCounter("de.uhh.lt.lefex", "NUM_MALFORMED_LINES").increment(1);
+            return;
+        }
+        outCount.set(Long.parseLong(Text.decode(bytes, last + 1, length - last - 1)));
+        outKey.set(ChannelKey.F, bytes, start, last - start);
+        context.write(outKey, outCount);
+    }
+}
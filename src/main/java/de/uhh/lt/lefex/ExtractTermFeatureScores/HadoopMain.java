@@ -1,60 +1,270 @@
 package de.uhh.lt.lefex.ExtractTermFeatureScores;
 
+import java.io.IOException;
 import java.net.URI;
 import java.util.Arrays;
-import de.uhh.lt.lefex.Utils.MultiOutputIntSumReducer;
+import java.util.List;
+import de.uhh.lt.lefex.Utils.ChannelKey;
+import de.uhh.lt.lefex.Utils.CostBalancedTextInputFormat;
+import de.uhh.lt.lefex.Utils.FrontCodedOutputFormat;
+import de.uhh.lt.lefex.Utils.FrontCodedTextInputFormat;
+import de.uhh.lt.lefex.Utils.HotKeys;
+import de.uhh.lt.lefex.Utils.MultiOutputLongSumReducer;
+import de.uhh.lt.lefex.Utils.RecordWatchdog;
+import de.uhh.lt.lefex.Utils.SaltingPartitioner;
+import de.uhh.lt.lefex.Utils.SampledTextInputFormat;
+import de.uhh.lt.lefex.Utils.VLongSumReducer;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.conf.Configured;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
-import org.apache.hadoop.io.IntWritable;
+import org.apache.hadoop.io.LongWritable;
 import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.VLongWritable;
 import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.OutputFormat;
 import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
+import org.apache.hadoop.mapreduce.lib.map.MultithreadedMapper;
 import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
 import org.apache.hadoop.mapreduce.lib.output.LazyOutputFormat;
 import org.apache.hadoop.mapreduce.lib.output.MultipleOutputs;
 import org.apache.hadoop.mapreduce.lib.output.TextOutputFormat;
-import org.apache.hadoop.mapreduce.lib.reduce.IntSumReducer;
 import org.apache.hadoop.util.Tool;
 import org.apache.hadoop.util.ToolRunner;
 
 
 public class HadoopMain extends Configured implements Tool {
 
-	private boolean runJob(String inDir, String outDir, boolean compressOutput) throws Exception {
-		Configuration conf = getConf();
+	private boolean runJob(Configuration conf, String inDir, String outDir, boolean compressOutput, Path pruneFilter,
+						   Path hotKeys) throws Exception {
 		conf.setBoolean("mapred.output.compress", compressOutput);
 		conf.set("mapred.output.compression.codec", "org.apache.hadoop.io.compress.GzipCodec");
+		if (conf.get("holing.input", "text").equals("conll")) {
+			// The sentences of the CoNLL output are separated by empty lines
+			conf.set("textinputformat.record.delimiter", "\n\n");
+		}
 		Job job = Job.getInstance(conf);
 		job.setJarByClass(HadoopMain.class);
-		FileInputFormat.addInputPath(job, new Path(inDir));
+		FileInputFormat.addInputPaths(job, inDir);
+		if (!SampledTextInputFormat.configure(job)) CostBalancedTextInputFormat.configure(job);
 		FileOutputFormat.setOutputPath(job, new Path(outDir));
 
-		job.setMapperClass(HadoopMap.class);
-		job.setMapOutputKeyClass(Text.class);
-		job.setMapOutputValueClass(IntWritable.class);
-		job.setOutputKeyClass(Text.class);
-		job.setOutputValueClass(IntWritable.class);
-		job.setCombinerClass(IntSumReducer.class);
-		job.setReducerClass(MultiOutputIntSumReducer.class);
-
-		// Turn off the default output ("part-..."), we don't need it
-		LazyOutputFormat.setOutputFormatClass(job, TextOutputFormat.class);
-		MultipleOutputs.addNamedOutput(job, "W", TextOutputFormat.class, Text.class, IntWritable.class);
-		MultipleOutputs.addNamedOutput(job, "CoocF", TextOutputFormat.class, Text.class, IntWritable.class);
-		MultipleOutputs.addNamedOutput(job, "CoocWF", TextOutputFormat.class, Text.class, IntWritable.class);
-		MultipleOutputs.addNamedOutput(job, "F", TextOutputFormat.class, Text.class, IntWritable.class);
-		MultipleOutputs.addNamedOutput(job, "WF", TextOutputFormat.class, Text.class, IntWritable.class);
+		int threads = conf.getInt("holing.threads", 1);
+		if (threads > 1) {
+			// One map task runs several HadoopMap instances, each with its own engines, on a shared input split
+			job.setMapperClass(MultithreadedMapper.class);
+			MultithreadedMapper.setMapperClass(job, HadoopMap.class);
+			MultithreadedMapper.setNumberOfThreads(job, threads);
+		} else {
+			job.setMapperClass(HadoopMap.class);
+		}
+		setCountOutputs(job, conf);
+		RecordWatchdog.addSkippedOutput(job);
 
 		String[] mwePaths = conf.getStrings("holing.mwe.vocabulary", "");
 		String mwePath = "";
 		if (mwePaths != null && mwePaths.length > 0 && mwePaths[0] != null) mwePath = mwePaths[0];
 		if (!mwePath.equals("")) job.addCacheFile(new URI(mwePath + "#mwe_voc"));
+		if (pruneFilter != null) {
+			Path qualified = pruneFilter.getFileSystem(conf).makeQualified(pruneFilter);
+			job.addCacheFile(new URI(qualified.toUri() + "#" + PruneFilter.CACHE_NAME));
+		}
+		if (hotKeys != null) {
+			// The hot keys are spread over several reducers, their partial sums are added up after the job
+			Path qualified = hotKeys.getFileSystem(conf).makeQualified(hotKeys);
+			job.addCacheFile(new URI(qualified.toUri() + "#" + HotKeys.CACHE_NAME));
+			job.setPartitionerClass(SaltingPartitioner.class);
+			MultipleOutputs.addNamedOutput(job, HotKeys.SALTED_OUTPUT, TextOutputFormat.class, Text.class, LongWritable.class);
+		}
+
+		job.setJobName(conf.getBoolean("holing.prune.count_pass", false) ? "lefex: Feature Extraction (counting pass)" : "lefex: Feature Extraction");
+		if (!job.waitForCompletion(true)) return false;
+		if (hotKeys != null) {
+			int numKeys = HotKeys.mergeSalted(conf, new Path(outDir), compressOutput,
+					conf.get("holing.output.format", "text").equals("frontcoded"));
+			System.out.println("Salted keys merged into " + outDir + "/*" + HotKeys.FILE_SUFFIX + ": " + numKeys);
+		}
+		if (conf.getBoolean("holing.derive_features", false) && !conf.getBoolean("holing.prune.count_pass", false)) {
+			return deriveFeatureCounts(conf, new Path(outDir), compressOutput);
+		}
+		return true;
+	}
+
+	/**
+	 * With holing.derive_features the mappers write F only for the pairs whose feature count can not be taken from
+	 * WF: the pairs of words with spaces and the pruned pairs. Adds up the F outputs and the WF counts of the other
+	 * pairs per feature and replaces the F outputs of countsDir with the sums.
+	 */
+	private boolean deriveFeatureCounts(Configuration baseConf, Path countsDir, boolean compressOutput) throws Exception {
+		Configuration conf = new Configuration(baseConf);
+		conf.unset("textinputformat.record.delimiter"); // the counts are lines of text, whatever the corpus format
+		conf.setBoolean("mapred.output.compress", compressOutput);
+		conf.set("mapred.output.compression.codec", "org.apache.hadoop.io.compress.GzipCodec");
+		FileSystem fs = countsDir.getFileSystem(conf);
+		Path featuresDir = new Path(countsDir + "-features");
+		fs.delete(featuresDir, true);
+		Job job = Job.getInstance(conf);
+		job.setJarByClass(HadoopMain.class);
+		boolean hasInput = false;
+		for (String channel : new String[]{"WF", "F"}) {
+			Path glob = new Path(countsDir, channel + "-r-*");
+			FileStatus[] files = fs.globStatus(glob);
+			if (files != null && files.length > 0) {
+				FileInputFormat.addInputPath(job, glob);
+				hasInput = true;
+			}
+		}
+		if (!hasInput) return true;
+		if (conf.get("holing.output.format", "text").equals("frontcoded")) job.setInputFormatClass(FrontCodedTextInputFormat.class);
+		FileOutputFormat.setOutputPath(job, featuresDir);
+		job.setMapperClass(FeatureCountsMap.class);
+		setCountOutputs(job, conf);
+		job.setJobName("lefex: Feature Extraction (feature counts from WF)");
+		if (!job.waitForCompletion(true)) return false;
+
+		FileStatus[] oldFiles = fs.globStatus(new Path(countsDir, "F-r-*"));
+		if (oldFiles != null) {
+			for (FileStatus file : oldFiles) fs.delete(file.getPath(), false);
+		}
+		for (FileStatus file : fs.globStatus(new Path(featuresDir, "F-r-*"))) {
+			if (!fs.rename(file.getPath(), new Path(countsDir, file.getPath().getName()))) {
+				throw new IOException("Could not move " + file.getPath() + " to " + countsDir);
+			}
+		}
+		fs.delete(featuresDir, true);
+		return true;
+	}
+
+	/**
+	 * Returns the list of hot keys for holing.skew=true: the file holing.skew.keys or the holing.skew.num_keys
+	 * most frequent keys in a sample (holing.skew.sample_fraction) of the input, which are counted into
+	 * <output>-skew-sample first.
+	 */
+	private Path findHotKeys(String inDir, String outDir) throws Exception {
+		String keys = getConf().get("holing.skew.keys", "");
+		if (!keys.isEmpty()) return new Path(keys);
+		Path sampleDir = new Path(outDir + "-skew-sample");
+		Configuration sampleConf = new Configuration(getConf());
+		sampleConf.setFloat(SampledTextInputFormat.FRACTION, getConf().getFloat("holing.skew.sample_fraction", 0.01f));
+		sampleConf.set("holing.output.format", "text");
+		if (!runJob(sampleConf, inDir, sampleDir.toString(), false, null, null)) {
+			throw new IOException("Counting the sample of the input for holing.skew failed");
+		}
+		Path keysPath = new Path(sampleDir, HotKeys.CACHE_NAME);
+		int numKeys = HotKeys.findInSample(getConf(), sampleDir, getConf().getInt("holing.skew.num_keys", 100), keysPath);
+		System.out.println("Hot keys in the sample: " + numKeys);
+		return keysPath;
+	}
+
+	/** The map output is summed up and each channel is written to its own output, W-r-00000 etc. */
+	private static void setCountOutputs(Job job, Configuration conf) {
+		job.setMapOutputKeyClass(ChannelKey.class);
+		job.setMapOutputValueClass(VLongWritable.class);
+		job.setOutputKeyClass(Text.class);
+		job.setOutputValueClass(LongWritable.class);
+		job.setCombinerClass(VLongSumReducer.class);
+		job.setReducerClass(MultiOutputLongSumReducer.class);
+
+		// Turn off the default output ("part-..."), we don't need it
+		@SuppressWarnings("rawtypes") // the output format classes are raw class literals
+		Class<? extends OutputFormat> outputFormat = TextOutputFormat.class;
+		if (conf.get("holing.output.format", "text").equals("frontcoded")) outputFormat = FrontCodedOutputFormat.class;
+		LazyOutputFormat.setOutputFormatClass(job, outputFormat);
+		MultipleOutputs.addNamedOutput(job, "W", outputFormat, Text.class, LongWritable.class);
+		MultipleOutputs.addNamedOutput(job, "CoocF", outputFormat, Text.class, LongWritable.class);
+		MultipleOutputs.addNamedOutput(job, "CoocWF", outputFormat, Text.class, LongWritable.class);
+		MultipleOutputs.addNamedOutput(job, "F", outputFormat, Text.class, LongWritable.class);
+		MultipleOutputs.addNamedOutput(job, "WF", outputFormat, Text.class, LongWritable.class);
+	}
+
+	/** Moves the listings of the skipped records of dir to targetDir, renaming those whose name is taken. */
+	private static void moveSkippedRecords(FileSystem fs, Path dir, Path targetDir) throws IOException {
+		Path skippedDir = new Path(dir, RecordWatchdog.SKIPPED_DIR);
+		if (!fs.exists(skippedDir)) return;
+		Path targetSkippedDir = new Path(targetDir, RecordWatchdog.SKIPPED_DIR);
+		fs.mkdirs(targetSkippedDir);
+		for (FileStatus file : fs.listStatus(skippedDir)) {
+			String name = file.getPath().getName();
+			Path target = new Path(targetSkippedDir, name);
+			for (int i = 1; fs.exists(target); i++) target = new Path(targetSkippedDir, i + "-" + name);
+			if (!fs.rename(file.getPath(), target)) {
+				throw new IOException("Could not move " + file.getPath() + " to " + targetSkippedDir);
+			}
+		}
+	}
 
-		job.setJobName("lefex: Feature Extraction");
+	/** Adds up the counts of several outputs of this job. */
+	private boolean runMergeJob(Configuration baseConf, Path[] countsDirs, Path outDir, boolean compressOutput) throws Exception {
+		Configuration conf = new Configuration(baseConf);
+		conf.unset("textinputformat.record.delimiter"); // the counts are lines of text, whatever the corpus format
+		conf.setBoolean("mapred.output.compress", compressOutput);
+		conf.set("mapred.output.compression.codec", "org.apache.hadoop.io.compress.GzipCodec");
+		Job job = Job.getInstance(conf);
+		job.setJarByClass(HadoopMain.class);
+		for (Path countsDir : countsDirs) {
+			for (String channel : new String[]{"W", "F", "WF", "CoocF", "CoocWF"}) {
+				Path glob = new Path(countsDir, channel + "-r-*");
+				FileStatus[] files = glob.getFileSystem(conf).globStatus(glob);
+				if (files != null && files.length > 0) FileInputFormat.addInputPath(job, glob);
+			}
+		}
+		if (conf.get("holing.output.format", "text").equals("frontcoded")) job.setInputFormatClass(FrontCodedTextInputFormat.class);
+		FileOutputFormat.setOutputPath(job, outDir);
+		job.setMapperClass(CountsMergeMap.class);
+		setCountOutputs(job, conf);
+		job.setJobName("lefex: Feature Extraction (merging counts)");
 		return job.waitForCompletion(true);
 	}
 
+	/**
+	 * Counts only the input files that are not in the manifest of outDir yet and adds their counts to the outputs
+	 * in outDir. Without earlier outputs this is a normal run that also writes the manifest. The merge job reads all
+	 * earlier counts again, so its cost grows with the whole output, not with the new input files. Returns the number
+	 * of new input files, or -1 if a job failed.
+	 */
+	private int runIncremental(String inDir, String outDir, boolean compressOutput) throws Exception {
+		Path outPath = new Path(outDir);
+		FileSystem fs = outPath.getFileSystem(getConf());
+		boolean hasCounts = fs.exists(outPath);
+		InputManifest manifest = hasCounts ? InputManifest.load(fs, outPath) : new InputManifest();
+		List<FileStatus> newInputs = manifest.newInputs(InputManifest.listInputs(getConf(), inDir));
+		System.out.println("Counted input files: " + manifest.size() + ", new input files: " + newInputs.size());
+		if (newInputs.isEmpty()) return 0;
+
+		StringBuilder newPaths = new StringBuilder();
+		for (FileStatus input : newInputs) {
+			if (newPaths.length() > 0) newPaths.append(',');
+			newPaths.append(input.getPath());
+			manifest.add(input);
+		}
+		if (!hasCounts) {
+			if (!runJob(getConf(), newPaths.toString(), outDir, compressOutput, null, null)) return -1;
+			manifest.write(fs, outPath);
+			return newInputs.size();
+		}
+
+		Path deltaDir = new Path(outDir + "-delta");
+		Path mergedDir = new Path(outDir + "-merged");
+		Path oldDir = new Path(outDir + "-old");
+		fs.delete(deltaDir, true);
+		fs.delete(mergedDir, true);
+		fs.delete(oldDir, true);
+		// The delta is only read by the merge job, so it is not compressed
+		if (!runJob(new Configuration(getConf()), newPaths.toString(), deltaDir.toString(), false, null, null)) return -1;
+		if (!runMergeJob(getConf(), new Path[]{outPath, deltaDir}, mergedDir, compressOutput)) return -1;
+		// The manifest and the skipped records are part of the merged outputs, they are replaced together
+		moveSkippedRecords(fs, outPath, mergedDir);
+		moveSkippedRecords(fs, deltaDir, mergedDir);
+		manifest.write(fs, mergedDir);
+		if (!fs.rename(outPath, oldDir) || !fs.rename(mergedDir, outPath)) {
+			throw new IOException("Could not replace " + outPath + " with the merged counts in " + mergedDir);
+		}
+		fs.delete(oldDir, true);
+		fs.delete(deltaDir, true);
+		return newInputs.size();
+	}
+
 	@Override
 	public int run(String[] args) throws Exception {
 		boolean compressOutput = false;
@@ -75,8 +285,80 @@ public class HadoopMain extends Configured implements Tool {
 		System.out.println("Input: " + inDir);
 		System.out.println("Output: " + outDir);
 		System.out.println("Compression: " + compressOutput);
+		System.out.println("Input format: " + getConf().get("holing.input", "text"));
+		System.out.println("Output format: " + getConf().get("holing.output.format", "text"));
+		System.out.println("Mapper threads: " + getConf().getInt("holing.threads", 1));
+		System.out.println("Prune pairs of words and features with fewer pairs than: " + getConf().getInt("holing.prune.min_count", 0));
+		System.out.println("Integer id output: " + getConf().getBoolean("holing.output.ids", false));
+		System.out.println("Scored pairs output: " + getConf().getBoolean("holing.output.scores", false));
+		System.out.println("Top features per word output: " + getConf().getBoolean("holing.output.top_features", false));
+		System.out.println("Incremental: " + getConf().getBoolean("holing.incremental", false));
+		System.out.println("Salt hot keys over several reducers: " + getConf().getBoolean("holing.skew", false));
+		System.out.println("Derive feature counts from WF: " + getConf().getBoolean("holing.derive_features", false));
 
-		boolean success = runJob(inDir, outDir, compressOutput);
+		boolean success;
+		int pruneMinCount = getConf().getInt("holing.prune.min_count", 0);
+		boolean skew = getConf().getBoolean("holing.skew", false);
+		// Checked before the counting job rather than after it
+		if (getConf().getBoolean("holing.output.top_features", false)
+				&& getConf().getInt(de.uhh.lt.lefex.TopFeatures.HadoopMain.K, de.uhh.lt.lefex.TopFeatures.HadoopMain.DEFAULT_K) < 1) {
+			throw new IllegalArgumentException(de.uhh.lt.lefex.TopFeatures.HadoopMain.K + " must be at least 1");
+		}
+		if (getConf().getBoolean("holing.incremental", false)) {
+			if (pruneMinCount > 1) {
+				throw new IllegalArgumentException("Pruned counts can not be added up, holing.prune.min_count does not work with holing.incremental");
+			}
+			if (skew) {
+				throw new IllegalArgumentException("holing.skew does not work with holing.incremental, the delta runs are usually small");
+			}
+			int numNewInputs = runIncremental(inDir, outDir, compressOutput);
+			// The ids, scores and top features of the earlier run are still up to date
+			if (numNewInputs == 0) return 0;
+			success = numNewInputs > 0;
+		} else if (pruneMinCount > 1) {
+			// First pass: count in how many word-feature pairs each word and feature occurs
+			Path countsDir = new Path(outDir + "-prune-counts");
+			Configuration countConf = new Configuration(getConf());
+			countConf.setBoolean("holing.prune.count_pass", true);
+			countConf.set("holing.output.format", "text");
+			success = runJob(countConf, inDir, countsDir.toString(), false, null, null);
+			if (success) {
+				Path filterPath = new Path(countsDir, PruneFilter.CACHE_NAME);
+				long numTerms = PruneFilter.build(getConf(), countsDir, pruneMinCount,
+						getConf().getDouble("holing.prune.false_positive_rate", 0.01), filterPath);
+				System.out.println("Words and features with at least " + pruneMinCount + " pairs: " + numTerms);
+				Path hotKeys = skew ? findHotKeys(inDir, outDir) : null;
+				success = runJob(getConf(), inDir, outDir, compressOutput, filterPath, hotKeys);
+			}
+			countsDir.getFileSystem(getConf()).delete(countsDir, true);
+		} else {
+			Path hotKeys = skew ? findHotKeys(inDir, outDir) : null;
+			success = runJob(getConf(), inDir, outDir, compressOutput, null, hotKeys);
+		}
+		if (skew && getConf().get("holing.skew.keys", "").isEmpty()) {
+			Path sampleDir = new Path(outDir + "-skew-sample");
+			sampleDir.getFileSystem(getConf()).delete(sampleDir, true);
+		}
+		if (success && getConf().getBoolean("holing.output.ids", false)) {
+			// Dictionaries and binary (wordId, featureId, count) triples of WF in <output>/ids
+			de.uhh.lt.lefex.EncodeFeatureIds.HadoopMain encoder = new de.uhh.lt.lefex.EncodeFeatureIds.HadoopMain();
+			encoder.setConf(getConf());
+			success = encoder.runJobs(outDir, new Path(outDir, "ids").toString());
+		}
+		boolean scores = getConf().getBoolean("holing.output.scores", false);
+		if (success && scores) {
+			// "word<TAB>feature<TAB>score" lines with the score.measure of each pair in <output>/scores
+			de.uhh.lt.lefex.ScoreFeatures.HadoopMain scorer = new de.uhh.lt.lefex.ScoreFeatures.HadoopMain();
+			scorer.setConf(getConf());
+			success = scorer.runJob(outDir, new Path(outDir, "scores").toString());
+		}
+		if (success && getConf().getBoolean("holing.output.top_features", false)) {
+			// The best top_features.k features of each word by score, or by count without scores, in <output>/top
+			de.uhh.lt.lefex.TopFeatures.HadoopMain topFeatures = new de.uhh.lt.lefex.TopFeatures.HadoopMain();
+			topFeatures.setConf(getConf());
+			String pairs = scores ? outDir + "/scores/ScoredWF-m-*" : outDir + "/WF-r-*";
+			success = topFeatures.runJob(pairs, new Path(outDir, "top").toString());
+		}
 		return success ? 0 : 1;
 	}
 
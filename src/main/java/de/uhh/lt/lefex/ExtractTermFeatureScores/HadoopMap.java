@@ -1,18 +1,26 @@
 package de.uhh.lt.lefex.ExtractTermFeatureScores;
 
-import static org.apache.uima.fit.factory.TypeSystemDescriptionFactory.createTypeSystemDescription;
 import java.io.File;
 import java.io.IOException;
 import java.util.*;
 import de.uhh.lt.lefex.Const;
+import de.uhh.lt.lefex.CoNLL.CasLoader;
+import de.uhh.lt.lefex.Utils.ChannelKey;
+import de.uhh.lt.lefex.Utils.CountTable;
+import de.uhh.lt.lefex.Utils.EnginePool;
+import de.uhh.lt.lefex.Utils.SentenceFilter;
 import de.uhh.lt.lefex.Utils.Format;
+import de.uhh.lt.lefex.Utils.MapperMetrics;
+import de.uhh.lt.lefex.Utils.RecordWatchdog;
+import de.uhh.lt.lefex.Utils.Resources;
 import de.tudarmstadt.ukp.dkpro.core.api.ner.type.NamedEntity;
 import de.tudarmstadt.ukp.dkpro.core.api.segmentation.type.Sentence;
 import de.uhh.lt.lefex.Utils.DictionaryAnnotator;
 import edu.stanford.nlp.util.Pair;
-import org.apache.hadoop.io.IntWritable;
+import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.io.LongWritable;
 import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.VLongWritable;
 import org.apache.hadoop.mapreduce.Mapper;
 import org.apache.log4j.Logger;
 import org.apache.uima.analysis_engine.AnalysisEngine;
@@ -21,9 +29,7 @@ import org.apache.uima.cas.CASException;
 import org.apache.uima.fit.factory.AnalysisEngineFactory;
 import org.apache.uima.fit.util.JCasUtil;
 import org.apache.uima.jcas.JCas;
-import org.apache.uima.jcas.tcas.Annotation;
 import org.apache.uima.resource.ResourceInitializationException;
-import org.apache.uima.util.CasCreationUtils;
 import de.tudarmstadt.ukp.dkpro.core.api.segmentation.type.Token;
 import de.tudarmstadt.ukp.dkpro.core.api.syntax.type.dependency.Dependency;
 import de.tudarmstadt.ukp.dkpro.core.maltparser.MaltParser;
@@ -35,24 +41,30 @@ import de.tudarmstadt.ukp.dkpro.core.stanfordnlp.StanfordNamedEntityRecognizer;
 //import de.tudarmstadt.ukp.dkpro.core.stanfordnlp.StanfordParser;
 
 
-class HadoopMap extends Mapper<LongWritable, Text, Text, IntWritable> {
-    static final IntWritable ONE = new IntWritable(1);
+class HadoopMap extends Mapper<LongWritable, Text, ChannelKey, VLongWritable> {
+    static final VLongWritable ONE = new VLongWritable(1);
     static final String POS_SEP = "#";
+    final ChannelKey outKey = new ChannelKey();
+    final ChannelKey wordKey = new ChannelKey();
+    final ChannelKey featureKey = new ChannelKey();
+    final VLongWritable outCount = new VLongWritable();
 
     Logger log = Logger.getLogger("de.tudarmstadt.lt.jst");
-	AnalysisEngine segmenter;
-	AnalysisEngine posTagger;
-	AnalysisEngine lemmatizer;
-	AnalysisEngine depParser;
-    AnalysisEngine dictTagger;
-    AnalysisEngine nerEngine;
-
-    JCas jCas;
+    Engines engines;
+    JCas jCas; // the CAS of engines
+    RecordWatchdog watchdog;
+    boolean sharedEngines;
+    String mwePath;
     boolean verbose;
     boolean semantifyDependencies;
 	String holingType;
 	boolean computeCoocs;
+    CoocCounter coocs;
+    NgramIndex ngramIndex;
+    NgramHoling ngramHoling; // holing.type=ngram, null otherwise
+    boolean tokenizeBytes; // ngram holing of surface forms, the tokens are taken from the bytes of the record
 	int maxSentenceLength;
+    int parseMaxLength; // longer sentences are not parsed and get trigram features instead
     boolean lemmatize;
     boolean mweByDicionary;
     int processEach;
@@ -61,17 +73,49 @@ class HadoopMap extends Mapper<LongWritable, Text, Text, IntWritable> {
     String depParserType;
     boolean useDependencyTypeStoplist;
     boolean outputPos;
+    CountTable counts; // in-mapper combining, null if disabled
+    boolean conllInput;
+    boolean countedInput; // lines are "count<TAB>sentence" as written by SentenceSplitter with output_counts
+    long weight = 1; // multiplicity of the current sentence
+    boolean countPass; // only count the words and features of the word-feature pairs
+    boolean deriveFeatures; // F only for the pairs whose feature count is not added up from WF after the job
+    PruneFilter pruneFilter; // words and features frequent enough to keep their pairs, null if pruning is disabled
+    long numMaps;
+    MapperMetrics metrics;
+    MapperMetrics.Counter numMapsCounter;
+    MapperMetrics.Counter numInputSentences;
+    MapperMetrics.Counter numInputTokens;
+    MapperMetrics.Counter numInputMwe;
+    MapperMetrics.Counter numSkippedSentences;
+    MapperMetrics.Counter numSkippedTokens;
+    MapperMetrics.Counter numUnparsedSentences;
+    MapperMetrics.Counter numPrunedWF;
+    MapperMetrics.Timer segmenterTime; // of the byte-level tokenizer, the engines have their own timers
+    MapperMetrics.Timer holingTime;
 
 	@Override
 	public void setup(Context context) throws IOException {
+        metrics = new MapperMetrics(context.getConfiguration());
+        numMapsCounter = metrics.counter("de.tudarmstadt.lt.jst", "NUM_MAPS");
+        numInputSentences = metrics.counter("de.tudarmstadt.lt.jst", "NUM_INPUT_SENTENCES");
+        numInputTokens = metrics.counter("de.tudarmstadt.lt.jst", "NUM_INPUT_TOKENS");
+        numInputMwe = metrics.counter("de.tudarmstadt.lt.jst", "NUM_INPUT_MWE");
+        numSkippedSentences = metrics.counter("de.tudarmstadt.lt.jst", "NUM_SKIPPED_SENTENCES_BY_SIZE");
+        numSkippedTokens = metrics.counter("de.tudarmstadt.lt.jst", "NUM_SKIPPED_TOKENS_BY_SIZE");
+        numUnparsedSentences = metrics.counter("de.tudarmstadt.lt.jst", "NUM_UNPARSED_SENTENCES");
+        numPrunedWF = metrics.counter("de.tudarmstadt.lt.jst", "NUM_PRUNED_WF");
+        segmenterTime = metrics.timer("SEGMENTER");
+        holingTime = metrics.timer("HOLING");
+
         processEach = context.getConfiguration().getInt("holing.process_each", 1);
         log.info("Process each: " + processEach);
 
         verbose = context.getConfiguration().getBoolean("holing.verbose", false);
         log.info("Verbose: " + verbose);
 
-        String mwePath = "";
-        if(context.getCacheFiles() != null && context.getCacheFiles().length > 0) mwePath = new File("mwe_voc").getAbsolutePath();
+        mwePath = "";
+        File mweFile = Resources.getCacheFile(context.getCacheFiles(), "mwe_voc");
+        if (mweFile != null) mwePath = mweFile.getAbsolutePath();
         log.info("MWE vocabulary: " + mwePath);
         mweByDicionary = !mwePath.equals("");
 
@@ -83,10 +127,16 @@ class HadoopMap extends Mapper<LongWritable, Text, Text, IntWritable> {
 
         computeCoocs = context.getConfiguration().getBoolean("holing.coocs", false);
         log.info("Computing coocs: " + computeCoocs);
+        int coocWindow = context.getConfiguration().getInt("holing.coocs.window", 0);
+        log.info("Cooc window (0 -- whole sentence): " + coocWindow);
+        if (computeCoocs) coocs = new CoocCounter(coocWindow);
 
         maxSentenceLength = context.getConfiguration().getInt("holing.sentences.maxlength", 100);
         log.info("Sentences max length: " +  maxSentenceLength);
 
+        parseMaxLength = context.getConfiguration().getInt("holing.dependencies.parse_maxlength", maxSentenceLength);
+        log.info("Sentences max length for the parser (longer -- trigram features): " + parseMaxLength);
+
         holingType = context.getConfiguration().getStrings("holing.type", "dependency")[0];
         log.info("Holing type: " + holingType);
 
@@ -104,40 +154,140 @@ class HadoopMap extends Mapper<LongWritable, Text, Text, IntWritable> {
 
         outputPos = context.getConfiguration().getBoolean("holing.output_pos", true);
         log.info("Output part-of-speech tags: " + outputPos);
+        ngramIndex = new NgramIndex(outputPos && lemmatize);
 
-        try {
-			segmenter = AnalysisEngineFactory.createEngine(StanfordSegmenter.class);
-			if (lemmatize) {
-                posTagger = AnalysisEngineFactory.createEngine(OpenNlpPosTagger.class);
-                lemmatizer = AnalysisEngineFactory.createEngine(StanfordLemmatizer.class);
-            }
-			if (holingType.equals("dependency")) synchronized(MaltParser.class) {
-                if (depParserType.equals("malt")) depParser = AnalysisEngineFactory.createEngine(MaltParser.class);
-                // Ignoring other parsers due to dependency incompatibilities in this version
-                //else if (depParserType.equals("mate")) depParser = AnalysisEngineFactory.createEngine(MateParser.class);
-                //else if (depParserType.equals("stanford")) depParser = AnalysisEngineFactory.createEngine(StanfordParser.class);
-                else depParser = AnalysisEngineFactory.createEngine(MaltParser.class);
-			}
-            if(mweByDicionary && mwePath != ""){
-                dictTagger = AnalysisEngineFactory.createEngine(DictionaryAnnotator.class,
-                    DictionaryAnnotator.PARAM_ANNOTATION_TYPE, NamedEntity.class,
-                    DictionaryAnnotator.PARAM_MODEL_LOCATION, mwePath,
-                    DictionaryAnnotator.PARAM_EXTENDED_MATCH, "true");
-            }
-            if(mweByNER){
-                nerEngine = AnalysisEngineFactory.createEngine(StanfordNamedEntityRecognizer.class,
-                        StanfordNamedEntityRecognizer.PARAM_LANGUAGE, "en",
-                        StanfordNamedEntityRecognizer.PARAM_VARIANT, "all.3class.distsim.crf");
-            }
+        conllInput = context.getConfiguration().get("holing.input", "text").equals("conll");
+        log.info("Input ('text' or 'conll'): " + (conllInput ? "conll" : "text"));
+
+        if (holingType.equals("ngram")) {
+            int ngramWidth = context.getConfiguration().getInt("holing.ngram.width", 1);
+            log.info("Ngram context width: " + ngramWidth);
+            ngramHoling = new NgramHoling(ngramWidth);
+        }
+        // Without lemmas, multiword expressions and named entities no engine is needed
+        tokenizeBytes = ngramHoling != null && !conllInput && !lemmatize && !mweByDicionary && !mweByNER;
+        log.info("Tokenize without engines: " + tokenizeBytes);
+
+        countedInput = context.getConfiguration().getBoolean("holing.input.counted", false);
+        log.info("Input sentences with counts: " + countedInput);
+
+        countPass = context.getConfiguration().getBoolean("holing.prune.count_pass", false);
+        File pruneFile = Resources.getCacheFile(context.getCacheFiles(), PruneFilter.CACHE_NAME);
+        if (pruneFile != null && !countPass) pruneFilter = PruneFilter.load(pruneFile);
+        log.info("Prune rare word-feature pairs: " + (pruneFilter != null) + (countPass ? " (counting pass)" : ""));
+
+        deriveFeatures = context.getConfiguration().getBoolean("holing.derive_features", false) && !countPass;
+        log.info("Derive feature counts from WF: " + deriveFeatures);
+
+        boolean aggregate = context.getConfiguration().getBoolean("holing.aggregate", false);
+        int aggregateMemoryMb = context.getConfiguration().getInt("holing.aggregate.memory_mb", 256);
+        log.info("In-mapper aggregation: " + aggregate + " (" + aggregateMemoryMb + " MB)");
+        if (aggregate) counts = new CountTable(aggregateMemoryMb * 1024L * 1024L);
 
-			jCas = CasCreationUtils.createCas(createTypeSystemDescription(), null, null).getJCas();
-		} catch (ResourceInitializationException e) {
-			log.error("Couldn't initialize analysis engine", e);
-		} catch (CASException e) {
-			log.error("Couldn't create new CAS", e);
-		}
+        watchdog = new RecordWatchdog(context, "de.tudarmstadt.lt.jst");
+        log.info("Record budget (0 -- none): " + watchdog.getTimeoutMs() + " ms, " + watchdog.getMaxBytes() + " bytes");
+
+        sharedEngines = context.getConfiguration().getBoolean(EnginePool.SHARED, true);
+        engines = createEngines(context);
+        jCas = engines.jCas;
 	}
 
+    /**
+     * The engines and the CAS of a mapper. They are replaced together when the analysis of a record runs over its
+     * time budget, as the abandoned worker thread may still use them, see RecordWatchdog. The analysis times its
+     * stages with the metrics of the engines, which map() adds to those of the mapper when the analysis is done.
+     */
+    static class Engines {
+        AnalysisEngine segmenter;
+        AnalysisEngine posTagger;
+        AnalysisEngine lemmatizer;
+        AnalysisEngine depParser;
+        AnalysisEngine dictTagger;
+        AnalysisEngine nerEngine;
+        JCas jCas;
+        final MapperMetrics metrics;
+        final MapperMetrics.Counter numSkippedSentences;
+        final MapperMetrics.Counter numSkippedTokens;
+        final MapperMetrics.Timer segmenterTime;
+        final MapperMetrics.Timer posTaggerTime;
+        final MapperMetrics.Timer lemmatizerTime;
+        final MapperMetrics.Timer dictTaggerTime;
+        final MapperMetrics.Timer nerTime;
+        final MapperMetrics.Timer parserTime;
+
+        Engines(Configuration conf) {
+            metrics = new MapperMetrics(conf);
+            numSkippedSentences = metrics.counter("de.tudarmstadt.lt.jst", "NUM_SKIPPED_SENTENCES_BY_SIZE");
+            numSkippedTokens = metrics.counter("de.tudarmstadt.lt.jst", "NUM_SKIPPED_TOKENS_BY_SIZE");
+            segmenterTime = metrics.timer("SEGMENTER");
+            posTaggerTime = metrics.timer("POS_TAGGER");
+            lemmatizerTime = metrics.timer("LEMMATIZER");
+            dictTaggerTime = metrics.timer("DICTIONARY_TAGGER");
+            nerTime = metrics.timer("NER");
+            parserTime = metrics.timer("PARSER");
+        }
+
+        void release() {
+            EnginePool.release(segmenter, posTagger, lemmatizer, depParser, nerEngine, jCas);
+        }
+
+        /** Drops the engines and the CAS of an abandoned analysis from the pool. */
+        void discard() {
+            EnginePool.discard(segmenter, posTagger, lemmatizer, depParser, nerEngine, jCas);
+        }
+    }
+
+    private Engines createEngines(Context context) {
+        Engines engines = new Engines(context.getConfiguration());
+        // With holing.threads > 1 each thread of the MultithreadedMapper has its own HadoopMap, i.e. its own JCas
+        // and engines. The engines are created one after another as loading the models is not thread-safe. Engines
+        // that an earlier mapper in this JVM has released are reused, see EnginePool.
+        synchronized (HadoopMap.class) {
+            try {
+                // CoNLL input is already segmented, tagged, lemmatized and parsed, only MWEs can be added
+                if (!conllInput && !tokenizeBytes) engines.segmenter = EnginePool.acquire(sharedEngines, StanfordSegmenter.class);
+                if (lemmatize && !conllInput) {
+                    engines.posTagger = EnginePool.acquire(sharedEngines, OpenNlpPosTagger.class);
+                    engines.lemmatizer = EnginePool.acquire(sharedEngines, StanfordLemmatizer.class);
+                }
+                if (holingType.equals("dependency") && !conllInput) synchronized(MaltParser.class) {
+                    if (depParserType.equals("malt")) engines.depParser = EnginePool.acquire(sharedEngines, MaltParser.class);
+                    // Ignoring other parsers due to dependency incompatibilities in this version
+                    //else if (depParserType.equals("mate")) depParser = AnalysisEngineFactory.createEngine(MateParser.class);
+                    //else if (depParserType.equals("stanford")) depParser = AnalysisEngineFactory.createEngine(StanfordParser.class);
+                    else engines.depParser = EnginePool.acquire(sharedEngines, MaltParser.class);
+                }
+                if(mweByDicionary && mwePath != ""){
+                    // not shared: the local path of the vocabulary can be the same for different vocabularies
+                    engines.dictTagger = AnalysisEngineFactory.createEngine(DictionaryAnnotator.class,
+                        DictionaryAnnotator.PARAM_ANNOTATION_TYPE, NamedEntity.class,
+                        DictionaryAnnotator.PARAM_MODEL_LOCATION, mwePath,
+                        DictionaryAnnotator.PARAM_EXTENDED_MATCH, "true");
+                }
+                if(mweByNER && !conllInput){
+                    engines.nerEngine = EnginePool.acquire(sharedEngines, StanfordNamedEntityRecognizer.class,
+                            StanfordNamedEntityRecognizer.PARAM_LANGUAGE, "en",
+                            StanfordNamedEntityRecognizer.PARAM_VARIANT, "all.3class.distsim.crf");
+                }
+
+                engines.jCas = EnginePool.acquireJCas(sharedEngines);
+            } catch (ResourceInitializationException e) {
+                log.error("Couldn't initialize analysis engine", e);
+            } catch (CASException e) {
+                log.error("Couldn't create new CAS", e);
+            }
+        }
+        return engines;
+    }
+
+    @Override
+    public void cleanup(Context context) throws IOException, InterruptedException {
+        if (counts != null) flush(context);
+        metrics.publish(context);
+        watchdog.close();
+        engines.release();
+    }
+
     /**
      * Filter out single-word named entities (they are already counted as tokens) and
      * */
@@ -156,36 +306,58 @@ class HadoopMap extends Mapper<LongWritable, Text, Text, IntWritable> {
 
 	@Override
 	public void map(LongWritable key, Text value, Context context) throws IOException, InterruptedException {
-        context.getCounter("de.tudarmstadt.lt.jst", "NUM_MAPS").increment(1);
-        if (context.getCounter("de.tudarmstadt.lt.jst", "NUM_MAPS").getValue() % processEach != 0) return;
+        metrics.record(context);
+        numMapsCounter.increment(1);
+        if (++numMaps % processEach != 0) return;
+        if (watchdog.skipBySize(key.get(), value.getLength())) return;
 
         try {
+            if (tokenizeBytes) {
+                int start = 0;
+                if (countedInput) {
+                    while (start < value.getLength() && value.getBytes()[start] != '\t') start++;
+                    weight = Long.parseLong(Text.decode(value.getBytes(), 0, start));
+                    start++;
+                }
+                textNgramHoling(context, value.getBytes(), start, value.getLength());
+                return;
+            }
             String text = value.toString();
-            jCas.reset();
-            jCas.setDocumentText(text);
-            jCas.setDocumentLanguage("en");
-            segmenter.process(jCas);
-            if(lemmatize) {
-                posTagger.process(jCas);
-                lemmatizer.process(jCas);
+            if (countedInput) {
+                int tab = text.indexOf('\t');
+                weight = Long.parseLong(text.substring(0, tab));
+                text = text.substring(tab + 1);
+            }
+            String record = text;
+            Engines analyzed = engines;
+            Boolean loaded = watchdog.call(() -> analyze(analyzed, record), key.get(), value.getLength());
+            if (loaded == null) {
+                // the abandoned worker may still use the engines and the CAS, the next records get new ones
+                analyzed.discard();
+                engines = createEngines(context);
+                jCas = engines.jCas;
+                return;
             }
-            if (mweByDicionary) dictTagger.process(jCas);
-            if (mweByNER) nerEngine.process(jCas);
-            if (holingType.equals("dependency")) depParser.process(jCas);
+            metrics.add(analyzed.metrics);
+            if (!loaded) return;
 
             for (Sentence sentence : JCasUtil.select(jCas, Sentence.class)) {
-                Collection<Token> tokens = JCasUtil.selectCovered(jCas, Token.class, sentence);
+                long sentenceStart = System.nanoTime();
+                List<Token> tokens = JCasUtil.selectCovered(jCas, Token.class, sentence);
 
-                if (tokens.size() > maxSentenceLength) {
-                    context.getCounter("de.tudarmstadt.lt.jst", "NUM_SKIPPED_SENTENCES_BY_SIZE").increment(1);
+                if (tokens.size() > maxSentenceLength) { // only CoNLL input, text input is filtered before tagging
+                    numSkippedSentences.increment(1);
+                    numSkippedTokens.increment(tokens.size());
                     continue;
                 }
-                context.getCounter("de.tudarmstadt.lt.jst", "NUM_INPUT_SENTENCES").increment(1);
+                numInputSentences.increment(1);
 
                 // W: word count -- single words
-                Set<String> words = new HashSet<>();
+                if (computeCoocs) coocs.clear();
+                int position = -1;
                 for (Token wordToken : tokens) {
-                    context.getCounter("de.tudarmstadt.lt.jst", "NUM_INPUT_TOKENS").increment(1);
+                    position++;
+                    numInputTokens.increment(1);
                     String word;
                     if (lemmatize) word = wordToken.getLemma().getValue();
                     else word = wordToken.getCoveredText();
@@ -193,47 +365,37 @@ class HadoopMap extends Mapper<LongWritable, Text, Text, IntWritable> {
                     if (outputPos && lemmatize){
                         word = word + POS_SEP + wordToken.getPos().getPosValue();
                     }
-                    context.write(new Text("W\t" + word), ONE);
+                    write(context, ChannelKey.W, word);
 
-                    if (computeCoocs) words.add(word);
+                    if (computeCoocs) coocs.add(position, word);
                 }
 
                 // W: word count -- ngrams
                 List<NamedEntity> ngrams = filterNgrams(JCasUtil.selectCovered(jCas, NamedEntity.class, sentence));
-                for (NamedEntity ngram : ngrams) {
-                    context.getCounter("de.tudarmstadt.lt.jst", "NUM_INPUT_MWE").increment(1);
-                    String ngramStr = "";
-                    if (outputPos && lemmatize){
-                        Collection<Token> ngramTokens = JCasUtil.selectCovered(jCas, Token.class, ngram);
-                        for (Token nt: ngramTokens){
-                            ngramStr += nt.getCoveredText() + POS_SEP + nt.getPos().getPosValue() + " ";
-                        }
-                        ngramStr = ngramStr.trim();
-                    } else {
-                        ngramStr = ngram.getCoveredText();
-                    }
-                    context.write(new Text("W\t" + ngramStr), ONE);
-                    if (computeCoocs) words.add(ngramStr);
+                ngramIndex.build(tokens, ngrams);
+                for (int i = 0; i < ngramIndex.size(); i++) {
+                    numInputMwe.increment(1);
+                    String ngramStr = ngramIndex.getString(i);
+                    write(context, ChannelKey.W, ngramStr);
+                    if (computeCoocs) coocs.add(ngramIndex.getFirstToken(i), ngramStr);
                 }
 
-                if (computeCoocs) {
-                    for (String word_i : words) {
-                        context.write(new Text("CoocF\t" + word_i), ONE);
-                        for (String word_j : words) {
-                            context.write(new Text("CoocWF\t" + word_i + "\t" + word_j), ONE);
-                        }
-                        context.progress();
-                    }
-                }
+                if (computeCoocs) writeCoocs(context);
 
                 // WF and F: word-feature counts and feature counts
-                if (holingType.equals("dependency")) {
+                if (holingType.equals("dependency") && !conllInput && tokens.size() > parseMaxLength) {
+                    numUnparsedSentences.increment(1);
+                    trigramHoling(context, tokens, ngrams, outputPos && lemmatize);
+                } else if (holingType.equals("dependency")) {
                     dependencyHoling(context, tokens, ngrams, sentence);
                 } else if(holingType.equals("trigram")) {
-                    trigramHoling(context, tokens, ngrams);
+                    trigramHoling(context, tokens, ngrams, false);
+                } else if (holingType.equals("ngram")) {
+                    casNgramHoling(context, tokens);
                 } else {
                     dependencyHoling(context, tokens, ngrams, sentence);
                 }
+                metrics.sentenceHoling(tokens.size(), holingTime.stop(sentenceStart) - sentenceStart);
             }
         } catch(Exception e){
             if (verbose) log.error("Can't process line: " + value.toString(), e);
@@ -241,35 +403,169 @@ class HadoopMap extends Mapper<LongWritable, Text, Text, IntWritable> {
         }
     }
 
-    private void trigramHoling(Context context, Collection<Token> tokens, List<NamedEntity> ngrams)
+    /**
+     * Runs the engines on the text of a record, in the worker thread of the watchdog if there is a time budget.
+     * Returns false if the record is not a sentence of the CoNLL input.
+     * */
+    private Boolean analyze(Engines e, String text) throws Exception {
+        e.jCas.reset();
+        long t = System.nanoTime();
+        if (conllInput) {
+            // one record is one sentence of the CoNLL output, named entities are taken from the BIO column
+            if (!CasLoader.load(e.jCas, text, mweByNER)) return false;
+            t = e.segmenterTime.stop(t);
+            if (mweByDicionary) e.dictTagger.process(e.jCas);
+            t = e.dictTaggerTime.stop(t);
+        } else {
+            e.jCas.setDocumentText(text);
+            e.jCas.setDocumentLanguage("en");
+            e.segmenter.process(e.jCas);
+            // the other engines are not run on the sentences that are skipped below anyway
+            SentenceFilter.removeLongSentences(e.jCas, maxSentenceLength, e.numSkippedSentences, e.numSkippedTokens);
+            t = e.segmenterTime.stop(t);
+            if(lemmatize) {
+                e.posTagger.process(e.jCas);
+                t = e.posTaggerTime.stop(t);
+                e.lemmatizer.process(e.jCas);
+                t = e.lemmatizerTime.stop(t);
+            }
+            if (mweByDicionary) e.dictTagger.process(e.jCas);
+            t = e.dictTaggerTime.stop(t);
+            if (mweByNER) e.nerEngine.process(e.jCas);
+            t = e.nerTime.stop(t);
+            if (holingType.equals("dependency")) {
+                // the parse time grows faster than the length, the longest sentences get trigram features instead
+                List<Sentence> unparsed = SentenceFilter.hideLongSentences(e.jCas, parseMaxLength);
+                e.depParser.process(e.jCas);
+                SentenceFilter.restoreSentences(unparsed);
+            }
+            t = e.parserTime.stop(t);
+        }
+        return true;
+    }
+
+    private void writeCoocs(Context context) throws IOException, InterruptedException {
+        coocs.computePairs();
+        for (int i = 0; i < coocs.getNumWords(); i++) {
+            write(context, ChannelKey.COOC_F, coocs.getWord(i));
+        }
+        // each unordered pair is written once, the reducer mirrors it
+        for (int i = 0; i < coocs.getNumPairs(); i++) {
+            write(context, ChannelKey.COOC_WF, coocs.getPairFirst(i), coocs.getPairSecond(i));
+        }
+        context.progress();
+    }
+
+    /**
+     * Ngram holing of the surface forms of plain text: the sentences are tokenized from the bytes of the record
+     * by NgramHoling, no engine is run and no CAS is filled.
+     * */
+    private void textNgramHoling(Context context, byte[] text, int start, int end) throws IOException, InterruptedException {
+        ngramHoling.reset(text, start, end);
+        long t = System.nanoTime();
+        while (ngramHoling.nextSentence()) {
+            t = segmenterTime.stop(t);
+            int numTokens = ngramHoling.size();
+            if (numTokens > maxSentenceLength) {
+                numSkippedSentences.increment(1);
+                numSkippedTokens.increment(numTokens);
+                continue;
+            }
+            numInputSentences.increment(1);
+            numInputTokens.increment(numTokens);
+
+            if (computeCoocs) coocs.clear();
+            for (int i = 0; i < numTokens; i++) {
+                if (!countPass) {
+                    wordKey.clear(ChannelKey.W);
+                    ngramHoling.appendToken(i, wordKey);
+                    write(context, wordKey);
+                }
+                if (computeCoocs) coocs.add(i, ngramHoling.getToken(i));
+            }
+            if (computeCoocs) writeCoocs(context);
+            writeNgramFeatures(context);
+            long sentenceStart = t;
+            t = holingTime.stop(t);
+            metrics.sentenceHoling(numTokens, t - sentenceStart);
+        }
+    }
+
+    /** Ngram holing of the tokens of the CAS, lemmas if holing.lemmatize is on. */
+    private void casNgramHoling(Context context, Collection<Token> tokens) throws IOException, InterruptedException {
+        ngramHoling.clear();
+        for (Token token : tokens) {
+            String word = lemmatize && token.getLemma() != null ? token.getLemma().getValue() : token.getCoveredText();
+            if (word != null) ngramHoling.addToken(word);
+        }
+        writeNgramFeatures(context);
+    }
+
+    /** Writes F and WF for each token of the sentence in ngramHoling. */
+    private void writeNgramFeatures(Context context) throws IOException, InterruptedException {
+        for (int i = 0; i < ngramHoling.size(); i++) {
+            wordKey.clear(ChannelKey.W);
+            ngramHoling.appendToken(i, wordKey);
+            featureKey.clear(ChannelKey.F);
+            ngramHoling.appendFeature(i, featureKey);
+            if (countPass) {
+                write(context, wordKey);
+                write(context, featureKey);
+                continue;
+            }
+            boolean derived = deriveFeatures && !hasSpace(wordKey);
+            if (!derived) write(context, featureKey);
+            if (pruneFilter != null && !(pruneFilter.mightPass(wordKey) && pruneFilter.mightPass(featureKey))) {
+                numPrunedWF.increment(1);
+                if (derived) write(context, featureKey); // the pair is not in WF
+                continue;
+            }
+            outKey.clear(ChannelKey.WF);
+            outKey.append(wordKey.getBytes(), 0, wordKey.getLength());
+            outKey.appendTab();
+            outKey.append(featureKey.getBytes(), 0, featureKey.getLength());
+            write(context, outKey);
+        }
+        context.progress();
+    }
+
+    /**
+     * Writes the trigram features of the sentence. With wordPos the words are written with their part of speech like
+     * by dependencyHoling(), for the sentences that are too long to be parsed.
+     * */
+    private void trigramHoling(Context context, Collection<Token> tokens, List<NamedEntity> ngrams, boolean wordPos)
             throws AnalysisEngineProcessException, IOException, InterruptedException
     {
         try {
             String center = Const.BEGEND_CHAR;
             String left = Const.BEGEND_CHAR;
             String right = Const.BEGEND_CHAR;
+            String centerWord = center;
+            String rightWord = right;
 
             for (Token rightToken : tokens) {
 
                 if (lemmatize && rightToken.getLemma() != null) right = rightToken.getLemma().getValue();
                 else right = rightToken.getCoveredText();
                 if (right == null) continue;
+                rightWord = wordPos && rightToken.getPos() != null ? right + POS_SEP + rightToken.getPos().getPosValue() : right;
 
                 if (!right.equals(Const.BEGEND_CHAR) && !center.equals(Const.BEGEND_CHAR)) {
                     String bim = left + "_@_" + right;
-                    context.write(new Text("F\t" + bim), ONE);
-                    context.write(new Text("WF\t" + center + "\t" + bim), ONE);
+                    writeF(context, centerWord, bim);
+                    write(context, ChannelKey.WF, centerWord, bim);
                     context.progress();
                 }
 
                 left = center;
                 center = right;
+                centerWord = rightWord;
             }
 
             if (!right.equals(Const.BEGEND_CHAR)) {
                 String bim = left + "_@_" + Const.BEGEND_CHAR;
-                context.write(new Text("F\t" + bim), ONE);
-                context.write(new Text("WF\t" + right + "\t" + bim), ONE);
+                writeF(context, rightWord, bim);
+                write(context, ChannelKey.WF, rightWord, bim);
                 context.progress();
             }
         } catch (Exception exc) {
@@ -298,25 +594,25 @@ class HadoopMap extends Mapper<LongWritable, Text, Text, IntWritable> {
 
             // Save the dependenc1y as a feature
             String bim = dependent.getBegin() < governor.getBegin() ? dtype + "(" + dependentLemma + ",@)" : dtype + "(@," + dependentLemma + ")";
-            context.write(new Text("F\t" + bim), ONE);
             String governorLemmaOut = outputPos ? governorLemma + POS_SEP + governorPos : governorLemma;
-            context.write(new Text("WF\t" + governorLemmaOut + "\t" + bim), ONE); // part of speech is outputed only for words, not for features to reduce sparcity
+            writeF(context, governorLemmaOut, bim);
+            write(context, ChannelKey.WF, governorLemmaOut, bim); // part of speech is outputed only for words, not for features to reduce sparcity
 
             // Save inverse dependency as a feature
             String ibim = dependent.getBegin() < governor.getBegin() ? dtype + "(@," + governorLemma + ")" : dtype + "(" + governorLemma + ",@)";
 
-            context.write(new Text("F\t" + ibim), ONE);
             String dependentLemmaOut = outputPos ? dependentLemma + POS_SEP + dependentPos : dependentLemma;
-            context.write(new Text("WF\t" + dependentLemmaOut + "\t" + ibim), ONE);
+            writeF(context, dependentLemmaOut, ibim);
+            write(context, ChannelKey.WF, dependentLemmaOut, ibim);
 
             // Generate features for multiword expressions
-            String governorNgram = findNgram(ngrams, governor.getBegin(), governor.getEnd());
-            String dependantNgram = findNgram(ngrams, dependent.getBegin(), dependent.getEnd());
+            String governorNgram = ngramIndex.find(governor.getBegin(), governor.getEnd());
+            String dependantNgram = ngramIndex.find(dependent.getBegin(), dependent.getEnd());
             if (!governorNgram.equals("") && governorNgram.equals(dependantNgram) && !useNgramSelfFeatures) {
                 // do not generate self-reference ngram features
             } else {
-                if (!governorNgram.equals("")) context.write(new Text("WF\t" + governorNgram + "\t" + bim), ONE);
-                if (!dependantNgram.equals("")) context.write(new Text("WF\t" + dependantNgram + "\t" + ibim), ONE);
+                if (!governorNgram.equals("")) write(context, ChannelKey.WF, governorNgram, bim);
+                if (!dependantNgram.equals("")) write(context, ChannelKey.WF, dependantNgram, ibim);
             }
 
             context.progress();
@@ -324,24 +620,80 @@ class HadoopMap extends Mapper<LongWritable, Text, Text, IntWritable> {
     }
 
     /**
-     * If a token in the given range overlaps with an ngram => associate features of the token with the ngram.
+     * Writes the feature count of a word-feature pair. With holing.derive_features it is added up from WF after the
+     * job instead (FeatureCountsMap), except for words with spaces: in dependencyHoling() the multiword expressions
+     * get WF pairs without a feature count of their own.
      * */
-    private String findNgram(List<NamedEntity> ngrams, int beginToken, int endToken){
-        for (Annotation ngram : ngrams){
-            if (ngram.getBegin() <= beginToken && ngram.getEnd() >= endToken) {
-                if (outputPos && lemmatize) {
-                    String ngramStr = "";
-                    Collection<Token> ngramTokens = JCasUtil.selectCovered(jCas, Token.class, ngram);
-                    for (Token nt: ngramTokens){
-                        ngramStr += nt.getCoveredText() + POS_SEP + nt.getPos().getPosValue() + " ";
-                    }
-                    return ngramStr.trim();
-                } else {
-                    return ngram.getCoveredText();
-                }
+    private void writeF(Context context, String word, String feature) throws IOException, InterruptedException {
+        if (deriveFeatures && word.indexOf(' ') < 0) return;
+        write(context, ChannelKey.F, feature);
+    }
+
+    private static boolean hasSpace(ChannelKey key) {
+        byte[] bytes = key.getBytes();
+        for (int i = 0; i < key.getLength(); i++) {
+            if (bytes[i] == ' ') return true;
+        }
+        return false;
+    }
+
+    /**
+     * Writes a count of the word to the channel. The key object is reused: context.write() serializes it right away.
+     * */
+    private void write(Context context, byte channel, String word) throws IOException, InterruptedException {
+        if (countPass) return;
+        outKey.set(channel, word);
+        write(context, outKey);
+    }
+
+    private void write(Context context, byte channel, String word, String feature) throws IOException, InterruptedException {
+        if (channel == ChannelKey.WF) {
+            if (countPass) {
+                // W and F count how many pairs each word and feature has, the pruning threshold refers to these counts
+                outKey.set(ChannelKey.W, word);
+                write(context, outKey);
+                outKey.set(ChannelKey.F, feature);
+                write(context, outKey);
+                return;
             }
+            if (pruneFilter != null && !(pruneFilter.mightPass(ChannelKey.W, word) && pruneFilter.mightPass(ChannelKey.F, feature))) {
+                numPrunedWF.increment(1);
+                if (deriveFeatures && word.indexOf(' ') < 0) write(context, ChannelKey.F, feature); // the pair is not in WF
+                return;
+            }
+        } else if (countPass) {
+            return;
+        }
+        outKey.set(channel, word, feature);
+        write(context, outKey);
+    }
+
+    private void write(Context context, ChannelKey key) throws IOException, InterruptedException {
+        if (counts == null) {
+            if (weight == 1) {
+                context.write(key, ONE);
+            } else {
+                outCount.set(weight);
+                context.write(key, outCount);
+            }
+        } else {
+            counts.add(key, weight);
+            if (counts.isFull()) flush(context);
+        }
+    }
+
+    /**
+     * Writes the counts aggregated in the mapper so far and empties the table.
+     * */
+    private void flush(Context context) throws IOException, InterruptedException {
+        for (int slot = counts.next(0); slot >= 0; slot = counts.next(slot + 1)) {
+            counts.readKey(slot, outKey);
+            outCount.set(counts.getCount(slot));
+            context.write(outKey, outCount);
         }
-        return "";
+        context.getCounter("de.tudarmstadt.lt.jst", "NUM_AGGREGATION_FLUSHES").increment(1);
+        context.getCounter("de.tudarmstadt.lt.jst", "NUM_AGGREGATED_KEYS").increment(counts.size());
+        counts.clear();
     }
 
 }
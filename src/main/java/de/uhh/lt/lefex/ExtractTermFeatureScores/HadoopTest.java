@@ -1,10 +1,22 @@
 package de.uhh.lt.lefex.ExtractTermFeatureScores;
 
 import de.uhh.lt.lefex.Utils.Format;
+import de.uhh.lt.lefex.Utils.FrontCodedFile;
 import de.uhh.lt.lefex.TestPaths;
 import de.uhh.lt.lefex.Utils.Resources;
+import de.uhh.lt.lefex.Utils.SampledTextInputFormat;
 import org.apache.commons.io.FileUtils;
 import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapreduce.InputSplit;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.RecordReader;
+import org.apache.hadoop.mapreduce.TaskAttemptID;
+import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
+import org.apache.hadoop.mapreduce.task.TaskAttemptContextImpl;
 import org.apache.hadoop.util.ToolRunner;
 import org.junit.Test;
 import java.io.File;
@@ -79,6 +91,30 @@ public class HadoopTest {
         }
     }
 
+    /**
+     * Asserts that the gzipped outputs of the channels in outDir have the same lines as those in refDir. A channel
+     * can be spread over several files, e.g. of several reducers or hot keys, then the order of the lines is ignored.
+     */
+    private static void assertSameChannels(String refDir, String outDir, String... channels) throws Exception {
+        for (String channel : channels) {
+            List<String> lines = readChannel(refDir, channel);
+            List<String> outLines = readChannel(outDir, channel);
+            if (new File(outDir).listFiles((dir, name) -> name.startsWith(channel + "-r-")).length > 1) {
+                Collections.sort(lines);
+                Collections.sort(outLines);
+            }
+            assertEquals("Entries of " + channel + " differ.", lines, outLines);
+        }
+    }
+
+    private static List<String> readChannel(String dir, String channel) throws Exception {
+        File[] files = new File(dir).listFiles((d, name) -> name.startsWith(channel + "-r-"));
+        Arrays.sort(files);
+        List<String> lines = new ArrayList<>();
+        for (File file : files) lines.addAll(Format.readGzipAsList(file.getAbsolutePath()));
+        return lines;
+    }
+
     @Test
     public void testDependencyHolingMweSelfFeaturesNER() throws Exception {
         HashMap<String, List<String>> expectedWF = new HashMap<>();
@@ -241,6 +277,27 @@ public class HadoopTest {
         runDependencyHoling(false, true, false, 619, expectedWF, unexpectedWF, "malt");
     }
 
+    @Test
+    public void testDependencyHolingFromCoNLL() throws Exception {
+        TestPaths paths = new TestPaths("");
+        String conllDir = paths.getOutputDir() + "-conll";
+        FileUtils.deleteDirectory(new File(conllDir));
+        Configuration conllConf = new Configuration();
+        conllConf.setBoolean("collapsing", false);
+        ToolRunner.run(conllConf, new de.uhh.lt.lefex.CoNLL.HadoopMain(), new String[]{paths.getInputPath(), conllDir, "false"});
+
+        Configuration conf = new Configuration();
+        conf.setStrings("holing.input", "conll");
+        conf.setStrings("holing.type", "dependency");
+        conf.setBoolean("holing.mwe.ner", true);
+        conf.setBoolean("holing.output_pos", false);
+        ToolRunner.run(conf, new HadoopMain(), new String[]{conllDir, paths.getOutputDir(), "true"});
+
+        String WFPath = (new File(paths.getOutputDir(), "WF-r-00000.gz")).getAbsolutePath();
+        List<String> lines = Format.readGzipAsList(WFPath);
+        assertTrue("Expected feature is missing in the WF file.", lines.contains("very\tadvmod(@,rigid)\t1"));
+    }
+
     @Test
     public void testDependencyHolingNoMWE() throws Exception {
         HashMap<String, List<String>> expectedWF = new HashMap<>();
@@ -256,6 +313,31 @@ public class HadoopTest {
         runDependencyHoling(false, false, false, 722, expectedWF, unexpectedWF, "malt");
     }
 
+    @Test
+    public void testDependencyHolingParseMaxLength() throws Exception {
+        TestPaths paths = new TestPaths("");
+        Configuration conf = new Configuration();
+        conf.setInt("holing.sentences.maxlength", 100);
+        conf.setInt("holing.dependencies.parse_maxlength", 20);
+        conf.setStrings("holing.type", "dependency");
+        ToolRunner.run(conf, new HadoopMain(), new String[]{paths.getInputPath(), paths.getOutputDir(), "true"});
+
+        // The sentences of more than 20 tokens are not parsed but get trigram features, with the same words
+        boolean dependencyFeatures = false;
+        boolean trigramFeatures = false;
+        for (String line : Format.readGzipAsList((new File(paths.getOutputDir(), "WF-r-00000.gz")).getAbsolutePath())) {
+            String[] fields = line.split("\t");
+            if (fields[1].contains("_@_")) {
+                trigramFeatures = true;
+                assertTrue("The word has no part of speech: " + fields[0], fields[0].contains("#"));
+            } else if (fields[1].contains("@")) {
+                dependencyFeatures = true;
+            }
+        }
+        assertTrue("No dependency features.", dependencyFeatures);
+        assertTrue("No trigram features of long sentences.", trigramFeatures);
+    }
+
     @Test
     public void testTrigramHolingLemmaPRJ() throws Exception {
         runTrigram(true);
@@ -318,6 +400,53 @@ public class HadoopTest {
     }
 
 
+    @Test
+    public void testTrigramSampled() throws Exception {
+        TestPaths paths = new TestPaths("");
+        Configuration conf = new Configuration();
+        conf.setBoolean("holing.coocs", false);
+        conf.setInt("holing.sentences.maxlength", 100);
+        conf.setStrings("holing.type", "trigram");
+        conf.setFloat("sample.fraction", 0.5f);
+        conf.setLong("sample.chunk_size", 512);
+
+        ToolRunner.run(conf, new HadoopMain(), new String[]{paths.getInputPath(), paths.getOutputDir(), "true"});
+
+        String WFPath = (new File(paths.getOutputDir(), "WF-r-00000.gz")).getAbsolutePath();
+        List<String> lines = Format.readGzipAsList(WFPath);
+        assertTrue("Sample should be smaller than the full output.", lines.size() > 0 && lines.size() < 410);
+
+        // The sample is a part of the input lines, read in input order
+        List<String> inputLines = FileUtils.readLines(new File(paths.getInputPath()), "UTF-8");
+        List<String> sampledLines = new ArrayList<>();
+        Job job = Job.getInstance(conf);
+        FileInputFormat.addInputPath(job, new Path(paths.getInputPath()));
+        SampledTextInputFormat format = new SampledTextInputFormat();
+        for (InputSplit split : format.getSplits(job)) {
+            TaskAttemptContextImpl context = new TaskAttemptContextImpl(job.getConfiguration(), new TaskAttemptID());
+            try (RecordReader<LongWritable, Text> reader = format.createRecordReader(split, context)) {
+                reader.initialize(split, context);
+                while (reader.nextKeyValue()) sampledLines.add(reader.getCurrentValue().toString());
+            }
+        }
+        assertTrue("Some lines must be dropped.", !sampledLines.isEmpty() && sampledLines.size() < inputLines.size());
+        int next = 0;
+        for (String line : sampledLines) {
+            while (next < inputLines.size() && !inputLines.get(next).equals(line)) next++;
+            assertTrue("Sampled line is not an input line: " + line, next++ < inputLines.size());
+        }
+
+        // The counts of the sample are the full counts of the sampled lines
+        File sampleDir = new File(paths.getOutputDir() + "-sample-input");
+        String sampleCountsDir = paths.getOutputDir() + "-sample-counts";
+        FileUtils.deleteDirectory(sampleDir);
+        FileUtils.deleteDirectory(new File(sampleCountsDir));
+        FileUtils.writeLines(new File(sampleDir, "sample.txt"), "UTF-8", sampledLines);
+        conf.setFloat("sample.fraction", 1.0f);
+        ToolRunner.run(conf, new HadoopMain(), new String[]{sampleDir.getAbsolutePath(), sampleCountsDir, "true"});
+        assertSameChannels(sampleCountsDir, paths.getOutputDir(), "W", "F", "WF");
+    }
+
     @Test
     public void testTrigramWithCoocs() throws Exception {
         TestPaths paths = new TestPaths("");
@@ -330,6 +459,29 @@ public class HadoopTest {
         ToolRunner.run(conf, new HadoopMain(), new String[]{paths.getInputPath(), paths.getOutputDir(), "true"});
     }
 
+    @Test
+    public void testTrigramWithCoocsWindow() throws Exception {
+        TestPaths paths = new TestPaths("");
+        Configuration conf = new Configuration();
+        conf.setBoolean("holing.coocs", true);
+        conf.setInt("holing.coocs.window", 3);
+        conf.setInt("holing.sentences.maxlength", 100);
+        conf.setStrings("holing.type", "trigram");
+
+        ToolRunner.run(conf, new HadoopMain(), new String[]{paths.getInputPath(), paths.getOutputDir(), "true"});
+
+        String coocPath = (new File(paths.getOutputDir(), "CoocWF-r-00000.gz")).getAbsolutePath();
+        Set<String> pairs = new HashSet<>();
+        for (String line : Format.readGzipAsList(coocPath)) {
+            String[] fields = line.split("\t");
+            assertTrue("Duplicate co-occurrence: " + line, pairs.add(fields[0] + "\t" + fields[1]));
+        }
+        for (String pair : pairs) {
+            String[] fields = pair.split("\t");
+            assertTrue("Co-occurrence is not symmetric: " + pair, pairs.contains(fields[1] + "\t" + fields[0]));
+        }
+    }
+
     @Test
     public void testTrigram() throws Exception {
         TestPaths paths = new TestPaths("");
@@ -356,6 +508,321 @@ public class HadoopTest {
         assertTrue("Some features are missing in the file.", expectedFeatures.size() == 0); // all expected features are found
     }
 
+    @Test
+    public void testTrigramAggregated() throws Exception {
+        TestPaths paths = new TestPaths("");
+        Configuration conf = new Configuration();
+        conf.setBoolean("holing.coocs", true);
+        conf.setInt("holing.sentences.maxlength", 100);
+        conf.setStrings("holing.type", "trigram");
+        conf.setBoolean("holing.aggregate", true);
+        conf.setInt("holing.aggregate.memory_mb", 1); // forces several flushes
+
+        ToolRunner.run(conf, new HadoopMain(), new String[]{paths.getInputPath(), paths.getOutputDir(), "true"});
+
+        String WFPath = (new File(paths.getOutputDir(), "WF-r-00000.gz")).getAbsolutePath();
+        List<String> lines = Format.readGzipAsList(WFPath);
+        assertEquals("Number of lines is wrong.", 410, lines.size());
+    }
+
+    private void runTrigramCountedInput(long weight) throws Exception {
+        TestPaths paths = new TestPaths("");
+        Configuration conf = new Configuration();
+        conf.setBoolean("holing.coocs", false);
+        conf.setInt("holing.sentences.maxlength", 100);
+        conf.setStrings("holing.type", "trigram");
+        ToolRunner.run(conf, new HadoopMain(), new String[]{paths.getInputPath(), paths.getOutputDir(), "true"});
+        List<String> lines = Format.readGzipAsList((new File(paths.getOutputDir(), "WF-r-00000.gz")).getAbsolutePath());
+
+        // Every sentence occurs weight times
+        File countedInput = new File(paths.getInputPath() + "-counted");
+        List<String> countedLines = new ArrayList<>();
+        for (String line : FileUtils.readLines(new File(paths.getInputPath()), "UTF-8")) countedLines.add(weight + "\t" + line);
+        FileUtils.writeLines(countedInput, "UTF-8", countedLines);
+        String countedOutputDir = countedInput.getAbsolutePath() + "-out";
+        FileUtils.deleteDirectory(new File(countedOutputDir));
+        conf.setBoolean("holing.input.counted", true);
+        ToolRunner.run(conf, new HadoopMain(), new String[]{countedInput.getAbsolutePath(), countedOutputDir, "true"});
+        List<String> weightedLines = Format.readGzipAsList((new File(countedOutputDir, "WF-r-00000.gz")).getAbsolutePath());
+
+        assertEquals("Number of lines is wrong.", lines.size(), weightedLines.size());
+        Set<String> expected = new HashSet<>();
+        for (String line : lines) {
+            int tab = line.lastIndexOf('\t');
+            expected.add(line.substring(0, tab) + "\t" + weight * Long.parseLong(line.substring(tab + 1)));
+        }
+        assertEquals(expected, new HashSet<>(weightedLines));
+    }
+
+    @Test
+    public void testTrigramCountedInput() throws Exception {
+        runTrigramCountedInput(3);
+    }
+
+    @Test
+    public void testTrigramCountedInputLongCounts() throws Exception {
+        runTrigramCountedInput(3000000000L); // the sums do not fit into an int
+    }
+
+    @Test
+    public void testTrigramPruned() throws Exception {
+        TestPaths paths = new TestPaths("");
+        Configuration conf = new Configuration();
+        conf.setBoolean("holing.coocs", false);
+        conf.setInt("holing.sentences.maxlength", 100);
+        conf.setStrings("holing.type", "trigram");
+        ToolRunner.run(conf, new HadoopMain(), new String[]{paths.getInputPath(), paths.getOutputDir(), "true"});
+        List<String> lines = Format.readGzipAsList((new File(paths.getOutputDir(), "WF-r-00000.gz")).getAbsolutePath());
+
+        String prunedOutputDir = paths.getOutputDir() + "-pruned";
+        FileUtils.deleteDirectory(new File(prunedOutputDir));
+        conf.setInt("holing.prune.min_count", 2);
+        ToolRunner.run(conf, new HadoopMain(), new String[]{paths.getInputPath(), prunedOutputDir, "true"});
+        List<String> prunedLines = Format.readGzipAsList((new File(prunedOutputDir, "WF-r-00000.gz")).getAbsolutePath());
+
+        // Pairs count per word and per feature
+        Map<String, Integer> wordPairs = new HashMap<>();
+        Map<String, Integer> featurePairs = new HashMap<>();
+        for (String line : lines) {
+            String[] fields = line.split("\t");
+            wordPairs.merge(fields[0], Integer.parseInt(fields[2]), Integer::sum);
+            featurePairs.merge(fields[1], Integer.parseInt(fields[2]), Integer::sum);
+        }
+        Set<String> expected = new HashSet<>();
+        for (String line : lines) {
+            String[] fields = line.split("\t");
+            if (wordPairs.get(fields[0]) >= 2 && featurePairs.get(fields[1]) >= 2) expected.add(line);
+        }
+
+        assertTrue("Nothing was pruned.", prunedLines.size() < lines.size());
+        assertTrue("Counts must be exact.", lines.containsAll(prunedLines));
+        assertTrue("Frequent pairs must be kept.", prunedLines.containsAll(expected));
+        assertFalse("Counting pass output must be deleted.", new File(prunedOutputDir + "-prune-counts").exists());
+    }
+
+    @Test
+    public void testTrigramFrontCoded() throws Exception {
+        TestPaths paths = new TestPaths("");
+        Configuration conf = new Configuration();
+        conf.setBoolean("holing.coocs", true);
+        conf.setInt("holing.sentences.maxlength", 100);
+        conf.setStrings("holing.type", "trigram");
+        ToolRunner.run(conf, new HadoopMain(), new String[]{paths.getInputPath(), paths.getOutputDir(), "true"});
+
+        String fcOutputDir = paths.getOutputDir() + "-fc";
+        FileUtils.deleteDirectory(new File(fcOutputDir));
+        conf.set("holing.output.format", "frontcoded");
+        conf.setInt(FrontCodedFile.BLOCK_SIZE, 1024); // several blocks per file
+        ToolRunner.run(conf, new HadoopMain(), new String[]{paths.getInputPath(), fcOutputDir, "true"});
+
+        FileSystem fs = FileSystem.getLocal(conf);
+        for (String channel : new String[]{"W", "F", "WF", "CoocF", "CoocWF"}) {
+            List<String> lines = Format.readGzipAsList((new File(paths.getOutputDir(), channel + "-r-00000.gz")).getAbsolutePath());
+            FrontCodedFile.Reader reader = new FrontCodedFile.Reader(fs, new Path(fcOutputDir, channel + "-r-00000" + FrontCodedFile.EXTENSION));
+            List<String> entries = new ArrayList<>();
+            Text key = new Text();
+            LongWritable count = new LongWritable();
+            while (reader.next(key, count)) entries.add(key + "\t" + count.get());
+            assertEquals("Entries of " + channel + " differ.", lines, entries);
+            assertEquals(!channel.equals("CoocWF"), reader.isSorted()); // mirrored co-occurrences are unsorted
+
+            if (reader.isSorted()) {
+                for (String line : lines) {
+                    int tab = line.lastIndexOf('\t');
+                    assertEquals(Long.parseLong(line.substring(tab + 1)), reader.get(new Text(line.substring(0, tab))));
+                }
+                assertEquals(-1, reader.get(new Text("no such key")));
+            }
+            reader.close();
+        }
+    }
+
+    @Test
+    public void testTrigramLocalRunner() throws Exception {
+        TestPaths paths = new TestPaths("");
+        Configuration conf = new Configuration();
+        conf.setBoolean("holing.coocs", true);
+        conf.setInt("holing.sentences.maxlength", 100);
+        conf.setStrings("holing.type", "trigram");
+        ToolRunner.run(conf, new HadoopMain(), new String[]{paths.getInputPath(), paths.getOutputDir(), "true"});
+
+        String localOutputDir = paths.getOutputDir() + "-local";
+        FileUtils.deleteDirectory(new File(localOutputDir));
+        conf.setInt("holing.local.threads", 2);
+        conf.setInt("holing.local.memory_mb", 1); // forces several sorted runs
+        conf.setBoolean("holing.derive_features", true); // ignored, the F counts are the same
+        ToolRunner.run(conf, new LocalRunner(), new String[]{paths.getInputPath(), localOutputDir, "true"});
+
+        assertSameChannels(paths.getOutputDir(), localOutputDir, "W", "F", "WF", "CoocF", "CoocWF");
+    }
+
+    @Test
+    public void testTrigramIncremental() throws Exception {
+        TestPaths paths = new TestPaths("");
+        File shardsDir = new File(paths.getOutputDir() + "-shards");
+        String incrementalOutputDir = paths.getOutputDir() + "-incremental";
+        FileUtils.deleteDirectory(shardsDir);
+        FileUtils.deleteDirectory(new File(incrementalOutputDir));
+        Configuration conf = new Configuration();
+        conf.setBoolean("holing.coocs", true);
+        conf.setInt("holing.sentences.maxlength", 100);
+        conf.setStrings("holing.type", "trigram");
+        conf.setBoolean("holing.incremental", true);
+        conf.setInt("holing.record.max_bytes", 300);
+        conf.setBoolean("holing.output.ids", true);
+
+        // Two shards arrive one after another
+        FileUtils.copyFile(new File(paths.getInputPath()), new File(shardsDir, "shard-1.txt"));
+        assertEquals(0, ToolRunner.run(conf, new HadoopMain(), new String[]{shardsDir.getAbsolutePath(), incrementalOutputDir, "true"}));
+        FileUtils.copyFile(new File(paths.getInputPath()), new File(shardsDir, "shard-2.txt"));
+        assertEquals(0, ToolRunner.run(conf, new HadoopMain(), new String[]{shardsDir.getAbsolutePath(), incrementalOutputDir, "true"}));
+        List<String> dict = Format.readAsList(new File(incrementalOutputDir, "ids/dict/WordIds-r-00000").getAbsolutePath());
+        // Nothing new to count, the ids are kept
+        assertEquals(0, ToolRunner.run(conf, new HadoopMain(), new String[]{shardsDir.getAbsolutePath(), incrementalOutputDir, "true"}));
+        assertEquals(dict, Format.readAsList(new File(incrementalOutputDir, "ids/dict/WordIds-r-00000").getAbsolutePath()));
+
+        conf.setBoolean("holing.incremental", false);
+        conf.setBoolean("holing.output.ids", false);
+        ToolRunner.run(conf, new HadoopMain(), new String[]{shardsDir.getAbsolutePath(), paths.getOutputDir(), "true"});
+
+        assertSameChannels(paths.getOutputDir(), incrementalOutputDir, "W", "F", "WF", "CoocF", "CoocWF");
+        assertEquals(2, FileUtils.readLines(new File(incrementalOutputDir, InputManifest.FILE_NAME), "UTF-8").size());
+
+        // the records skipped by both runs are kept, the delta run writes uncompressed listings
+        int numSkipped = 0;
+        for (File file : new File(paths.getOutputDir(), "_skipped").listFiles((dir, name) -> !name.startsWith("."))) {
+            numSkipped += Format.readGzipAsList(file.getAbsolutePath()).size();
+        }
+        int numIncrementalSkipped = 0;
+        for (File file : new File(incrementalOutputDir, "_skipped").listFiles((dir, name) -> !name.startsWith("."))) {
+            String path = file.getAbsolutePath();
+            numIncrementalSkipped += (path.endsWith(".gz") ? Format.readGzipAsList(path) : Format.readAsList(path)).size();
+        }
+        assertTrue(numSkipped > 0);
+        assertEquals(numSkipped, numIncrementalSkipped);
+    }
+
+    @Test
+    public void testTrigramSkew() throws Exception {
+        TestPaths paths = new TestPaths("");
+        String skewOutputDir = paths.getOutputDir() + "-skew";
+        FileUtils.deleteDirectory(new File(skewOutputDir));
+        Configuration conf = new Configuration();
+        conf.setBoolean("holing.coocs", true);
+        conf.setInt("holing.sentences.maxlength", 100);
+        conf.setStrings("holing.type", "trigram");
+        ToolRunner.run(conf, new HadoopMain(), new String[]{paths.getInputPath(), paths.getOutputDir(), "true"});
+
+        // The whole input is the sample, its 10 most frequent keys are salted over the 3 reducers
+        conf.setBoolean("holing.skew", true);
+        conf.setFloat("holing.skew.sample_fraction", 1.0f);
+        conf.setInt("holing.skew.num_keys", 10);
+        conf.setInt("mapreduce.job.reduces", 3);
+        ToolRunner.run(conf, new HadoopMain(), new String[]{paths.getInputPath(), skewOutputDir, "true"});
+
+        assertFalse(new File(skewOutputDir + "-skew-sample").exists());
+        File[] hotFiles = new File(skewOutputDir).listFiles((dir, name) -> name.contains("-r-hot"));
+        assertTrue("No hot keys were salted.", hotFiles.length > 0);
+        assertSameChannels(paths.getOutputDir(), skewOutputDir, "W", "F", "WF", "CoocF", "CoocWF");
+    }
+
+    @Test
+    public void testTrigramDerivedFeatures() throws Exception {
+        TestPaths paths = new TestPaths("");
+        String derivedOutputDir = paths.getOutputDir() + "-derived";
+        FileUtils.deleteDirectory(new File(derivedOutputDir));
+        Configuration conf = new Configuration();
+        conf.setInt("holing.sentences.maxlength", 100);
+        conf.setStrings("holing.type", "trigram");
+        ToolRunner.run(conf, new HadoopMain(), new String[]{paths.getInputPath(), paths.getOutputDir(), "true"});
+
+        // The feature counts are added up from WF after the job, in 2 reducers
+        conf.setBoolean("holing.derive_features", true);
+        conf.setInt("mapreduce.job.reduces", 2);
+        ToolRunner.run(conf, new HadoopMain(), new String[]{paths.getInputPath(), derivedOutputDir, "true"});
+
+        assertFalse(new File(derivedOutputDir + "-features").exists());
+        assertSameChannels(paths.getOutputDir(), derivedOutputDir, "W", "F", "WF");
+    }
+
+    @Test
+    public void testTrigramRecordSizeBudget() throws Exception {
+        TestPaths paths = new TestPaths("");
+        String outputDir = paths.getOutputDir() + "-budget";
+        FileUtils.deleteDirectory(new File(outputDir));
+        Configuration conf = new Configuration();
+        conf.setInt("holing.sentences.maxlength", 100);
+        conf.setStrings("holing.type", "trigram");
+        conf.setInt("holing.record.max_bytes", 300);
+        ToolRunner.run(conf, new HadoopMain(), new String[]{paths.getInputPath(), outputDir, "true"});
+
+        List<Long> expected = new ArrayList<>();
+        long offset = 0;
+        for (String line : FileUtils.readLines(new File(paths.getInputPath()), "UTF-8")) {
+            int bytes = line.getBytes("UTF-8").length;
+            if (bytes > 300) expected.add(offset);
+            offset += bytes + 1;
+        }
+        List<Long> skipped = new ArrayList<>();
+        for (String line : Format.readGzipAsList(outputDir + "/_skipped/SkippedRecords-m-00000.gz")) {
+            String[] fields = line.split("\t");
+            assertEquals("size", fields[3]);
+            skipped.add(Long.parseLong(fields[1]));
+        }
+        Collections.sort(skipped);
+        assertEquals(expected, skipped);
+        assertTrue(new File(outputDir, "W-r-00000.gz").exists());
+    }
+
+    @Test
+    public void testTrigramThreads() throws Exception {
+        TestPaths paths = new TestPaths("");
+        Configuration conf = new Configuration();
+        conf.setBoolean("holing.coocs", false);
+        conf.setInt("holing.sentences.maxlength", 100);
+        conf.setStrings("holing.type", "trigram");
+        conf.setInt("holing.threads", 3);
+
+        ToolRunner.run(conf, new HadoopMain(), new String[]{paths.getInputPath(), paths.getOutputDir(), "true"});
+
+        String WFPath = (new File(paths.getOutputDir(), "WF-r-00000.gz")).getAbsolutePath();
+        List<String> lines = Format.readGzipAsList(WFPath);
+        assertEquals("Number of lines is wrong.", 410, lines.size());
+    }
+
+    private List<String> runNgramHoling(int width) throws Exception {
+        TestPaths paths = new TestPaths("");
+        Configuration conf = new Configuration();
+        conf.setBoolean("holing.coocs", true);
+        conf.setInt("holing.sentences.maxlength", 100);
+        conf.setStrings("holing.type", "ngram");
+        conf.setInt("holing.ngram.width", width);
+        conf.setBoolean("holing.lemmatize", false); // the tokens are taken from the bytes, no engine runs
+
+        ToolRunner.run(conf, new HadoopMain(), new String[]{paths.getInputPath(), paths.getOutputDir(), "true"});
+        return Format.readGzipAsList((new File(paths.getOutputDir(), "WF-r-00000.gz")).getAbsolutePath());
+    }
+
+    @Test
+    public void testNgramHoling() throws Exception {
+        List<String> lines = runNgramHoling(1);
+        // width 1 gives the features of trigram holing
+        Set<String> expectedFeatures = new HashSet<>(Arrays.asList("was_@_very","#_@_yet", "sum_@_a", "gave_@_of", "other_@_products"));
+        for(String line : lines) {
+            String[] fields = line.split("\t");
+            String feature = fields.length == 3 ? fields[1] : "";
+            if (expectedFeatures.contains(feature)) expectedFeatures.remove(feature);
+        }
+        assertTrue("Some features are missing in the file.", expectedFeatures.size() == 0);
+    }
+
+    @Test
+    public void testNgramHolingWidth2() throws Exception {
+        List<String> lines = runNgramHoling(2);
+        assertTrue(lines.contains("Green\t# #_@_pears grow\t1"));
+        assertTrue(lines.contains("pears\t# Green_@_grow on\t1"));
+    }
+
     @Test
     public void testTrigramNoLemmatization() throws Exception {
         TestPaths paths = new TestPaths("");
@@ -0,0 +1,95 @@
+package de.uhh.lt.lefex.ExtractTermFeatureScores;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The input files whose counts are contained in an output directory, one "path<TAB>length" line per file in the
+ * file _counted_inputs of the directory. Input files are expected to be immutable shards: a file that is listed
+ * with a different length is an error, as its old counts can not be taken out of the outputs again.
+ */
+class InputManifest {
+    static final String FILE_NAME = "_counted_inputs";
+
+    private final Map<String, Long> lengths = new LinkedHashMap<>();
+
+    /** Reads the manifest of the output directory. */
+    static InputManifest load(FileSystem fs, Path outDir) throws IOException {
+        Path path = new Path(outDir, FILE_NAME);
+        if (!fs.exists(path)) {
+            throw new IOException(outDir + " has no " + FILE_NAME + ", it was not written with holing.incremental=true");
+        }
+        InputManifest manifest = new InputManifest();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(fs.open(path), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                int tab = line.lastIndexOf('\t');
+                if (tab > 0) manifest.lengths.put(line.substring(0, tab), Long.parseLong(line.substring(tab + 1)));
+            }
+        }
+        return manifest;
+    }
+
+    /** Lists the files of the input path, which may be a glob, descending into directories like FileInputFormat. */
+    static List<FileStatus> listInputs(Configuration conf, String inDir) throws IOException {
+        Path inPath = new Path(inDir);
+        FileSystem fs = inPath.getFileSystem(conf);
+        List<FileStatus> files = new ArrayList<>();
+        FileStatus[] matches = fs.globStatus(inPath);
+        if (matches != null) {
+            for (FileStatus status : matches) addFiles(fs, status, files);
+        }
+        return files;
+    }
+
+    private static void addFiles(FileSystem fs, FileStatus status, List<FileStatus> files) throws IOException {
+        String name = status.getPath().getName();
+        if (name.startsWith("_") || name.startsWith(".")) return;
+        if (!status.isDirectory()) {
+            files.add(status);
+            return;
+        }
+        for (FileStatus child : fs.listStatus(status.getPath())) addFiles(fs, child, files);
+    }
+
+    /** Returns the files that are not counted yet. */
+    List<FileStatus> newInputs(List<FileStatus> inputs) throws IOException {
+        List<FileStatus> newInputs = new ArrayList<>();
+        for (FileStatus input : inputs) {
+            Long length = lengths.get(input.getPath().toString());
+            if (length == null) newInputs.add(input);
+            else if (length != input.getLen()) {
+                throw new IOException(input.getPath() + " has changed since it was counted (" + length + " bytes, now "
+                        + input.getLen() + " bytes)");
+            }
+        }
+        return newInputs;
+    }
+
+    void add(FileStatus input) {
+        lengths.put(input.getPath().toString(), input.getLen());
+    }
+
+    int size() {
+        return lengths.size();
+    }
+
+    void write(FileSystem fs, Path outDir) throws IOException {
+        try (FSDataOutputStream out = fs.create(new Path(outDir, FILE_NAME), true)) {
+            for (Map.Entry<String, Long> entry : lengths.entrySet()) {
+                out.write((entry.getKey() + "\t" + entry.getValue() + "\n").getBytes(StandardCharsets.UTF_8));
+            }
+        }
+    }
+}
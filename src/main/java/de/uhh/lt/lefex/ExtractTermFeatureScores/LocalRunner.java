@@ -0,0 +1,409 @@
+package de.uhh.lt.lefex.ExtractTermFeatureScores;
+
+import de.uhh.lt.lefex.Utils.ChannelKey;
+import de.uhh.lt.lefex.Utils.CountTable;
+import de.uhh.lt.lefex.Utils.FrontCodedFile;
+import de.uhh.lt.lefex.Utils.MultiOutputLongSumReducer;
+import org.apache.commons.io.FileUtils;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.conf.Configured;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.VLongWritable;
+import org.apache.hadoop.io.WritableUtils;
+import org.apache.hadoop.io.compress.CompressionCodec;
+import org.apache.hadoop.io.compress.CompressionCodecFactory;
+import org.apache.hadoop.mapreduce.Counter;
+import org.apache.hadoop.mapreduce.CounterGroup;
+import org.apache.hadoop.mapreduce.Counters;
+import org.apache.hadoop.mapreduce.MRJobConfig;
+import org.apache.hadoop.mapreduce.Mapper;
+import org.apache.hadoop.mapreduce.RecordWriter;
+import org.apache.hadoop.mapreduce.StatusReporter;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.apache.hadoop.mapreduce.TaskAttemptID;
+import org.apache.hadoop.mapreduce.TaskType;
+import org.apache.hadoop.mapreduce.lib.map.WrappedMapper;
+import org.apache.hadoop.mapreduce.task.MapContextImpl;
+import org.apache.hadoop.util.LineReader;
+import org.apache.hadoop.util.Tool;
+import org.apache.hadoop.util.ToolRunner;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Runs the feature extraction on one machine without a Hadoop cluster or the local job runner. The input files are
+ * read directly and their records are handed in batches to holing.local.threads workers (all cores by default).
+ * Each worker runs its own HadoopMap with its own engines and counts the map output in a CountTable; when the table
+ * reaches its share of holing.local.memory_mb, it is written to disk as a sorted run. At the end all runs are
+ * merged into the same W, F, WF, CoocF and CoocWF files as written by MultiOutputLongSumReducer with one reducer.
+ *
+ * Takes the same options as HadoopMain, except for sampling, pruning and the integer id output. holing.derive_features
+ * is ignored: the F counts are counted with the map output, as there is no job after the merge to derive them.
+ */
+public class LocalRunner extends Configured implements Tool {
+    private static final int BATCH_SIZE = 64;
+    private static final Batch END = new Batch();
+
+    private final List<File> runs = Collections.synchronizedList(new ArrayList<File>());
+    private final Counters counters = new Counters();
+    private BlockingQueue<Batch> queue;
+    private File spillDir;
+
+    /** Records of the input with their byte offsets, the keys of the map input. */
+    private static class Batch {
+        final long[] offsets = new long[BATCH_SIZE];
+        final Text[] values = new Text[BATCH_SIZE];
+        int size;
+    }
+
+    private class Worker implements Callable<Void> {
+        private final int id;
+        private final Configuration conf;
+        private final CountTable table;
+        private final ChannelKey spillKey = new ChannelKey();
+        private int numRuns;
+
+        Worker(int id, Configuration conf, long budgetBytes) {
+            this.id = id;
+            this.conf = conf;
+            this.table = new CountTable(budgetBytes);
+        }
+
+        @Override
+        public Void call() throws Exception {
+            RecordWriter<ChannelKey, VLongWritable> writer = new RecordWriter<ChannelKey, VLongWritable>() {
+                @Override
+                public void write(ChannelKey key, VLongWritable value) throws IOException {
+                    table.add(key, value.get());
+                    if (table.isFull()) spill();
+                }
+
+                @Override
+                public void close(TaskAttemptContext context) { }
+            };
+            MapContextImpl<LongWritable, Text, ChannelKey, VLongWritable> mapContext = new MapContextImpl<>(conf,
+                    new TaskAttemptID("local", 0, TaskType.MAP, id, 0), null, writer, null, new Reporter(), null);
+            Mapper<LongWritable, Text, ChannelKey, VLongWritable>.Context context =
+                    new WrappedMapper<LongWritable, Text, ChannelKey, VLongWritable>().getMapContext(mapContext);
+
+            HadoopMap mapper = new HadoopMap();
+            mapper.setup(context);
+            LongWritable key = new LongWritable();
+            for (Batch batch = queue.take(); batch != END; batch = queue.take()) {
+                for (int i = 0; i < batch.size; i++) {
+                    key.set(batch.offsets[i]);
+                    mapper.map(key, batch.values[i], context);
+                }
+            }
+            mapper.cleanup(context);
+            spill();
+            return null;
+        }
+
+        /** Writes the table as a sorted run: [int entries], then [ChannelKey][vlong count] per entry. */
+        private void spill() throws IOException {
+            if (table.size() == 0) return;
+            File run = new File(spillDir, "run-" + id + "-" + numRuns++);
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(run), 1 << 16))) {
+                out.writeInt(table.size());
+                for (int slot : table.sortedSlots()) {
+                    table.readKey(slot, spillKey);
+                    spillKey.write(out);
+                    WritableUtils.writeVLong(out, table.getCount(slot));
+                }
+            }
+            runs.add(run);
+            table.clear();
+        }
+    }
+
+    /** Collects the counters of all workers. */
+    private class Reporter extends StatusReporter {
+        @Override
+        public Counter getCounter(Enum<?> name) {
+            return counters.findCounter(name);
+        }
+
+        @Override
+        public Counter getCounter(String group, String name) {
+            return counters.findCounter(group, name);
+        }
+
+        @Override
+        public void progress() { }
+
+        @Override
+        public float getProgress() {
+            return 0;
+        }
+
+        @Override
+        public void setStatus(String status) { }
+    }
+
+    private static class Run implements Closeable {
+        private final DataInputStream in;
+        private int remaining;
+        final ChannelKey key = new ChannelKey();
+        long count;
+
+        Run(File file) throws IOException {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 1 << 16));
+            remaining = in.readInt();
+        }
+
+        boolean next() throws IOException {
+            if (remaining == 0) return false;
+            remaining--;
+            key.readFields(in);
+            count = WritableUtils.readVLong(in);
+            return true;
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+
+    /** The output file of a channel, "key<TAB>count" lines or a front-coded file. */
+    private static class ChannelOutput implements Closeable {
+        private final OutputStream text;
+        private final FrontCodedFile.Writer frontCoded;
+
+        ChannelOutput(Configuration conf, File outDir, byte channel, boolean compress, boolean frontCodedOutput)
+                throws IOException {
+            String name = ChannelKey.getName(channel) + "-r-00000";
+            if (frontCodedOutput) {
+                FileSystem fs = FileSystem.getLocal(conf);
+                frontCoded = new FrontCodedFile.Writer(fs.create(new Path(outDir.getAbsolutePath(), name + FrontCodedFile.EXTENSION)),
+                        conf.getInt(FrontCodedFile.BLOCK_SIZE, FrontCodedFile.DEFAULT_BLOCK_SIZE), compress);
+                text = null;
+            } else {
+                OutputStream out = new FileOutputStream(new File(outDir, compress ? name + ".gz" : name));
+                text = new BufferedOutputStream(compress ? new GZIPOutputStream(out, 1 << 16) : out, 1 << 16);
+                frontCoded = null;
+            }
+        }
+
+        void write(Text key, long count) throws IOException {
+            if (frontCoded != null) {
+                frontCoded.append(key, count);
+            } else {
+                text.write(key.getBytes(), 0, key.getLength());
+                text.write('\t');
+                text.write(Long.toString(count).getBytes(StandardCharsets.US_ASCII));
+                text.write('\n');
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (frontCoded != null) frontCoded.close();
+            else text.close();
+        }
+    }
+
+    private static void listInputFiles(FileSystem fs, Path path, List<Path> files) throws IOException {
+        for (FileStatus status : fs.listStatus(path)) {
+            String name = status.getPath().getName();
+            if (name.startsWith("_") || name.startsWith(".")) continue;
+            if (status.isDirectory()) listInputFiles(fs, status.getPath(), files);
+            else files.add(status.getPath());
+        }
+    }
+
+    /** Reads the records of all input files into the queue. Returns the number of records. */
+    private long readInput(Configuration conf, Path inPath, List<Future<Void>> workers) throws Exception {
+        FileSystem fs = inPath.getFileSystem(conf);
+        List<Path> files = new ArrayList<>();
+        if (fs.getFileStatus(inPath).isDirectory()) listInputFiles(fs, inPath, files);
+        else files.add(inPath);
+        String delimiter = conf.get("textinputformat.record.delimiter");
+        CompressionCodecFactory codecs = new CompressionCodecFactory(conf);
+
+        long numRecords = 0;
+        for (Path file : files) {
+            InputStream stream = fs.open(file);
+            CompressionCodec codec = codecs.getCodec(file);
+            if (codec != null) stream = codec.createInputStream(stream);
+            try (InputStream in = stream) {
+                LineReader reader = delimiter == null ? new LineReader(in, conf)
+                        : new LineReader(in, conf, delimiter.getBytes(StandardCharsets.UTF_8));
+                long offset = 0;
+                Batch batch = new Batch();
+                Text value = new Text();
+                int read;
+                while ((read = reader.readLine(value)) > 0) {
+                    batch.offsets[batch.size] = offset;
+                    batch.values[batch.size++] = value;
+                    value = new Text();
+                    offset += read;
+                    numRecords++;
+                    if (batch.size == BATCH_SIZE) {
+                        put(batch, workers);
+                        batch = new Batch();
+                    }
+                }
+                if (batch.size > 0) put(batch, workers);
+            }
+        }
+        return numRecords;
+    }
+
+    /** Waits for room in the queue, but stops if a worker has failed. */
+    private void put(Batch batch, List<Future<Void>> workers) throws Exception {
+        while (!queue.offer(batch, 1, TimeUnit.SECONDS)) {
+            for (Future<Void> worker : workers) {
+                if (worker.isDone()) worker.get(); // workers only finish early if they fail
+            }
+        }
+    }
+
+    /** Merges the sorted runs and sums up the counts of equal keys. Returns the number of written keys. */
+    private long merge(Configuration conf, File outDir, boolean compress, boolean frontCoded) throws IOException {
+        PriorityQueue<Run> heads = new PriorityQueue<>(Math.max(1, runs.size()), (a, b) -> a.key.compareTo(b.key));
+        for (File file : runs) {
+            Run run = new Run(file);
+            if (run.next()) heads.add(run);
+            else run.close();
+        }
+
+        long numKeys = 0;
+        ChannelKey current = new ChannelKey();
+        Text outKey = new Text();
+        Text mirroredKey = new Text();
+        ChannelOutput output = null;
+        byte channel = -1;
+        while (!heads.isEmpty()) {
+            Run run = heads.poll();
+            current.set(run.key);
+            long sum = run.count;
+            advance(run, heads);
+            while (!heads.isEmpty() && heads.peek().key.equals(current)) {
+                Run same = heads.poll();
+                sum += same.count;
+                advance(same, heads);
+            }
+
+            // The runs are sorted by channel first, so the channels are written one after another
+            if (current.getChannel() != channel) {
+                if (output != null) output.close();
+                channel = current.getChannel();
+                output = new ChannelOutput(conf, outDir, channel, compress, frontCoded);
+            }
+            outKey.set(current.getBytes(), 0, current.getLength());
+            output.write(outKey, sum);
+            if (channel == ChannelKey.COOC_WF && MultiOutputLongSumReducer.mirror(current, mirroredKey)) {
+                output.write(mirroredKey, sum);
+            }
+            numKeys++;
+        }
+        if (output != null) output.close();
+        return numKeys;
+    }
+
+    private static void advance(Run run, PriorityQueue<Run> heads) throws IOException {
+        if (run.next()) heads.add(run);
+        else run.close();
+    }
+
+    @Override
+    public int run(String[] args) throws Exception {
+        System.out.println("args:" + Arrays.asList(args));
+        if (args.length < 2) {
+            System.out.println("Usage: <input-path-to-corpus> <output-path-to-features> [<compression>]");
+            return 1;
+        }
+        String inDir = args[0];
+        File outDir = new File(args[1]);
+        boolean compressOutput = args.length >= 3 && Boolean.parseBoolean(args[2]);
+
+        Configuration conf = new Configuration(getConf());
+        if (conf.get("holing.input", "text").equals("conll")) {
+            // The sentences of the CoNLL output are separated by empty lines
+            conf.set("textinputformat.record.delimiter", "\n\n");
+        }
+        conf.setBoolean("holing.aggregate", false); // the workers count the map output themselves
+        conf.setBoolean("holing.derive_features", false); // F is not derived from WF after the merge
+        String mwePath = conf.get("holing.mwe.vocabulary", "");
+        if (!mwePath.equals("")) conf.set(MRJobConfig.CACHE_FILES, new Path(mwePath).toUri() + "#mwe_voc");
+        int threads = conf.getInt("holing.local.threads", Runtime.getRuntime().availableProcessors());
+        long budgetBytes = conf.getInt("holing.local.memory_mb", 1024) * 1024L * 1024L / threads;
+        boolean frontCoded = conf.get("holing.output.format", "text").equals("frontcoded");
+
+        System.out.println("Input: " + inDir);
+        System.out.println("Output: " + outDir);
+        System.out.println("Compression: " + compressOutput);
+        System.out.println("Input format: " + conf.get("holing.input", "text"));
+        System.out.println("Output format: " + conf.get("holing.output.format", "text"));
+        System.out.println("Worker threads: " + threads);
+        System.out.println("Count table per worker: " + budgetBytes / (1024 * 1024) + " MB");
+
+        if (outDir.exists()) throw new IOException("Output directory " + outDir + " already exists");
+        spillDir = new File(outDir, "_spills");
+        if (!spillDir.mkdirs()) throw new IOException("Could not create " + spillDir);
+
+        long start = System.currentTimeMillis();
+        queue = new ArrayBlockingQueue<>(2 * threads);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<Future<Void>> workers = new ArrayList<>();
+        long numRecords;
+        try {
+            for (int i = 0; i < threads; i++) workers.add(executor.submit(new Worker(i, conf, budgetBytes)));
+            numRecords = readInput(conf, new Path(inDir), workers);
+            for (int i = 0; i < threads; i++) put(END, workers);
+            for (Future<Void> worker : workers) worker.get();
+        } catch (ExecutionException e) {
+            throw new IOException("Worker failed", e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+        long mapped = System.currentTimeMillis();
+        System.out.println("Records: " + numRecords + ", sorted runs: " + runs.size() + ", map time: " + (mapped - start) / 1000 + " s");
+
+        long numKeys = merge(conf, outDir, compressOutput, frontCoded);
+        FileUtils.deleteDirectory(spillDir);
+        System.out.println("Keys: " + numKeys + ", merge time: " + (System.currentTimeMillis() - mapped) / 1000 + " s");
+        for (CounterGroup group : counters) {
+            for (Counter counter : group) {
+                System.out.println(group.getDisplayName() + "\t" + counter.getDisplayName() + "\t" + counter.getValue());
+            }
+        }
+        return 0;
+    }
+
+    public static void main(final String[] args) throws Exception {
+        Configuration conf = new Configuration();
+        int res = ToolRunner.run(conf, new LocalRunner(), args);
+        System.exit(res);
+    }
+}
@@ -0,0 +1,170 @@
+package de.uhh.lt.lefex.ExtractTermFeatureScores;
+
+import de.uhh.lt.lefex.Const;
+import de.uhh.lt.lefex.Utils.ChannelKey;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Features of holing.type=ngram: the holing.ngram.width tokens on each side of a word, "left_@_right" for width 1
+ * as in trigram holing and e.g. "l2 l1_@_r1 r2" for width 2, padded with Const.BEGEND_CHAR at the sentence
+ * boundaries. The UTF-8 bytes of the tokens of one sentence are kept in a reused buffer and the features are
+ * appended to the output keys directly, so holing a sentence creates no objects.
+ *
+ * The tokens come either from the CAS or from a simple tokenizer that works on the raw bytes of the record: it
+ * splits at whitespace and around punctuation, keeps punctuation between letters or digits in the token ("3.5",
+ * "e-mail"), splits off the clitics "n't", "'s", "'re", "'ll", "'ve", "'m" and "'d", and ends a sentence after ".",
+ * "!" and "?". The result is close to, but not the same as the output of the StanfordSegmenter.
+ */
+class NgramHoling {
+    private static final byte[] HOLE = "_@_".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] BEGEND = Const.BEGEND_CHAR.getBytes(StandardCharsets.UTF_8);
+    private static final String[] CLITICS = {"'s", "'re", "'ll", "'ve", "'m", "'d"};
+
+    private final int width;
+    private byte[] tokenBytes = new byte[1024];
+    private int tokenBytesUsed;
+    private int[] starts = new int[64];
+    private int[] lengths = new int[64];
+    private int size;
+
+    // raw input of the tokenizer
+    private byte[] text;
+    private int position;
+    private int end;
+
+    /**
+     * @param width number of context tokens on each side of the word
+     * */
+    NgramHoling(int width) {
+        this.width = width;
+    }
+
+    void clear() {
+        size = 0;
+        tokenBytesUsed = 0;
+    }
+
+    void addToken(String token) {
+        byte[] utf8 = token.getBytes(StandardCharsets.UTF_8);
+        addToken(utf8, 0, utf8.length);
+    }
+
+    private void addToken(byte[] utf8, int start, int length) {
+        if (size == starts.length) {
+            starts = Arrays.copyOf(starts, 2 * size);
+            lengths = Arrays.copyOf(lengths, 2 * size);
+        }
+        if (tokenBytesUsed + length > tokenBytes.length) {
+            tokenBytes = Arrays.copyOf(tokenBytes, Math.max(tokenBytesUsed + length, 2 * tokenBytes.length));
+        }
+        System.arraycopy(utf8, start, tokenBytes, tokenBytesUsed, length);
+        starts[size] = tokenBytesUsed;
+        lengths[size] = length;
+        tokenBytesUsed += length;
+        size++;
+    }
+
+    int size() {
+        return size;
+    }
+
+    String getToken(int i) {
+        return new String(tokenBytes, starts[i], lengths[i], StandardCharsets.UTF_8);
+    }
+
+    void appendToken(int i, ChannelKey key) {
+        key.append(tokenBytes, starts[i], lengths[i]);
+    }
+
+    /** Appends the feature of the i-th token of the sentence. */
+    void appendFeature(int i, ChannelKey key) {
+        for (int j = i - width; j < i; j++) {
+            if (j > i - width) key.append(" ");
+            appendContext(j, key);
+        }
+        key.append(HOLE, 0, HOLE.length);
+        for (int j = i + 1; j <= i + width; j++) {
+            if (j > i + 1) key.append(" ");
+            appendContext(j, key);
+        }
+    }
+
+    private void appendContext(int j, ChannelKey key) {
+        if (j < 0 || j >= size) key.append(BEGEND, 0, BEGEND.length);
+        else key.append(tokenBytes, starts[j], lengths[j]);
+    }
+
+    /** Sets the raw UTF-8 text for nextSentence(). */
+    void reset(byte[] text, int start, int end) {
+        this.text = text;
+        this.position = start;
+        this.end = end;
+    }
+
+    /** Tokenizes the next sentence of the text, returns false at the end of the text. */
+    boolean nextSentence() {
+        clear();
+        while (position < end) {
+            byte b = text[position];
+            if (isSpace(b)) {
+                position++;
+                continue;
+            }
+            if (isWordByte(b)) {
+                int start = position;
+                while (position < end && (isWordByte(text[position]) || isInnerPunctuation(position))) position++;
+                addWord(start, position);
+                continue;
+            }
+            // punctuation, a run of the same character is one token ("...", "--")
+            int start = position;
+            while (position < end && text[position] == b) position++;
+            addToken(text, start, position - start);
+            if (b == '.' || b == '!' || b == '?') return true;
+        }
+        return size > 0;
+    }
+
+    /** Adds a word and splits off a clitic at its end. */
+    private void addWord(int start, int end) {
+        int length = end - start;
+        if (length > 3 && endsWith(end, "n't")) {
+            addToken(text, start, length - 3);
+            addToken(text, end - 3, 3);
+            return;
+        }
+        for (String clitic : CLITICS) {
+            if (length > clitic.length() && endsWith(end, clitic)) {
+                addToken(text, start, length - clitic.length());
+                addToken(text, end - clitic.length(), clitic.length());
+                return;
+            }
+        }
+        addToken(text, start, length);
+    }
+
+    private boolean endsWith(int end, String suffix) {
+        for (int i = 0; i < suffix.length(); i++) {
+            int c = text[end - suffix.length() + i] | 0x20; // ASCII lower case, does not change "'"
+            if (c != (suffix.charAt(i) | 0x20)) return false;
+        }
+        return true;
+    }
+
+    private static boolean isSpace(byte b) {
+        return b >= 0 && b <= ' ';
+    }
+
+    /** Letters, digits and all bytes of non-ASCII characters. */
+    private static boolean isWordByte(byte b) {
+        return b < 0 || (b >= '0' && b <= '9') || (b >= 'a' && b <= 'z') || (b >= 'A' && b <= 'Z');
+    }
+
+    /** Punctuation that joins the letters or digits around it, as in "3.5", "e-mail", "don't" or "AT&T". */
+    private boolean isInnerPunctuation(int i) {
+        byte b = text[i];
+        if (b != '.' && b != ',' && b != '-' && b != '\'' && b != '&' && b != '/' && b != ':' && b != '_') return false;
+        return i > 0 && i + 1 < end && isWordByte(text[i - 1]) && isWordByte(text[i + 1]);
+    }
+}
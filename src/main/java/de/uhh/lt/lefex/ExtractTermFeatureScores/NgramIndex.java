@@ -0,0 +1,116 @@
+package de.uhh.lt.lefex.ExtractTermFeatureScores;
+
+import de.tudarmstadt.ukp.dkpro.core.api.ner.type.NamedEntity;
+import de.tudarmstadt.ukp.dkpro.core.api.segmentation.type.Token;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The n-grams of one sentence with their output strings, built once per sentence. Maps every token of the
+ * sentence to the string of the first n-gram in list order that covers it, so looking up the n-gram of a
+ * dependency does not scan all n-grams and does not select the covered tokens from the CAS again.
+ */
+class NgramIndex {
+    private static final String POS_SEP = HadoopMap.POS_SEP;
+
+    private final boolean withPos;
+    private final List<NamedEntity> ngrams = new ArrayList<>();
+    private final List<String> strings = new ArrayList<>();
+    private int[] firstTokens = new int[16];
+    private int[] tokenBegins = new int[64];
+    private int[] tokenEnds = new int[64];
+    private String[] tokenNgrams = new String[64];
+    private int numTokens;
+
+    /**
+     * @param withPos output n-grams as "token#POS token#POS ..." instead of their covered text
+     * */
+    NgramIndex(boolean withPos) {
+        this.withPos = withPos;
+    }
+
+    void build(List<Token> tokens, List<NamedEntity> sentenceNgrams) {
+        ngrams.clear();
+        strings.clear();
+        numTokens = tokens.size();
+        if (numTokens > tokenBegins.length) {
+            int capacity = Math.max(numTokens, 2 * tokenBegins.length);
+            tokenBegins = new int[capacity];
+            tokenEnds = new int[capacity];
+            tokenNgrams = new String[capacity];
+        }
+        for (int i = 0; i < numTokens; i++) {
+            Token token = tokens.get(i);
+            tokenBegins[i] = token.getBegin();
+            tokenEnds[i] = token.getEnd();
+        }
+        Arrays.fill(tokenNgrams, 0, numTokens, null);
+        if (sentenceNgrams.size() > firstTokens.length) firstTokens = new int[Math.max(sentenceNgrams.size(), 2 * firstTokens.length)];
+
+        StringBuilder sb = new StringBuilder();
+        for (NamedEntity ngram : sentenceNgrams) {
+            int first = lowerBound(ngram.getBegin());
+            firstTokens[ngrams.size()] = first;
+            String str;
+            if (withPos) {
+                sb.setLength(0);
+                for (int i = first; i < numTokens && tokenBegins[i] <= ngram.getEnd(); i++) {
+                    if (tokenEnds[i] > ngram.getEnd()) continue;
+                    Token token = tokens.get(i);
+                    sb.append(token.getCoveredText()).append(POS_SEP).append(token.getPos().getPosValue()).append(' ');
+                }
+                str = sb.toString().trim();
+            } else {
+                str = ngram.getCoveredText();
+            }
+            ngrams.add(ngram);
+            strings.add(str);
+
+            // tokens covered by the n-gram, the first n-gram wins
+            for (int i = first; i < numTokens && tokenBegins[i] <= ngram.getEnd(); i++) {
+                if (tokenEnds[i] <= ngram.getEnd() && tokenNgrams[i] == null) tokenNgrams[i] = str;
+            }
+        }
+    }
+
+    /** Index of the first token that begins at or after the offset. */
+    private int lowerBound(int begin) {
+        int low = 0;
+        int high = numTokens;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (tokenBegins[mid] < begin) low = mid + 1;
+            else high = mid;
+        }
+        return low;
+    }
+
+    int size() {
+        return ngrams.size();
+    }
+
+    String getString(int ngram) {
+        return strings.get(ngram);
+    }
+
+    /** Index of the first token of the n-gram in the sentence. */
+    int getFirstToken(int ngram) {
+        return firstTokens[ngram];
+    }
+
+    /**
+     * Returns the string of the first n-gram that covers the span [begin, end), or "" if there is none.
+     * */
+    String find(int begin, int end) {
+        int i = lowerBound(begin);
+        if (i < numTokens && tokenBegins[i] == begin && tokenEnds[i] == end) {
+            return tokenNgrams[i] == null ? "" : tokenNgrams[i];
+        }
+        // not a token of this sentence
+        for (int k = 0; k < ngrams.size(); k++) {
+            if (ngrams.get(k).getBegin() <= begin && ngrams.get(k).getEnd() >= end) return strings.get(k);
+        }
+        return "";
+    }
+}
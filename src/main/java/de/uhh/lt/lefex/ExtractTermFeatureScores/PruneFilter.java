@@ -0,0 +1,119 @@
+package de.uhh.lt.lefex.ExtractTermFeatureScores;
+
+import de.uhh.lt.lefex.Utils.ChannelKey;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.compress.CompressionCodec;
+import org.apache.hadoop.io.compress.CompressionCodecFactory;
+import org.apache.hadoop.util.LineReader;
+import org.apache.hadoop.util.bloom.BloomFilter;
+import org.apache.hadoop.util.bloom.Key;
+import org.apache.hadoop.util.hash.Hash;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Bloom filter of the words and features that occur in at least holing.prune.min_count word-feature pairs. The
+ * counts come from a first pass of the job with holing.prune.count_pass=true. A word or feature that is not in the
+ * filter is certainly rarer than the threshold, so its pairs can be dropped in the mapper. False positives only
+ * keep some rare pairs; the counts of the pairs that are written are exact.
+ */
+class PruneFilter {
+    static final String CACHE_NAME = "prune_filter";
+
+    private final BloomFilter filter;
+    private final ChannelKey term = new ChannelKey();
+    private final Key key = new Key();
+    private byte[] keyBytes = new byte[0];
+
+    private PruneFilter(BloomFilter filter) {
+        this.filter = filter;
+    }
+
+    static PruneFilter load(File file) throws IOException {
+        BloomFilter filter = new BloomFilter();
+        try (DataInputStream in = new DataInputStream(new FileInputStream(file))) {
+            filter.readFields(in);
+        }
+        return new PruneFilter(filter);
+    }
+
+    /** Returns false if the word (channel W) or feature (channel F) is certainly below the threshold. */
+    boolean mightPass(byte channel, String value) {
+        term.set(channel, value);
+        return mightPass(term);
+    }
+
+    boolean mightPass(ChannelKey term) {
+        int length = term.getLength() + 1;
+        if (keyBytes.length != length) keyBytes = new byte[length]; // the hash covers the whole array, no slack allowed
+        keyBytes[0] = term.getChannel();
+        System.arraycopy(term.getBytes(), 0, keyBytes, 1, term.getLength());
+        key.set(keyBytes, 1.0);
+        return filter.membershipTest(key);
+    }
+
+    /**
+     * Builds the filter from the W-r-* and F-r-* files ("term<TAB>count") of the counting pass and writes it to
+     * filterPath. Returns the number of terms in the filter.
+     * */
+    static long build(Configuration conf, Path countsDir, int minCount, double falsePositiveRate, Path filterPath)
+            throws IOException {
+        FileSystem fs = countsDir.getFileSystem(conf);
+        FileStatus[] words = fs.globStatus(new Path(countsDir, "W-r-*"));
+        FileStatus[] features = fs.globStatus(new Path(countsDir, "F-r-*"));
+
+        long numTerms = Math.max(1, addFrequentTerms(conf, words, ChannelKey.W, minCount, null)
+                + addFrequentTerms(conf, features, ChannelKey.F, minCount, null));
+        int vectorSize = (int) Math.min(Integer.MAX_VALUE - 64,
+                Math.ceil(-numTerms * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2))));
+        int numHashes = Math.max(1, (int) Math.round((double) vectorSize / numTerms * Math.log(2)));
+        BloomFilter filter = new BloomFilter(vectorSize, numHashes, Hash.MURMUR_HASH);
+        addFrequentTerms(conf, words, ChannelKey.W, minCount, filter);
+        addFrequentTerms(conf, features, ChannelKey.F, minCount, filter);
+
+        try (FSDataOutputStream out = fs.create(filterPath, true)) {
+            filter.write(out);
+        }
+        return numTerms;
+    }
+
+    /** Counts the terms with at least minCount occurrences and adds them to the filter unless it is null. */
+    private static long addFrequentTerms(Configuration conf, FileStatus[] files, byte channel, int minCount,
+                                         BloomFilter filter) throws IOException {
+        long numTerms = 0;
+        Text line = new Text();
+        CompressionCodecFactory codecs = new CompressionCodecFactory(conf);
+        for (FileStatus file : files) {
+            InputStream stream = file.getPath().getFileSystem(conf).open(file.getPath());
+            CompressionCodec codec = codecs.getCodec(file.getPath());
+            if (codec != null) stream = codec.createInputStream(stream);
+            try (InputStream in = stream) {
+                LineReader reader = new LineReader(in);
+                while (reader.readLine(line) > 0) {
+                    byte[] bytes = line.getBytes();
+                    int tab = line.getLength() - 1;
+                    while (tab >= 0 && bytes[tab] != '\t') tab--;
+                    if (tab < 0) continue;
+                    long count = Long.parseLong(Text.decode(bytes, tab + 1, line.getLength() - tab - 1));
+                    if (count < minCount) continue;
+                    numTerms++;
+                    if (filter != null) {
+                        byte[] keyBytes = new byte[tab + 1];
+                        keyBytes[0] = channel;
+                        System.arraycopy(bytes, 0, keyBytes, 1, tab);
+                        filter.add(new Key(keyBytes));
+                    }
+                }
+            }
+        }
+        return numTerms;
+    }
+}
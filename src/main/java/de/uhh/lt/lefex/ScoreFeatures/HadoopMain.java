@@ -0,0 +1,124 @@
+package de.uhh.lt.lefex.ScoreFeatures;
+
+import java.io.IOException;
+import java.util.Arrays;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.conf.Configured;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.NullWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.io.VLongWritable;
+import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
+import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
+import org.apache.hadoop.mapreduce.lib.output.LazyOutputFormat;
+import org.apache.hadoop.mapreduce.lib.output.MultipleOutputs;
+import org.apache.hadoop.mapreduce.lib.output.TextOutputFormat;
+import org.apache.hadoop.util.Tool;
+import org.apache.hadoop.util.ToolRunner;
+import de.uhh.lt.lefex.Utils.ChannelKey;
+import de.uhh.lt.lefex.Utils.FrontCodedFile;
+import de.uhh.lt.lefex.Utils.FrontCodedTextInputFormat;
+import de.uhh.lt.lefex.Utils.MultiOutputLongSumReducer;
+import de.uhh.lt.lefex.Utils.VLongSumReducer;
+
+/**
+ * Scores the word-feature pairs of an ExtractTermFeatureScores output with an association measure (score.measure:
+ * lmi, pmi, ll or freq) and writes "word<TAB>feature<TAB>score" lines to <output>/ScoredWF-m-*. The scoring job is
+ * map-only: every mapper loads the word and feature counts into memory and streams its split of WF, so the pairs
+ * are not shuffled. The count of a word or feature is the sum of its WF counts and the number of pairs N the sum of
+ * all WF counts, which a first job adds up into <output>-marginals, so the three are consistent: the W output counts
+ * occurrences, not pairs, and its words differ from the words of WF for some holing types, e.g. they have a part of
+ * speech, and the F output also counts pairs that are not in WF, e.g. pruned ones, and misses the pairs of multiword
+ * expressions. The output can be the input of TopFeatures.
+ */
+public class HadoopMain extends Configured implements Tool {
+	public static final String MEASURE = "score.measure";
+	public static final String DEFAULT_MEASURE = "lmi";
+	static final String WORDS = "score.words";
+	static final String FEATURES = "score.features";
+
+	public boolean runJob(String countsDir, String outDir) throws Exception {
+		Configuration conf = new Configuration(getConf());
+		// The inputs are lines of text, whatever input the feature extraction had
+		conf.unset("textinputformat.record.delimiter");
+		ScoreMap.Measure.parse(conf.get(MEASURE, DEFAULT_MEASURE)); // fail before the jobs start
+		Path pairs = new Path(countsDir, "WF-r-*");
+		Path marginalsDir = new Path(outDir + "-marginals");
+		FileSystem fs = marginalsDir.getFileSystem(conf);
+		fs.delete(marginalsDir, true);
+		if (!runMarginalCountsJob(conf, pairs, marginalsDir)) return false;
+
+		conf.set("mapreduce.output.basename", "ScoredWF");
+		conf.set(WORDS, marginalsDir + "/W-r-*");
+		conf.set(FEATURES, marginalsDir + "/F-r-*");
+		Job job = Job.getInstance(conf);
+		job.setJarByClass(HadoopMain.class);
+		setPairsInput(job, pairs);
+		FileOutputFormat.setOutputPath(job, new Path(outDir));
+		job.setMapperClass(ScoreMap.class);
+		job.setNumReduceTasks(0);
+		job.setOutputKeyClass(Text.class);
+		job.setOutputValueClass(NullWritable.class);
+		job.setJobName("lefex: Score Word-Feature Pairs");
+		boolean success = job.waitForCompletion(true);
+		fs.delete(marginalsDir, true);
+		return success;
+	}
+
+	/** Adds up the WF counts of each word and each feature into "term<TAB>count" lines of marginalsDir/W-r-* and F-r-*. */
+	private static boolean runMarginalCountsJob(Configuration baseConf, Path pairs, Path marginalsDir) throws Exception {
+		Configuration conf = new Configuration(baseConf);
+		conf.setBoolean("mapred.output.compress", false);
+		Job job = Job.getInstance(conf);
+		job.setJarByClass(HadoopMain.class);
+		setPairsInput(job, pairs);
+		FileOutputFormat.setOutputPath(job, marginalsDir);
+		job.setMapperClass(MarginalCountsMap.class);
+		job.setMapOutputKeyClass(ChannelKey.class);
+		job.setMapOutputValueClass(VLongWritable.class);
+		job.setCombinerClass(VLongSumReducer.class);
+		job.setReducerClass(MultiOutputLongSumReducer.class);
+		job.setOutputKeyClass(Text.class);
+		job.setOutputValueClass(LongWritable.class);
+		LazyOutputFormat.setOutputFormatClass(job, TextOutputFormat.class);
+		MultipleOutputs.addNamedOutput(job, "W", TextOutputFormat.class, Text.class, LongWritable.class);
+		MultipleOutputs.addNamedOutput(job, "F", TextOutputFormat.class, Text.class, LongWritable.class);
+		job.setJobName("lefex: Score Word-Feature Pairs (word and feature counts from WF)");
+		return job.waitForCompletion(true);
+	}
+
+	private static void setPairsInput(Job job, Path glob) throws IOException {
+		FileInputFormat.addInputPath(job, glob);
+		FileStatus[] files = glob.getFileSystem(job.getConfiguration()).globStatus(glob);
+		if (files != null && files.length > 0 && files[0].getPath().getName().endsWith(FrontCodedFile.EXTENSION)) {
+			job.setInputFormatClass(FrontCodedTextInputFormat.class);
+		}
+	}
+
+	@Override
+	public int run(String[] args) throws Exception {
+		System.out.println("args:" + Arrays.asList(args));
+		if (args.length < 2) {
+			System.out.println("Usage: <input-path-to-features> <output-path-to-scores>");
+			System.out.println("The input is the output directory of ExtractTermFeatureScores with WF-r-*");
+			System.out.println("-D" + MEASURE + "\tlmi, pmi, ll or freq. Default -- " + DEFAULT_MEASURE);
+			System.exit(1);
+		}
+		System.out.println("Input: " + args[0]);
+		System.out.println("Output: " + args[1]);
+		System.out.println("Measure: " + getConf().get(MEASURE, DEFAULT_MEASURE));
+
+		boolean success = runJob(args[0], args[1]);
+		return success ? 0 : 1;
+	}
+
+	public static void main(final String[] args) throws Exception {
+		Configuration conf = new Configuration();
+		int res = ToolRunner.run(conf, new HadoopMain(), args);
+		System.exit(res);
+	}
+}
@@ -0,0 +1,95 @@
+package de.uhh.lt.lefex.ScoreFeatures;
+
+import de.uhh.lt.lefex.TestPaths;
+import de.uhh.lt.lefex.Utils.Format;
+import org.apache.commons.io.FileUtils;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.util.ToolRunner;
+import org.junit.Test;
+import java.io.File;
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class HadoopTest {
+    @Test
+    public void testTrigramLmi() throws Exception {
+        TestPaths paths = new TestPaths("");
+        Configuration conf = new Configuration();
+        conf.setBoolean("holing.coocs", false);
+        conf.setInt("holing.sentences.maxlength", 100);
+        conf.setStrings("holing.type", "trigram");
+        conf.setBoolean("holing.output.scores", true);
+        conf.set(HadoopMain.MEASURE, "lmi");
+        ToolRunner.run(conf, new de.uhh.lt.lefex.ExtractTermFeatureScores.HadoopMain(),
+                new String[]{paths.getInputPath(), paths.getOutputDir(), "true"});
+
+        // the counts of a word and a feature are the sums of their pairs: by default the words of W have a part of
+        // speech, those of WF not, and F also counts the pairs of multiword expressions and pruned pairs
+        List<String> pairs = Format.readGzipAsList((new File(paths.getOutputDir(), "WF-r-00000.gz")).getAbsolutePath());
+        Map<String, Long> words = new HashMap<>();
+        Map<String, Long> features = new HashMap<>();
+        long numPairs = 0;
+        for (String pair : pairs) {
+            String[] fields = pair.split("\t");
+            words.merge(fields[0], Long.parseLong(fields[2]), Long::sum);
+            features.merge(fields[1], Long.parseLong(fields[2]), Long::sum);
+            numPairs += Long.parseLong(fields[2]);
+        }
+
+        Map<String, Double> scores = new HashMap<>();
+        for (File file : new File(paths.getOutputDir(), "scores").listFiles((dir, name) -> name.startsWith("ScoredWF-m-"))) {
+            for (String line : Format.readGzipAsList(file.getAbsolutePath())) {
+                int tab = line.lastIndexOf('\t');
+                scores.put(line.substring(0, tab), Double.parseDouble(line.substring(tab + 1)));
+            }
+        }
+
+        assertFalse("No pairs were counted.", pairs.isEmpty());
+        assertEquals("Number of scored pairs is wrong.", pairs.size(), scores.size());
+        for (String pair : pairs) {
+            String[] fields = pair.split("\t");
+            double count = Long.parseLong(fields[2]);
+            double lmi = count * Math.log(count * numPairs / (words.get(fields[0]) * features.get(fields[1]))) / Math.log(2);
+            assertTrue(pair, scores.containsKey(fields[0] + "\t" + fields[1]));
+            assertEquals(pair, lmi, scores.get(fields[0] + "\t" + fields[1]), 1e-9 * Math.max(1, Math.abs(lmi)));
+        }
+    }
+
+    @Test
+    public void testFeatureCountsFromPairs() throws Exception {
+        TestPaths paths = new TestPaths("");
+        Configuration conf = new Configuration();
+        conf.setBoolean("holing.coocs", false);
+        conf.setStrings("holing.type", "trigram");
+        ToolRunner.run(conf, new de.uhh.lt.lefex.ExtractTermFeatureScores.HadoopMain(),
+                new String[]{paths.getInputPath(), paths.getOutputDir(), "true"});
+
+        File scoresDir = new File(paths.getOutputDir(), "scores");
+        HadoopMain scorer = new HadoopMain();
+        scorer.setConf(conf);
+        assertTrue(scorer.runJob(paths.getOutputDir(), scoresDir.getAbsolutePath()));
+        List<String> scores = readScores(scoresDir);
+
+        // F counts of another run, none of its features is a feature of the pairs: the scores do not change
+        File features = new File(paths.getOutputDir(), "F-r-00000.gz");
+        List<String> lines = new ArrayList<>();
+        for (String line : Format.readGzipAsList(features.getAbsolutePath())) lines.add("other " + line);
+        assertTrue(features.delete());
+        FileUtils.writeLines(new File(paths.getOutputDir(), "F-r-00000"), "UTF-8", lines);
+        FileUtils.deleteDirectory(scoresDir);
+        assertTrue(scorer.runJob(paths.getOutputDir(), scoresDir.getAbsolutePath()));
+        assertFalse("No pairs were scored.", scores.isEmpty());
+        assertEquals(scores, readScores(scoresDir));
+    }
+
+    private static List<String> readScores(File scoresDir) throws Exception {
+        List<String> lines = new ArrayList<>();
+        for (File file : scoresDir.listFiles((dir, name) -> name.startsWith("ScoredWF-m-"))) {
+            String path = file.getAbsolutePath();
+            lines.addAll(path.endsWith(".gz") ? Format.readGzipAsList(path) : Format.readAsList(path));
+        }
+        Collections.sort(lines);
+        return lines;
+    }
+}
@@ -0,0 +1,150 @@
+package de.uhh.lt.lefex.ScoreFeatures;
+
+import de.uhh.lt.lefex.Utils.FrontCodedFile;
+import de.uhh.lt.lefex.Utils.SortedTermIndex;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.WritableComparator;
+import org.apache.hadoop.io.compress.CompressionCodec;
+import org.apache.hadoop.io.compress.CompressionCodecFactory;
+import org.apache.hadoop.util.IndexedSortable;
+import org.apache.hadoop.util.LineReader;
+import org.apache.hadoop.util.QuickSort;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+/**
+ * The counts of all words or all features, loaded from "term<TAB>count" outputs such as F-r-* of
+ * ExtractTermFeatureScores (text, gzipped text or front-coded). The terms are kept in a SortedTermIndex and the
+ * counts in a parallel long array, so a lookup is a binary search on the raw bytes and the table takes little
+ * more memory than the terms themselves. The outputs of several reducers are each sorted but interleave, so the
+ * entries are sorted once after loading unless they already arrive in order.
+ */
+class MarginalCounts {
+    private final SortedTermIndex index;
+    private final long[] counts;
+    private final long total;
+
+    private MarginalCounts(SortedTermIndex index, long[] counts, long total) {
+        this.index = index;
+        this.counts = counts;
+        this.total = total;
+    }
+
+    /** Returns the count of the term or 0 if it is unknown. */
+    long get(byte[] utf8, int start, int len) {
+        int id = index.find(utf8, start, len);
+        return id < 0 ? 0 : counts[id];
+    }
+
+    /** Sum of all counts. */
+    long getTotal() {
+        return total;
+    }
+
+    int size() {
+        return index.size();
+    }
+
+    static MarginalCounts load(Configuration conf, String glob) throws IOException {
+        Path path = new Path(glob);
+        FileSystem fs = path.getFileSystem(conf);
+        FileStatus[] files = fs.globStatus(path);
+        if (files == null || files.length == 0) throw new IOException("No counts found at " + glob);
+        Arrays.sort(files);
+
+        Entries entries = new Entries();
+        CompressionCodecFactory codecs = new CompressionCodecFactory(conf);
+        Text line = new Text();
+        LongWritable count = new LongWritable();
+        for (FileStatus file : files) {
+            if (file.getPath().getName().endsWith(FrontCodedFile.EXTENSION)) {
+                try (FrontCodedFile.Reader reader = new FrontCodedFile.Reader(fs, file.getPath())) {
+                    while (reader.next(line, count)) entries.add(line.getBytes(), line.getLength(), count.get());
+                }
+                continue;
+            }
+            InputStream stream = fs.open(file.getPath());
+            CompressionCodec codec = codecs.getCodec(file.getPath());
+            if (codec != null) stream = codec.createInputStream(stream);
+            try (InputStream in = stream) {
+                LineReader reader = new LineReader(in);
+                while (reader.readLine(line) > 0) {
+                    byte[] bytes = line.getBytes();
+                    int tab = line.getLength() - 1;
+                    while (tab >= 0 && bytes[tab] != '\t') tab--;
+                    if (tab < 0) continue;
+                    entries.add(bytes, tab, Long.parseLong(Text.decode(bytes, tab + 1, line.getLength() - tab - 1)));
+                }
+            }
+        }
+        return entries.build();
+    }
+
+    /** All loaded entries in file order, sorted and deduplicated by build(). */
+    private static class Entries implements IndexedSortable {
+        private byte[] slab = new byte[1 << 16];
+        private int[] offsets = new int[1 << 10];
+        private long[] counts = new long[1 << 10];
+        private int[] order;
+        private int size;
+        private boolean sorted = true;
+
+        void add(byte[] term, int len, long count) {
+            int start = offsets[size];
+            if (start + len > slab.length) slab = Arrays.copyOf(slab, Math.max(start + len, 2 * slab.length));
+            if (size + 1 >= offsets.length) {
+                offsets = Arrays.copyOf(offsets, 2 * offsets.length);
+                counts = Arrays.copyOf(counts, 2 * counts.length);
+            }
+            System.arraycopy(term, 0, slab, start, len);
+            offsets[size + 1] = start + len;
+            counts[size] = count;
+            size++;
+            if (sorted && size > 1 && compareEntries(size - 2, size - 1) >= 0) sorted = false;
+        }
+
+        private int compareEntries(int a, int b) {
+            return WritableComparator.compareBytes(slab, offsets[a], offsets[a + 1] - offsets[a],
+                    slab, offsets[b], offsets[b + 1] - offsets[b]);
+        }
+
+        @Override
+        public int compare(int i, int j) {
+            return compareEntries(order[i], order[j]);
+        }
+
+        @Override
+        public void swap(int i, int j) {
+            int tmp = order[i];
+            order[i] = order[j];
+            order[j] = tmp;
+        }
+
+        MarginalCounts build() {
+            order = new int[size];
+            for (int i = 0; i < size; i++) order[i] = i;
+            if (!sorted) new QuickSort().sort(this, 0, size);
+
+            SortedTermIndex index = new SortedTermIndex();
+            long[] termCounts = new long[size];
+            long total = 0;
+            int id = -1;
+            for (int i = 0; i < size; i++) {
+                int entry = order[i];
+                // the same term in several inputs, e.g. counts that were not merged
+                if (i == 0 || compareEntries(order[i - 1], entry) != 0) {
+                    id = index.add(slab, offsets[entry], offsets[entry + 1] - offsets[entry]);
+                }
+                termCounts[id] += counts[entry];
+                total += counts[entry];
+            }
+            return new MarginalCounts(index, Arrays.copyOf(termCounts, index.size()), total);
+        }
+    }
+}
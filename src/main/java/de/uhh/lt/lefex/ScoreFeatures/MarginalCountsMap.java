@@ -0,0 +1,59 @@
+package de.uhh.lt.lefex.ScoreFeatures;
+
+import de.uhh.lt.lefex.Utils.ChannelKey;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.VLongWritable;
+import org.apache.hadoop.io.WritableComparator;
+import org.apache.hadoop.mapreduce.Mapper;
+import java.io.IOException;
+
+/**
+ * Reads "word<TAB>feature<TAB>count" lines of WF and emits the count of each line for its feature on channel F and
+ * the sum of the counts of each run of lines with the same word on channel W. The WF outputs are sorted by word, but
+ * the pairs of a word are spread over the outputs of several reducers, so the sums are added up by
+ * MultiOutputLongSumReducer, the feature counts with the help of the combiner.
+ */
+class MarginalCountsMap extends Mapper<LongWritable, Text, ChannelKey, VLongWritable> {
+    private final Text word = new Text();
+    private final ChannelKey outKey = new ChannelKey();
+    private final VLongWritable outCount = new VLongWritable();
+    private long wordCount;
+
+    @Override
+    public void map(LongWritable key, Text line, Context context) throws IOException, InterruptedException {
+        byte[] bytes = line.getBytes();
+        int length = line.getLength();
+        int first = 0;
+        while (first < length && bytes[first] != '\t') first++;
+        int last = length - 1;
+        while (last > first && bytes[last] != '\t') last--;
+        if (last <= first) {
+            context.getCounter("de.uhh.lt.lefex", "NUM_MALFORMED_LINES").increment(1);
+            return;
+        }
+        if (word.getLength() == 0 || WritableComparator.compareBytes(word.getBytes(), 0, word.getLength(), bytes, 0, first) != 0) {
+            flush(context);
+            word.set(bytes, 0, first);
+        }
+        long count = Long.parseLong(Text.decode(bytes, last + 1, length - last - 1));
+        wordCount += count;
+        outCount.set(count);
+        outKey.set(ChannelKey.F, bytes, first + 1, last - first - 1);
+        context.write(outKey, outCount);
+    }
+
+    private void flush(Context context) throws IOException, InterruptedException {
+        if (word.getLength() > 0) {
+            outCount.set(wordCount);
+            outKey.set(ChannelKey.W, word.getBytes(), 0, word.getLength());
+            context.write(outKey, outCount);
+        }
+        wordCount = 0;
+    }
+
+    @Override
+    public void cleanup(Context context) throws IOException, InterruptedException {
+        flush(context);
+    }
+}
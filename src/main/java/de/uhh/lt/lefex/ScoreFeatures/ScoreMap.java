@@ -0,0 +1,124 @@
+package de.uhh.lt.lefex.ScoreFeatures;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.NullWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.WritableComparator;
+import org.apache.hadoop.mapreduce.Mapper;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+
+/**
+ * Map-only join of the "word<TAB>feature<TAB>count" lines of WF with the word and feature counts added up from WF,
+ * which every mapper loads into memory in setup(). Writes "word<TAB>feature<TAB>score" lines with the score.measure
+ * of the pair. The WF outputs are sorted by word, so the count of the word is looked up once per run of lines with
+ * the same word. A pair without counts, which only happens if WF changed after the counts were added up, is skipped
+ * and counted in NUM_MISSING_MARGINALS.
+ */
+public class ScoreMap extends Mapper<LongWritable, Text, Text, NullWritable> {
+    private static final double LN2 = Math.log(2);
+
+    /** Association measures of a pair with count wf, word count w, feature count f and number of pairs n. */
+    enum Measure {
+        /** Local mutual information: wf * PMI. */
+        LMI {
+            @Override
+            double score(long wf, long w, long f, long n) {
+                return wf * PMI.score(wf, w, f, n);
+            }
+        },
+        /** Pointwise mutual information, log2(p(w,f) / (p(w) p(f))). */
+        PMI {
+            @Override
+            double score(long wf, long w, long f, long n) {
+                return Math.log((double) wf * n / ((double) w * f)) / LN2;
+            }
+        },
+        /** Log-likelihood ratio of Dunning (1993) of the 2x2 contingency table of the pair. */
+        LL {
+            @Override
+            double score(long wf, long w, long f, long n) {
+                // a word can have more pairs with one feature than occurrences, e.g. with dependency holing
+                double k11 = wf;
+                double k12 = Math.max(0, w - wf);
+                double k21 = Math.max(0, f - wf);
+                double k22 = Math.max(0, n - w - f + wf);
+                return 2 * (xlogx(k11) + xlogx(k12) + xlogx(k21) + xlogx(k22)
+                        - xlogx(k11 + k12) - xlogx(k21 + k22) - xlogx(k11 + k21) - xlogx(k12 + k22)
+                        + xlogx(k11 + k12 + k21 + k22));
+            }
+        },
+        /** The count of the pair as is. */
+        FREQ {
+            @Override
+            double score(long wf, long w, long f, long n) {
+                return wf;
+            }
+        };
+
+        abstract double score(long wf, long w, long f, long n);
+
+        static Measure parse(String name) {
+            return valueOf(name.toUpperCase(Locale.ROOT));
+        }
+    }
+
+    private static double xlogx(double x) {
+        return x > 0 ? x * Math.log(x) : 0;
+    }
+
+    private final Text word = new Text();
+    private final Text outLine = new Text();
+    private MarginalCounts words;
+    private MarginalCounts features;
+    private Measure measure;
+    private long wordCount;
+    private long numPairs;
+    private long numMissing;
+
+    @Override
+    public void setup(Context context) throws IOException {
+        Configuration conf = context.getConfiguration();
+        measure = Measure.parse(conf.get(HadoopMain.MEASURE, HadoopMain.DEFAULT_MEASURE));
+        words = MarginalCounts.load(conf, conf.get(HadoopMain.WORDS));
+        features = MarginalCounts.load(conf, conf.get(HadoopMain.FEATURES));
+        // the feature counts are the WF counts added up per feature
+        numPairs = features.getTotal();
+    }
+
+    @Override
+    public void map(LongWritable key, Text line, Context context) throws IOException, InterruptedException {
+        byte[] bytes = line.getBytes();
+        int length = line.getLength();
+        int first = 0;
+        while (first < length && bytes[first] != '\t') first++;
+        int last = length - 1;
+        while (last > first && bytes[last] != '\t') last--;
+        if (last <= first) {
+            context.getCounter("de.uhh.lt.lefex", "NUM_MALFORMED_LINES").increment(1);
+            return;
+        }
+        if (word.getLength() == 0 || WritableComparator.compareBytes(word.getBytes(), 0, word.getLength(), bytes, 0, first) != 0) {
+            word.set(bytes, 0, first);
+            wordCount = words.get(bytes, 0, first);
+        }
+        long featureCount = features.get(bytes, first + 1, last - first - 1);
+        if (wordCount == 0 || featureCount == 0) {
+            numMissing++;
+            return;
+        }
+
+        long count = Long.parseLong(Text.decode(bytes, last + 1, length - last - 1));
+        byte[] score = Double.toString(measure.score(count, wordCount, featureCount, numPairs)).getBytes(StandardCharsets.UTF_8);
+        outLine.set(bytes, 0, last + 1);
+        outLine.append(score, 0, score.length);
+        context.write(outLine, NullWritable.get());
+    }
+
+    @Override
+    public void cleanup(Context context) {
+        context.getCounter("de.uhh.lt.lefex", "NUM_MISSING_MARGINALS").increment(numMissing);
+    }
+}
@@ -1,6 +1,8 @@
 package de.uhh.lt.lefex.SentenceSplitter;
 
 import de.uhh.lt.lefex.Utils.NothingReducer;
+import de.uhh.lt.lefex.Utils.CostBalancedTextInputFormat;
+import de.uhh.lt.lefex.Utils.SampledTextInputFormat;
 import org.apache.commons.io.FileUtils;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.conf.Configured;
@@ -24,6 +26,7 @@ public class HadoopMain extends Configured implements Tool {
 		Job job = Job.getInstance(conf);
 		job.setJarByClass(HadoopMain.class);
 		FileInputFormat.addInputPath(job, new Path(inDir));
+		if (!SampledTextInputFormat.configure(job)) CostBalancedTextInputFormat.configure(job);
 		FileOutputFormat.setOutputPath(job, new Path(outDir));
 
 		job.setMapperClass(HadoopMap.class);
@@ -43,6 +46,7 @@ public class HadoopMain extends Configured implements Tool {
 			System.out.println("Outputs one sentence per line and drops too long sentences" +
 					" (e.g. as they an cause parsing errors).");
 			System.out.println("Usage: <input-corpus> <output-corpus> <unique-sentences> <compress>");
+			System.out.println("With -Doutput_counts=true unique sentences are written as 'count<TAB>sentence'.");
 			System.exit(1);
 		}
 		String inDir = args[0];
@@ -55,6 +59,7 @@ public class HadoopMain extends Configured implements Tool {
         System.out.println("Output directory: " + outDir);
         System.out.println("Unique sentences: " + makeUnique);
 		System.out.println("Compress output: " + compressOutput);
+		System.out.println("Output counts of unique sentences: " + getConf().getBoolean("output_counts", false));
 
         boolean success = runJob(inDir, outDir, makeUnique, compressOutput);
 		return success ? 0 : 1;
@@ -3,20 +3,19 @@ package de.uhh.lt.lefex.SentenceSplitter;
 import de.tudarmstadt.ukp.dkpro.core.api.segmentation.type.Sentence;
 import de.tudarmstadt.ukp.dkpro.core.api.segmentation.type.Token;
 import de.tudarmstadt.ukp.dkpro.core.opennlp.OpenNlpSegmenter;
+import de.uhh.lt.lefex.Utils.EnginePool;
+import de.uhh.lt.lefex.Utils.MapperMetrics;
 import org.apache.hadoop.io.LongWritable;
 import org.apache.hadoop.io.Text;
 import org.apache.hadoop.mapreduce.Mapper;
 import org.apache.log4j.Logger;
 import org.apache.uima.analysis_engine.AnalysisEngine;
 import org.apache.uima.cas.CASException;
-import org.apache.uima.fit.factory.AnalysisEngineFactory;
 import org.apache.uima.fit.util.JCasUtil;
 import org.apache.uima.jcas.JCas;
 import org.apache.uima.resource.ResourceInitializationException;
-import org.apache.uima.util.CasCreationUtils;
 import java.io.IOException;
 import java.util.Collection;
-import static org.apache.uima.fit.factory.TypeSystemDescriptionFactory.createTypeSystemDescription;
 import org.jsoup.Jsoup;
 
 
@@ -26,17 +25,34 @@ class HadoopMap extends Mapper<LongWritable, Text, LongWritable, Text> {
 	JCas jCas;
     int maxSentenceSizeTokens;
     boolean stripHtml;
+    MapperMetrics metrics;
+    MapperMetrics.Counter totalLines;
+    MapperMetrics.Counter sentencesTotal;
+    MapperMetrics.Counter sentencesWritten;
+    MapperMetrics.Counter sentencesSkipped;
+    MapperMetrics.Timer htmlTime;
+    MapperMetrics.Timer segmenterTime;
 
 	@Override
 	public void setup(Context context) {
+        metrics = new MapperMetrics(context.getConfiguration());
+        totalLines = metrics.counter("de.tudarmstadt.lt", "TOTAL_LINES");
+        sentencesTotal = metrics.counter("de.tudarmstadt.lt", "SENTENCES_TOTAL");
+        sentencesWritten = metrics.counter("de.tudarmstadt.lt", "SENTENCES_WRITTEN");
+        sentencesSkipped = metrics.counter("de.tudarmstadt.lt", "SENTENCES_SKIPPED");
+        htmlTime = metrics.timer("HTML_CLEANUP");
+        segmenterTime = metrics.timer("SEGMENTER");
+
         maxSentenceSizeTokens = context.getConfiguration().getInt("max_sentence_size", 110);
         stripHtml = context.getConfiguration().getBoolean("strip_html", false);
         log.info("Max sentence size (tokens): " + maxSentenceSizeTokens);
         log.info("Strip HTML tags: " + stripHtml);
 
+        boolean sharedEngines = context.getConfiguration().getBoolean(EnginePool.SHARED, true);
+
         try {
-            segmenter = AnalysisEngineFactory.createEngine(OpenNlpSegmenter.class);
-            jCas = CasCreationUtils.createCas(createTypeSystemDescription(), null, null).getJCas();
+            segmenter = EnginePool.acquire(sharedEngines, OpenNlpSegmenter.class);
+            jCas = EnginePool.acquireJCas(sharedEngines);
         } catch (ResourceInitializationException e) {
             log.error("Couldn't initialize analysis engine", e);
         } catch (CASException e) {
@@ -47,27 +63,31 @@ class HadoopMap extends Mapper<LongWritable, Text, LongWritable, Text> {
 	@Override
 	public void map(LongWritable key, Text value, Context context)
 		throws IOException, InterruptedException {
+        metrics.record(context);
 		try {
+            long t = System.nanoTime();
             String text = value.toString();
             if (stripHtml) text = Jsoup.parse(text).text();
+            t = htmlTime.stop(t);
 
-            context.getCounter("de.tudarmstadt.lt", "TOTAL_LINES").increment(1);
+            totalLines.increment(1);
             jCas.reset();
             jCas.setDocumentText(text);
             jCas.setDocumentLanguage("en");
             segmenter.process(jCas);
+            segmenterTime.stop(t);
 
             for (Sentence sentence : JCasUtil.select(jCas, Sentence.class)) {
                 Collection<Token> tokens = JCasUtil.selectCovered(jCas, Token.class, sentence);
-                context.getCounter("de.tudarmstadt.lt", "SENTENCES_TOTAL").increment(1);
+                sentencesTotal.increment(1);
                 if(tokens.size() <= maxSentenceSizeTokens) {
                     String sentenceStr = text
                             .substring(sentence.getBegin(), sentence.getEnd())
                             .replaceAll("\\s+", " ");
                     context.write(new LongWritable(sentenceStr.hashCode()), new Text(sentenceStr));
-                    context.getCounter("de.tudarmstadt.lt", "SENTENCES_WRITTEN").increment(1);
+                    sentencesWritten.increment(1);
                 } else {
-                    context.getCounter("de.tudarmstadt.lt", "SENTENCES_SKIPPED").increment(1);
+                    sentencesSkipped.increment(1);
                 }
             }
 
@@ -76,4 +96,10 @@ class HadoopMap extends Mapper<LongWritable, Text, LongWritable, Text> {
             context.getCounter("de.tudarmstadt.lt.wiki", "NUM_MAP_ERRORS").increment(1);
         }
     }
+
+    @Override
+    public void cleanup(Context context) {
+        metrics.publish(context);
+        EnginePool.release(segmenter, jCas);
+    }
 }
@@ -1,6 +1,8 @@
 package de.uhh.lt.lefex.SentenceSplitter;
 
 import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 import org.apache.hadoop.io.LongWritable;
 import org.apache.hadoop.io.NullWritable;
@@ -8,12 +10,30 @@ import org.apache.hadoop.io.Text;
 import org.apache.hadoop.mapreduce.Reducer;
 
 public class HadoopReduce extends Reducer<LongWritable, Text, Text, NullWritable> {
+    boolean outputCounts;
+
+    @Override
+    public void setup(Context context) {
+        outputCounts = context.getConfiguration().getBoolean("output_counts", false);
+    }
 
     @Override
     public void reduce(LongWritable lineID, Iterable<Text> texts, Context context) throws IOException, InterruptedException {
+        if (!outputCounts) {
+            for(Text t : texts) {
+                context.write(t, NullWritable.get());
+                break;
+            }
+            return;
+        }
+
+        // "count<TAB>sentence": sentences with the same hash code are counted separately
+        Map<String, Integer> counts = new LinkedHashMap<>();
         for(Text t : texts) {
-            context.write(t, NullWritable.get());
-            break;
+            counts.merge(t.toString(), 1, Integer::sum);
+        }
+        for (Map.Entry<String, Integer> entry : counts.entrySet()) {
+            context.write(new Text(entry.getValue() + "\t" + entry.getKey()), NullWritable.get());
         }
     }
-}
\ No newline at end of file
+}
@@ -50,6 +50,23 @@ public class HadoopTest {
     }
 
 
+    @Test
+    public void testUniqCounts() throws Exception {
+        ClassLoader classLoader = getClass().getClassLoader();
+        File file = new File(classLoader.getResource("test/ukwac-sample-10-oneliner.txt").getFile());
+        String inputPath = file.getAbsolutePath();
+        String outputDir = inputPath + "-out";
+        Configuration conf = new Configuration();
+        conf.setBoolean("output_counts", true);
+        ToolRunner.run(conf, new HadoopMain(), new String[]{inputPath, outputDir, "true", "true"});
+
+        List<String> lines = Format.readGzipAsList((new File(outputDir, "part-r-00000.gz")).getAbsolutePath());
+        assertEquals("Number of lines is wrong.", 10, lines.size());
+        int total = 0;
+        for (String line : lines) total += Integer.parseInt(line.split("\t")[0]);
+        assertEquals("Counts should sum up to the number of sentences.", 14, total);
+    }
+
     private void run(String inputPath, String outputDir, boolean makeUniq, int expectedLinesNum) throws Exception {
         run(inputPath, outputDir, makeUniq, expectedLinesNum, false);
     }
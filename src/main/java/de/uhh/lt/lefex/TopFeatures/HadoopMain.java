@@ -0,0 +1,79 @@
+package de.uhh.lt.lefex.TopFeatures;
+
+import java.util.Arrays;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.conf.Configured;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.NullWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
+import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
+import org.apache.hadoop.util.Tool;
+import org.apache.hadoop.util.ToolRunner;
+import de.uhh.lt.lefex.Utils.FrontCodedFile;
+import de.uhh.lt.lefex.Utils.FrontCodedTextInputFormat;
+
+/**
+ * Keeps the top_features.k best features of each word: reads "word<TAB>feature<TAB>score" files, by default the
+ * WF output of ExtractTermFeatureScores with the counts as scores, and writes one line
+ * "word<TAB>feature1:score1<TAB>feature2:score2..." per word to <output>/TopWF-r-*, best features first. Ties are
+ * broken by the feature. The selection uses a secondary sort on the score, so neither the mappers nor the
+ * reducers hold more than k features of a word in memory.
+ */
+public class HadoopMain extends Configured implements Tool {
+	public static final String K = "top_features.k";
+	public static final int DEFAULT_K = 1000;
+
+	public boolean runJob(String inputGlob, String outDir) throws Exception {
+		Configuration conf = new Configuration(getConf());
+		if (conf.getInt(K, DEFAULT_K) < 1) throw new IllegalArgumentException(K + " must be at least 1");
+		// The inputs are lines of text, whatever input the feature extraction had
+		conf.unset("textinputformat.record.delimiter");
+		conf.set("mapreduce.output.basename", "TopWF");
+		Job job = Job.getInstance(conf);
+		job.setJarByClass(HadoopMain.class);
+		Path glob = new Path(inputGlob);
+		FileInputFormat.addInputPath(job, glob);
+		FileStatus[] files = glob.getFileSystem(conf).globStatus(glob);
+		if (files != null && files.length > 0 && files[0].getPath().getName().endsWith(FrontCodedFile.EXTENSION)) {
+			job.setInputFormatClass(FrontCodedTextInputFormat.class);
+		}
+		FileOutputFormat.setOutputPath(job, new Path(outDir));
+		job.setMapperClass(TopFeaturesMap.class);
+		job.setMapOutputKeyClass(WordScoreKey.class);
+		job.setMapOutputValueClass(Text.class);
+		job.setPartitionerClass(WordScoreKey.WordPartitioner.class);
+		job.setSortComparatorClass(WordScoreKey.Comparator.class);
+		job.setGroupingComparatorClass(WordScoreKey.GroupingComparator.class);
+		job.setReducerClass(TopFeaturesReduce.class);
+		job.setOutputKeyClass(Text.class);
+		job.setOutputValueClass(NullWritable.class);
+		job.setJobName("lefex: Top Features per Word");
+		return job.waitForCompletion(true);
+	}
+
+	@Override
+	public int run(String[] args) throws Exception {
+		System.out.println("args:" + Arrays.asList(args));
+		if (args.length < 2) {
+			System.out.println("Usage: <input-word-feature-scores> <output-path-to-top-features>");
+			System.out.println("The input is for instance the WF output of ExtractTermFeatureScores: <features>/WF-r-*");
+			System.out.println("-D" + K + "\tnumber of features per word. Default -- " + DEFAULT_K);
+			System.exit(1);
+		}
+		System.out.println("Input: " + args[0]);
+		System.out.println("Output: " + args[1]);
+		System.out.println("Features per word: " + getConf().getInt(K, DEFAULT_K));
+
+		boolean success = runJob(args[0], args[1]);
+		return success ? 0 : 1;
+	}
+
+	public static void main(final String[] args) throws Exception {
+		Configuration conf = new Configuration();
+		int res = ToolRunner.run(conf, new HadoopMain(), args);
+		System.exit(res);
+	}
+}
@@ -0,0 +1,63 @@
+package de.uhh.lt.lefex.TopFeatures;
+
+import de.uhh.lt.lefex.TestPaths;
+import de.uhh.lt.lefex.Utils.Format;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.util.ToolRunner;
+import org.junit.Test;
+import java.io.File;
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class HadoopTest {
+    @Test
+    public void testTrigramTopFeatures() throws Exception {
+        TestPaths paths = new TestPaths("");
+        Configuration conf = new Configuration();
+        conf.setBoolean("holing.coocs", false);
+        conf.setInt("holing.sentences.maxlength", 100);
+        conf.setStrings("holing.type", "trigram");
+        conf.setBoolean("holing.output.top_features", true);
+        conf.setInt(HadoopMain.K, 2);
+        ToolRunner.run(conf, new de.uhh.lt.lefex.ExtractTermFeatureScores.HadoopMain(),
+                new String[]{paths.getInputPath(), paths.getOutputDir(), "true"});
+
+        // expected: the two pairs with the highest counts, ties broken by feature
+        Map<String, List<String[]>> pairs = new HashMap<>();
+        for (String line : Format.readGzipAsList((new File(paths.getOutputDir(), "WF-r-00000.gz")).getAbsolutePath())) {
+            String[] fields = line.split("\t");
+            pairs.computeIfAbsent(fields[0], w -> new ArrayList<>()).add(fields);
+        }
+        Set<String> expected = new HashSet<>();
+        for (Map.Entry<String, List<String[]>> entry : pairs.entrySet()) {
+            List<String[]> features = entry.getValue();
+            features.sort((a, b) -> {
+                int cmp = Long.compare(Long.parseLong(b[2]), Long.parseLong(a[2]));
+                return cmp != 0 ? cmp : a[1].compareTo(b[1]);
+            });
+            StringBuilder sb = new StringBuilder(entry.getKey());
+            for (String[] feature : features.subList(0, Math.min(2, features.size()))) {
+                sb.append('\t').append(feature[1]).append(':').append(feature[2]);
+            }
+            expected.add(sb.toString());
+        }
+
+        Set<String> top = new HashSet<>();
+        for (File file : new File(paths.getOutputDir(), "top").listFiles((dir, name) -> name.startsWith("TopWF-r-"))) {
+            top.addAll(Format.readGzipAsList(file.getAbsolutePath()));
+        }
+        assertEquals("Number of words is wrong.", pairs.size(), top.size());
+        assertEquals(expected, top);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNoTopFeatures() throws Exception {
+        TestPaths paths = new TestPaths("");
+        Configuration conf = new Configuration();
+        conf.setInt(HadoopMain.K, 0);
+        HadoopMain topFeatures = new HadoopMain();
+        topFeatures.setConf(conf);
+        topFeatures.runJob(paths.getInputPath(), paths.getOutputDir());
+    }
+}
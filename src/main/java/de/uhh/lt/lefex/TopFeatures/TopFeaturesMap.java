@@ -0,0 +1,86 @@
+package de.uhh.lt.lefex.TopFeatures;
+
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.WritableComparator;
+import org.apache.hadoop.mapreduce.Mapper;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.PriorityQueue;
+
+/**
+ * Reads "word<TAB>feature<TAB>score" lines, e.g. the WF output with counts as scores, and emits only the best
+ * top_features.k features of each run of lines with the same word. The WF outputs are sorted by word, so usually
+ * each word is one run and at most k entries per word and split go to the shuffle. The candidates are kept in a
+ * bounded heap whose entries are reused, so the memory does not depend on the number of features of a word.
+ */
+public class TopFeaturesMap extends Mapper<LongWritable, Text, WordScoreKey, Text> {
+    private final Text word = new Text();
+    private final WordScoreKey outKey = new WordScoreKey();
+    // the worst candidate first: lowest score, then greatest feature
+    private final PriorityQueue<Candidate> heap = new PriorityQueue<>(16, (a, b) -> {
+        int cmp = Double.compare(a.score, b.score);
+        return cmp != 0 ? cmp : b.feature.compareTo(a.feature);
+    });
+    private final ArrayDeque<Candidate> free = new ArrayDeque<>();
+    private int k;
+
+    private static class Candidate {
+        final Text feature = new Text();
+        final Text value = new Text();
+        double score;
+    }
+
+    @Override
+    public void setup(Context context) {
+        k = context.getConfiguration().getInt(HadoopMain.K, HadoopMain.DEFAULT_K);
+    }
+
+    @Override
+    public void map(LongWritable key, Text line, Context context) throws IOException, InterruptedException {
+        byte[] bytes = line.getBytes();
+        int length = line.getLength();
+        int first = 0;
+        while (first < length && bytes[first] != '\t') first++;
+        int last = length - 1;
+        while (last > first && bytes[last] != '\t') last--;
+        if (last <= first) {
+            context.getCounter("de.uhh.lt.lefex", "NUM_MALFORMED_LINES").increment(1);
+            return;
+        }
+        if (WritableComparator.compareBytes(word.getBytes(), 0, word.getLength(), bytes, 0, first) != 0) {
+            flush(context);
+            word.set(bytes, 0, first);
+        }
+
+        double score = Double.parseDouble(Text.decode(bytes, last + 1, length - last - 1));
+        int featureStart = first + 1;
+        int featureLength = last - first - 1;
+        if (heap.size() == k) {
+            Candidate worst = heap.peek();
+            int cmp = Double.compare(score, worst.score);
+            if (cmp < 0 || (cmp == 0 && WritableComparator.compareBytes(bytes, featureStart, featureLength,
+                    worst.feature.getBytes(), 0, worst.feature.getLength()) >= 0)) return;
+            free.push(heap.poll());
+        }
+        Candidate candidate = free.isEmpty() ? new Candidate() : free.pop();
+        candidate.feature.set(bytes, featureStart, featureLength);
+        candidate.value.set(bytes, last + 1, length - last - 1);
+        candidate.score = score;
+        heap.add(candidate);
+    }
+
+    private void flush(Context context) throws IOException, InterruptedException {
+        while (!heap.isEmpty()) {
+            Candidate candidate = heap.poll();
+            outKey.set(word, candidate.score, candidate.feature);
+            context.write(outKey, candidate.value);
+            free.push(candidate);
+        }
+    }
+
+    @Override
+    public void cleanup(Context context) throws IOException, InterruptedException {
+        flush(context);
+    }
+}
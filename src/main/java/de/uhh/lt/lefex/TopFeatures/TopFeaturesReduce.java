@@ -0,0 +1,39 @@
+package de.uhh.lt.lefex.TopFeatures;
+
+import org.apache.hadoop.io.NullWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapreduce.Reducer;
+import java.io.IOException;
+
+/**
+ * Gets the entries of a word sorted by descending score and writes the first top_features.k of them as one line
+ * "word<TAB>feature1:score1<TAB>feature2:score2...". The rest of the entries is never read.
+ */
+public class TopFeaturesReduce extends Reducer<WordScoreKey, Text, Text, NullWritable> {
+    private static final byte[] TAB = {'\t'};
+    private static final byte[] COLON = {':'};
+    private final Text line = new Text();
+    private int k;
+
+    @Override
+    public void setup(Context context) {
+        k = context.getConfiguration().getInt(HadoopMain.K, HadoopMain.DEFAULT_K);
+    }
+
+    @Override
+    public void reduce(WordScoreKey key, Iterable<Text> values, Context context) throws IOException, InterruptedException {
+        Text word = key.getWord();
+        line.set(word.getBytes(), 0, word.getLength());
+        int n = 0;
+        // the key changes with each value, it holds the feature of the current value
+        for (Text value : values) {
+            if (n++ == k) break;
+            Text feature = key.getFeature();
+            line.append(TAB, 0, 1);
+            line.append(feature.getBytes(), 0, feature.getLength());
+            line.append(COLON, 0, 1);
+            line.append(value.getBytes(), 0, value.getLength());
+        }
+        context.write(line, NullWritable.get());
+    }
+}
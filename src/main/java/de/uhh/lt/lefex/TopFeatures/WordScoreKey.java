@@ -0,0 +1,138 @@
+package de.uhh.lt.lefex.TopFeatures;
+
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.WritableComparable;
+import org.apache.hadoop.io.WritableComparator;
+import org.apache.hadoop.io.WritableUtils;
+import org.apache.hadoop.mapreduce.Partitioner;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Key of the secondary sort: the entries of a word are sorted by descending score and then by feature, so the
+ * reducer sees the best features of a word first. Serialized as [vint length][word][double score][vint length][feature].
+ * The reducer groups by word only, see GroupingComparator, and WordPartitioner sends all entries of a word to
+ * the same reducer.
+ */
+public class WordScoreKey implements WritableComparable<WordScoreKey> {
+    private final Text word = new Text();
+    private final Text feature = new Text();
+    private double score;
+
+    static {
+        WritableComparator.define(WordScoreKey.class, new Comparator());
+    }
+
+    public void set(Text word, double score, Text feature) {
+        this.word.set(word);
+        this.score = score;
+        this.feature.set(feature);
+    }
+
+    public Text getWord() {
+        return word;
+    }
+
+    public Text getFeature() {
+        return feature;
+    }
+
+    public double getScore() {
+        return score;
+    }
+
+    @Override
+    public void write(DataOutput out) throws IOException {
+        word.write(out);
+        out.writeDouble(score);
+        feature.write(out);
+    }
+
+    @Override
+    public void readFields(DataInput in) throws IOException {
+        word.readFields(in);
+        score = in.readDouble();
+        feature.readFields(in);
+    }
+
+    @Override
+    public int compareTo(WordScoreKey other) {
+        int cmp = word.compareTo(other.word);
+        if (cmp != 0) return cmp;
+        cmp = Double.compare(other.score, score);
+        if (cmp != 0) return cmp;
+        return feature.compareTo(other.feature);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof WordScoreKey && compareTo((WordScoreKey) o) == 0;
+    }
+
+    @Override
+    public int hashCode() {
+        return word.hashCode();
+    }
+
+    /** Sort order: word, descending score, feature. */
+    public static class Comparator extends WritableComparator {
+        public Comparator() {
+            super(WordScoreKey.class);
+        }
+
+        @Override
+        public int compare(byte[] b1, int s1, int l1, byte[] b2, int s2, int l2) {
+            try {
+                int n1 = WritableUtils.decodeVIntSize(b1[s1]);
+                int n2 = WritableUtils.decodeVIntSize(b2[s2]);
+                int word1 = readVInt(b1, s1);
+                int word2 = readVInt(b2, s2);
+                int cmp = compareBytes(b1, s1 + n1, word1, b2, s2 + n2, word2);
+                if (cmp != 0) return cmp;
+                int score1 = s1 + n1 + word1;
+                int score2 = s2 + n2 + word2;
+                cmp = Double.compare(readDouble(b2, score2), readDouble(b1, score1));
+                if (cmp != 0) return cmp;
+                int feature1 = score1 + 8;
+                int feature2 = score2 + 8;
+                int m1 = WritableUtils.decodeVIntSize(b1[feature1]);
+                int m2 = WritableUtils.decodeVIntSize(b2[feature2]);
+                return compareBytes(b1, feature1 + m1, readVInt(b1, feature1), b2, feature2 + m2, readVInt(b2, feature2));
+            } catch (IOException e) {
+                throw new IllegalArgumentException(e);
+            }
+        }
+    }
+
+    /** Groups the entries of a word into one reduce call. */
+    public static class GroupingComparator extends WritableComparator {
+        public GroupingComparator() {
+            super(WordScoreKey.class);
+        }
+
+        @Override
+        public int compare(byte[] b1, int s1, int l1, byte[] b2, int s2, int l2) {
+            try {
+                int n1 = WritableUtils.decodeVIntSize(b1[s1]);
+                int n2 = WritableUtils.decodeVIntSize(b2[s2]);
+                return compareBytes(b1, s1 + n1, readVInt(b1, s1), b2, s2 + n2, readVInt(b2, s2));
+            } catch (IOException e) {
+                throw new IllegalArgumentException(e);
+            }
+        }
+
+        @Override
+        @SuppressWarnings("rawtypes")
+        public int compare(WritableComparable a, WritableComparable b) {
+            return ((WordScoreKey) a).word.compareTo(((WordScoreKey) b).word);
+        }
+    }
+
+    public static class WordPartitioner extends Partitioner<WordScoreKey, Text> {
+        @Override
+        public int getPartition(WordScoreKey key, Text value, int numPartitions) {
+            return (key.word.hashCode() & Integer.MAX_VALUE) % numPartitions;
+        }
+    }
+}
@@ -0,0 +1,205 @@
+package de.uhh.lt.lefex.Utils;
+
+import org.apache.hadoop.io.WritableComparable;
+import org.apache.hadoop.io.WritableComparator;
+import org.apache.hadoop.io.WritableUtils;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Map output key of the counting jobs: a channel byte (W, F, WF, CoocF or CoocWF) followed by the UTF-8 bytes
+ * of "word" or "word<TAB>feature". Replaces keys like new Text("WF\t" + word + "\t" + feature): within a channel
+ * the keys sort exactly like the old Text keys and hashCode() equals the hash of the old Text key, so the
+ * partitioning and the content of the output files do not change.
+ */
+public class ChannelKey implements WritableComparable<ChannelKey> {
+    public static final byte W = 0;
+    public static final byte F = 1;
+    public static final byte WF = 2;
+    public static final byte COOC_F = 3;
+    public static final byte COOC_WF = 4;
+
+    private static final String[] NAMES = {"W", "F", "WF", "CoocF", "CoocWF"};
+    private static final byte TAB = '\t';
+
+    // Hash of the "NAME<TAB>" prefix of the old Text keys, see WritableComparator.hashBytes()
+    private static final int[] PREFIX_HASH = new int[NAMES.length];
+    static {
+        for (int i = 0; i < NAMES.length; i++) {
+            byte[] prefix = (NAMES[i] + "\t").getBytes(StandardCharsets.UTF_8);
+            PREFIX_HASH[i] = WritableComparator.hashBytes(prefix, prefix.length);
+        }
+        WritableComparator.define(ChannelKey.class, new Comparator());
+    }
+
+    private byte channel;
+    private byte[] bytes = new byte[64];
+    private int length;
+
+    public ChannelKey() { }
+
+    public ChannelKey(ChannelKey other) {
+        set(other);
+    }
+
+    public static String getName(byte channel) {
+        return NAMES[channel];
+    }
+
+    public static byte getChannel(String name) {
+        for (byte i = 0; i < NAMES.length; i++) {
+            if (NAMES[i].equals(name)) return i;
+        }
+        throw new IllegalArgumentException("Unknown channel: " + name);
+    }
+
+    public byte getChannel() {
+        return channel;
+    }
+
+    public String getChannelName() {
+        return NAMES[channel];
+    }
+
+    /** Returns the raw UTF-8 payload. Only the first getLength() bytes are valid. */
+    public byte[] getBytes() {
+        return bytes;
+    }
+
+    public int getLength() {
+        return length;
+    }
+
+    public void set(byte channel, CharSequence word) {
+        clear(channel);
+        append(word);
+    }
+
+    public void set(byte channel, CharSequence word, CharSequence feature) {
+        clear(channel);
+        append(word);
+        appendTab();
+        append(feature);
+    }
+
+    public void set(byte channel, byte[] utf8, int start, int len) {
+        clear(channel);
+        append(utf8, start, len);
+    }
+
+    public void set(ChannelKey other) {
+        set(other.channel, other.bytes, 0, other.length);
+    }
+
+    public void clear(byte channel) {
+        this.channel = channel;
+        this.length = 0;
+    }
+
+    public void appendTab() {
+        ensureCapacity(length + 1);
+        bytes[length++] = TAB;
+    }
+
+    public void append(byte[] utf8, int start, int len) {
+        ensureCapacity(length + len);
+        System.arraycopy(utf8, start, bytes, length, len);
+        length += len;
+    }
+
+    /** Encodes the characters as UTF-8 without creating intermediate objects. Unpaired surrogates become '?' like in Text. */
+    public void append(CharSequence s) {
+        int n = s.length();
+        ensureCapacity(length + 3 * n);
+        for (int i = 0; i < n; i++) {
+            char c = s.charAt(i);
+            if (c < 0x80) {
+                bytes[length++] = (byte) c;
+            } else if (c < 0x800) {
+                bytes[length++] = (byte) (0xC0 | (c >> 6));
+                bytes[length++] = (byte) (0x80 | (c & 0x3F));
+            } else if (Character.isHighSurrogate(c) && i + 1 < n && Character.isLowSurrogate(s.charAt(i + 1))) {
+                int cp = Character.toCodePoint(c, s.charAt(++i));
+                bytes[length++] = (byte) (0xF0 | (cp >> 18));
+                bytes[length++] = (byte) (0x80 | ((cp >> 12) & 0x3F));
+                bytes[length++] = (byte) (0x80 | ((cp >> 6) & 0x3F));
+                bytes[length++] = (byte) (0x80 | (cp & 0x3F));
+            } else if (Character.isSurrogate(c)) {
+                bytes[length++] = '?';
+            } else {
+                bytes[length++] = (byte) (0xE0 | (c >> 12));
+                bytes[length++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                bytes[length++] = (byte) (0x80 | (c & 0x3F));
+            }
+        }
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > bytes.length) bytes = Arrays.copyOf(bytes, Math.max(capacity, 2 * bytes.length));
+    }
+
+    @Override
+    public void write(DataOutput out) throws IOException {
+        out.writeByte(channel);
+        WritableUtils.writeVInt(out, length);
+        out.write(bytes, 0, length);
+    }
+
+    @Override
+    public void readFields(DataInput in) throws IOException {
+        channel = in.readByte();
+        length = 0;
+        int len = WritableUtils.readVInt(in);
+        ensureCapacity(len);
+        in.readFully(bytes, 0, len);
+        length = len;
+    }
+
+    @Override
+    public int compareTo(ChannelKey other) {
+        if (channel != other.channel) return channel - other.channel;
+        return WritableComparator.compareBytes(bytes, 0, length, other.bytes, 0, other.length);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof ChannelKey && compareTo((ChannelKey) o) == 0;
+    }
+
+    @Override
+    public int hashCode() {
+        int hash = PREFIX_HASH[channel];
+        for (int i = 0; i < length; i++) hash = 31 * hash + bytes[i];
+        return hash;
+    }
+
+    /** Returns the payload, i.e. the key as it appears in the output files. */
+    @Override
+    public String toString() {
+        return new String(bytes, 0, length, StandardCharsets.UTF_8);
+    }
+
+    /** Compares the serialized keys without deserializing them: channel byte first, then the payload bytes. */
+    public static class Comparator extends WritableComparator {
+        public Comparator() {
+            super(ChannelKey.class);
+        }
+
+        @Override
+        public int compare(byte[] b1, int s1, int l1, byte[] b2, int s2, int l2) {
+            if (b1[s1] != b2[s2]) return b1[s1] - b2[s2];
+            try {
+                int n1 = WritableUtils.decodeVIntSize(b1[s1 + 1]);
+                int n2 = WritableUtils.decodeVIntSize(b2[s2 + 1]);
+                int len1 = readVInt(b1, s1 + 1);
+                int len2 = readVInt(b2, s2 + 1);
+                return compareBytes(b1, s1 + 1 + n1, len1, b2, s2 + 1 + n2, len2);
+            } catch (IOException e) {
+                throw new IllegalArgumentException(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package de.uhh.lt.lefex.Utils;
+
+import org.apache.hadoop.io.DataOutputBuffer;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.WritableComparator;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class ChannelKeyTest {
+
+    private static byte[] serialize(ChannelKey key) throws Exception {
+        DataOutputBuffer out = new DataOutputBuffer();
+        key.write(out);
+        byte[] res = new byte[out.getLength()];
+        System.arraycopy(out.getData(), 0, res, 0, out.getLength());
+        return res;
+    }
+
+    @Test
+    public void hashEqualsTextHash() {
+        ChannelKey key = new ChannelKey();
+        key.set(ChannelKey.WF, "Knoll Road", "prep_on(continue,@)");
+        assertEquals(new Text("WF\tKnoll Road\tprep_on(continue,@)").hashCode(), key.hashCode());
+        key.set(ChannelKey.W, "Straße#NN");
+        assertEquals(new Text("W\tStraße#NN").hashCode(), key.hashCode());
+        assertEquals("Straße#NN", key.toString());
+    }
+
+    @Test
+    public void orderEqualsTextOrder() throws Exception {
+        String[][] pairs = {{"ab", "x"}, {"ab c", "y"}, {"ab\u0001", "z"}, {"über", "a"}, {"😀", "b"}, {"a", "b"}};
+        WritableComparator raw = WritableComparator.get(ChannelKey.class);
+        for (String[] p1 : pairs) {
+            for (String[] p2 : pairs) {
+                ChannelKey k1 = new ChannelKey();
+                ChannelKey k2 = new ChannelKey();
+                k1.set(ChannelKey.WF, p1[0], p1[1]);
+                k2.set(ChannelKey.WF, p2[0], p2[1]);
+                int expected = Integer.signum(new Text(p1[0] + "\t" + p1[1]).compareTo(new Text(p2[0] + "\t" + p2[1])));
+                assertEquals(expected, Integer.signum(k1.compareTo(k2)));
+                byte[] b1 = serialize(k1);
+                byte[] b2 = serialize(k2);
+                assertEquals(expected, Integer.signum(raw.compare(b1, 0, b1.length, b2, 0, b2.length)));
+            }
+        }
+    }
+}
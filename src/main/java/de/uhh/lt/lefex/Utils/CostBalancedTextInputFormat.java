@@ -0,0 +1,193 @@
+package de.uhh.lt.lefex.Utils;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.BlockLocation;
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapreduce.InputSplit;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.JobContext;
+import org.apache.hadoop.mapreduce.lib.input.TextInputFormat;
+import org.apache.hadoop.util.LineReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * TextInputFormat that cuts a file into splits of about the same estimated NLP cost instead of the same number of
+ * bytes. The parser dominates the run time and its cost grows faster than linearly with the sentence length, so a
+ * split of long forum posts takes much longer than a split of short news sentences of the same size.
+ *
+ * A file gets as many splits as by bytes. It is probed at split.cost.probes_per_split evenly spaced offsets per
+ * split; at each probe the records of split.cost.probe_size bytes are tokenized at whitespace and split into
+ * sentences after ".", "!" and "?" and at the end of a record, also of a record of several lines with a
+ * textinputformat.record.delimiter, and each sentence of n tokens costs n + n^split.cost.exponent, or only n if
+ * it is longer than holing.sentences.maxlength and skipped by the mapper. The cost per byte of a probe is taken
+ * for the bytes up to the next probe, and the splits are cut where the estimated cost reaches equal shares.
+ * The records are read as by TextInputFormat, which skips to the next record at the start of a split.
+ * Compressed files are not splittable and get one split each. CoNLL input (holing.input=conll) is not parsed again,
+ * its cost grows linearly with its size, so it keeps the splits of TextInputFormat.
+ */
+public class CostBalancedTextInputFormat extends TextInputFormat {
+    public static final String ENABLED = "split.cost_balanced";
+    public static final String PROBE_SIZE = "split.cost.probe_size";
+    public static final String PROBES_PER_SPLIT = "split.cost.probes_per_split";
+    public static final String EXPONENT = "split.cost.exponent";
+
+    /**
+     * Makes the job use this format if split.cost_balanced is true and the input is not CoNLL.
+     * */
+    public static boolean configure(Job job) {
+        if (!job.getConfiguration().getBoolean(ENABLED, false)) return false;
+        if (job.getConfiguration().get("holing.input", "text").equals("conll")) {
+            System.out.println("CoNLL input is not parsed, splits of equal size");
+            return false;
+        }
+        System.out.println("Splits of equal estimated cost");
+        job.setInputFormatClass(CostBalancedTextInputFormat.class);
+        return true;
+    }
+
+    @Override
+    public List<InputSplit> getSplits(JobContext job) throws IOException {
+        Configuration conf = job.getConfiguration();
+        long minSize = Math.max(getFormatMinSplitSize(), getMinSplitSize(job));
+        long maxSize = getMaxSplitSize(job);
+        List<InputSplit> splits = new ArrayList<>();
+        List<FileStatus> files = listStatus(job);
+        for (FileStatus file : files) {
+            Path path = file.getPath();
+            long length = file.getLen();
+            FileSystem fs = path.getFileSystem(conf);
+            BlockLocation[] blocks = fs.getFileBlockLocations(file, 0, length);
+            if (length == 0) {
+                splits.add(makeSplit(path, 0, 0, new String[0]));
+                continue;
+            }
+            if (!isSplitable(job, path)) {
+                splits.add(makeSplit(path, 0, length, blocks[0].getHosts()));
+                continue;
+            }
+            long splitSize = computeSplitSize(file.getBlockSize(), minSize, maxSize);
+            int numSplits = (int) Math.max(1, (length + splitSize - 1) / splitSize);
+            // a split is at least a sixteenth of the byte split size, so a few very long records do not get a
+            // split each
+            long[] bounds = numSplits == 1 ? new long[]{0, length}
+                    : cutByCost(conf, fs, path, length, numSplits, Math.max(minSize, splitSize / 16));
+            for (int i = 0; i + 1 < bounds.length; i++) {
+                long start = bounds[i];
+                splits.add(makeSplit(path, start, bounds[i + 1] - start, blocks[getBlockIndex(blocks, start)].getHosts()));
+            }
+        }
+        job.getConfiguration().setLong(NUM_INPUT_FILES, files.size());
+        return splits;
+    }
+
+    /** Returns the numSplits + 1 boundaries of the splits of the file, from 0 to length. */
+    private static long[] cutByCost(Configuration conf, FileSystem fs, Path path, long length, int numSplits,
+                                    long minSplitSize) throws IOException {
+        int probeSize = conf.getInt(PROBE_SIZE, 64 * 1024);
+        int numProbes = (int) Math.min((long) numSplits * conf.getInt(PROBES_PER_SPLIT, 8), Math.max(1, length / probeSize));
+        double[] costs = new double[numProbes]; // estimated cost of the bytes from probe i to probe i + 1
+        CostEstimator estimator = new CostEstimator(conf);
+        double total = 0;
+        try (FSDataInputStream in = fs.open(path)) {
+            for (int i = 0; i < numProbes; i++) {
+                long from = length * i / numProbes;
+                long to = length * (i + 1) / numProbes;
+                costs[i] = estimator.costPerByte(in, from, Math.min(probeSize, to - from)) * (to - from);
+                total += costs[i];
+            }
+        }
+
+        long[] bounds = new long[numSplits + 1];
+        bounds[numSplits] = length;
+        if (total <= 0) {
+            for (int k = 1; k < numSplits; k++) bounds[k] = length * k / numSplits;
+            return bounds;
+        }
+        int probe = 0;
+        double costBefore = 0; // cost of the probes before the current one
+        for (int k = 1; k < numSplits; k++) {
+            double target = total * k / numSplits;
+            while (probe < numProbes - 1 && costBefore + costs[probe] < target) costBefore += costs[probe++];
+            long from = length * probe / numProbes;
+            long to = length * (probe + 1) / numProbes;
+            double share = costs[probe] > 0 ? Math.min(1, Math.max(0, (target - costBefore) / costs[probe])) : 0;
+            long bound = from + (long) (share * (to - from));
+            bounds[k] = Math.min(length, Math.max(bound, bounds[k - 1] + minSplitSize));
+        }
+        // drop empty splits at the end
+        int n = 1;
+        while (n < numSplits && bounds[n] < length) n++;
+        long[] result = new long[n + 1];
+        System.arraycopy(bounds, 0, result, 0, n);
+        result[n] = length;
+        return result;
+    }
+
+    /** Estimates the cost per byte of the records in a window of a file. */
+    static class CostEstimator {
+        private final byte[] delimiter;
+        private final Configuration conf;
+        private final double exponent;
+        private final int maxSentenceLength;
+        private final Text record = new Text();
+
+        CostEstimator(Configuration conf) {
+            this.conf = conf;
+            String delimiterStr = conf.get("textinputformat.record.delimiter");
+            delimiter = delimiterStr == null ? null : delimiterStr.getBytes(StandardCharsets.UTF_8);
+            exponent = conf.getDouble(EXPONENT, 2.0);
+            maxSentenceLength = conf.getInt("holing.sentences.maxlength", 100);
+        }
+
+        /**
+         * Reads the records that start in [from, from + size), skipping the partial record at from like a
+         * record reader does, and returns their cost per byte. The last record is read to its end; if no record
+         * starts in the window, the record after it is read.
+         * */
+        double costPerByte(FSDataInputStream in, long from, long size) throws IOException {
+            in.seek(from);
+            LineReader reader = delimiter == null ? new LineReader(in, conf) : new LineReader(in, conf, delimiter);
+            long pos = from;
+            if (from > 0) pos += reader.readLine(record);
+            long bytes = 0;
+            double cost = 0;
+            while (pos < from + size || bytes == 0) {
+                int n = reader.readLine(record);
+                if (n == 0) break;
+                pos += n;
+                bytes += n;
+                cost += cost(record.getBytes(), record.getLength());
+            }
+            return bytes == 0 ? 0 : cost / bytes; // behind the last record
+        }
+
+        double cost(byte[] bytes, int length) {
+            double cost = 0;
+            int tokens = 0;
+            boolean inToken = false;
+            for (int i = 0; i < length; i++) {
+                byte b = bytes[i];
+                boolean space = b >= 0 && b <= ' ';
+                if (!space && !inToken) tokens++;
+                inToken = !space;
+                boolean end = (b == '.' || b == '!' || b == '?') && (i + 1 == length || (bytes[i + 1] >= 0 && bytes[i + 1] <= ' '));
+                if (end) {
+                    cost += sentenceCost(tokens);
+                    tokens = 0;
+                }
+            }
+            return cost + sentenceCost(tokens);
+        }
+
+        private double sentenceCost(int tokens) {
+            return tokens > maxSentenceLength ? tokens : tokens + Math.pow(tokens, exponent);
+        }
+    }
+}
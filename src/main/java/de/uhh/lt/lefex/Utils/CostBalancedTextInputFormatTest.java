@@ -0,0 +1,85 @@
+package de.uhh.lt.lefex.Utils;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapreduce.InputSplit;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.RecordReader;
+import org.apache.hadoop.mapreduce.TaskAttemptID;
+import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
+import org.apache.hadoop.mapreduce.lib.input.FileSplit;
+import org.apache.hadoop.mapreduce.task.TaskAttemptContextImpl;
+import org.junit.Test;
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class CostBalancedTextInputFormatTest {
+
+    @Test
+    public void splitsOfLongSentencesAreSmaller() throws Exception {
+        // The first half of the file has sentences of 40 words, the second half sentences of 4 words
+        StringBuilder sb = new StringBuilder();
+        List<String> lines = new ArrayList<>();
+        for (int i = 0; sb.length() < 400000; i++) {
+            lines.add(sentence(i, sb.length() < 200000 ? 40 : 4));
+            sb.append(lines.get(i)).append('\n');
+        }
+        File dir = Files.createTempDirectory("cost-splits").toFile();
+        File file = new File(dir, "corpus.txt");
+        FileUtils.writeStringToFile(file, sb.toString(), "UTF-8");
+
+        Configuration conf = new Configuration();
+        conf.setLong(FileInputFormat.SPLIT_MAXSIZE, 40000);
+        conf.setInt(CostBalancedTextInputFormat.PROBE_SIZE, 4096);
+        Job job = Job.getInstance(conf);
+        FileInputFormat.addInputPath(job, new Path(file.getAbsolutePath()));
+        List<InputSplit> splits = new CostBalancedTextInputFormat().getSplits(job);
+
+        FileSplit first = (FileSplit) splits.get(0);
+        FileSplit last = (FileSplit) splits.get(splits.size() - 1);
+        assertTrue("Splits of long sentences must be smaller.", first.getLength() * 4 < last.getLength());
+
+        // every line is read exactly once
+        List<String> read = new ArrayList<>();
+        CostBalancedTextInputFormat format = new CostBalancedTextInputFormat();
+        for (InputSplit split : splits) {
+            TaskAttemptContextImpl context = new TaskAttemptContextImpl(job.getConfiguration(), new TaskAttemptID());
+            try (RecordReader<?, Text> reader = format.createRecordReader(split, context)) {
+                reader.initialize(split, context);
+                while (reader.nextKeyValue()) read.add(reader.getCurrentValue().toString());
+            }
+        }
+        assertEquals(lines, read);
+        FileUtils.deleteDirectory(dir);
+    }
+
+    @Test
+    public void sentencesEndAtPunctuationNotAtLineBreaks() {
+        CostBalancedTextInputFormat.CostEstimator estimator = new CostBalancedTextInputFormat.CostEstimator(new Configuration());
+        byte[] record = "a b\nc d .\ne f !".getBytes(StandardCharsets.UTF_8);
+        // a record of two sentences of 5 and 3 tokens
+        assertEquals(5 + 25 + 3 + 9, estimator.cost(record, record.length), 1e-9);
+    }
+
+    @Test
+    public void conllInputKeepsEqualSplits() throws Exception {
+        Configuration conf = new Configuration();
+        conf.setBoolean(CostBalancedTextInputFormat.ENABLED, true);
+        conf.set("holing.input", "conll");
+        Job job = Job.getInstance(conf);
+        assertFalse(CostBalancedTextInputFormat.configure(job));
+        assertNotEquals(CostBalancedTextInputFormat.class, job.getInputFormatClass());
+    }
+
+    private static String sentence(int i, int length) {
+        StringBuilder sb = new StringBuilder();
+        for (int j = 0; j < length; j++) sb.append("w").append((i + j) % 97).append(' ');
+        return sb.append('.').toString();
+    }
+}
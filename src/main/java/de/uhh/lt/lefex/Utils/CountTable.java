@@ -0,0 +1,169 @@
+package de.uhh.lt.lefex.Utils;
+
+import org.apache.hadoop.io.WritableComparator;
+import java.util.Arrays;
+
+/**
+ * Open-addressing hash table from ChannelKey to a long count used for in-mapper combining. The keys are copied
+ * into one byte slab and the counts are kept in a primitive array, so adding a count allocates nothing. The table
+ * reports when it has used up its memory budget; the caller then writes all counts out and clears the table.
+ *
+ * Iterate over the entries like this:
+ * for (int slot = table.next(0); slot >= 0; slot = table.next(slot + 1)) { table.readKey(slot, key); table.getCount(slot); }
+ */
+public class CountTable {
+    private static final int EMPTY = -1;
+    private static final int ENTRY_HEADER = 5; // channel byte + int length
+    private static final int BYTES_PER_SLOT = 16; // offset + hash + count
+
+    private final long budgetBytes;
+    private byte[] slab;
+    private int slabUsed;
+    private int[] offsets;
+    private int[] hashes;
+    private long[] counts;
+    private int size;
+    private int mask;
+
+    public CountTable(long budgetBytes) {
+        this.budgetBytes = budgetBytes;
+        slab = new byte[1 << 16];
+        allocateSlots(1 << 12);
+    }
+
+    private void allocateSlots(int capacity) {
+        offsets = new int[capacity];
+        hashes = new int[capacity];
+        counts = new long[capacity];
+        Arrays.fill(offsets, EMPTY);
+        mask = capacity - 1;
+    }
+
+    private static int mix(int h) {
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        return h ^ (h >>> 16);
+    }
+
+    public void add(ChannelKey key, long delta) {
+        int hash = mix(key.hashCode());
+        int slot = hash & mask;
+        while (offsets[slot] != EMPTY) {
+            if (hashes[slot] == hash && keyEquals(offsets[slot], key)) {
+                counts[slot] += delta;
+                return;
+            }
+            slot = (slot + 1) & mask;
+        }
+        offsets[slot] = appendKey(key);
+        hashes[slot] = hash;
+        counts[slot] = delta;
+        size++;
+        if (2 * size > offsets.length) rehash();
+    }
+
+    private boolean keyEquals(int offset, ChannelKey key) {
+        if (slab[offset] != key.getChannel() || readLength(offset) != key.getLength()) return false;
+        byte[] bytes = key.getBytes();
+        int start = offset + ENTRY_HEADER;
+        for (int i = 0; i < key.getLength(); i++) {
+            if (slab[start + i] != bytes[i]) return false;
+        }
+        return true;
+    }
+
+    private int appendKey(ChannelKey key) {
+        int needed = slabUsed + ENTRY_HEADER + key.getLength();
+        if (needed > slab.length) {
+            // Grow by doubling, but do not overshoot the budget by more than the key itself
+            long grown = Math.min(2L * slab.length, Math.max(budgetBytes, slab.length));
+            slab = Arrays.copyOf(slab, (int) Math.min(Integer.MAX_VALUE - 8, Math.max(needed, grown)));
+        }
+        int offset = slabUsed;
+        slab[offset] = key.getChannel();
+        int len = key.getLength();
+        slab[offset + 1] = (byte) (len >>> 24);
+        slab[offset + 2] = (byte) (len >>> 16);
+        slab[offset + 3] = (byte) (len >>> 8);
+        slab[offset + 4] = (byte) len;
+        System.arraycopy(key.getBytes(), 0, slab, offset + ENTRY_HEADER, len);
+        slabUsed = needed;
+        return offset;
+    }
+
+    private int readLength(int offset) {
+        return ((slab[offset + 1] & 0xFF) << 24) | ((slab[offset + 2] & 0xFF) << 16)
+                | ((slab[offset + 3] & 0xFF) << 8) | (slab[offset + 4] & 0xFF);
+    }
+
+    private void rehash() {
+        int[] oldOffsets = offsets;
+        int[] oldHashes = hashes;
+        long[] oldCounts = counts;
+        allocateSlots(2 * oldOffsets.length);
+        for (int i = 0; i < oldOffsets.length; i++) {
+            if (oldOffsets[i] == EMPTY) continue;
+            int slot = oldHashes[i] & mask;
+            while (offsets[slot] != EMPTY) slot = (slot + 1) & mask;
+            offsets[slot] = oldOffsets[i];
+            hashes[slot] = oldHashes[i];
+            counts[slot] = oldCounts[i];
+        }
+    }
+
+    /** Returns the first used slot at or after the given one, or -1 if there is none. */
+    public int next(int slot) {
+        for (int i = slot; i < offsets.length; i++) {
+            if (offsets[i] != EMPTY) return i;
+        }
+        return -1;
+    }
+
+    /** Returns the used slots ordered like their keys, see ChannelKey.compareTo(). */
+    public int[] sortedSlots() {
+        Integer[] slots = new Integer[size];
+        int n = 0;
+        for (int slot = next(0); slot >= 0; slot = next(slot + 1)) slots[n++] = slot;
+        Arrays.sort(slots, (a, b) -> {
+            int offsetA = offsets[a];
+            int offsetB = offsets[b];
+            if (slab[offsetA] != slab[offsetB]) return slab[offsetA] - slab[offsetB];
+            return WritableComparator.compareBytes(slab, offsetA + ENTRY_HEADER, readLength(offsetA),
+                    slab, offsetB + ENTRY_HEADER, readLength(offsetB));
+        });
+        int[] sorted = new int[size];
+        for (int i = 0; i < size; i++) sorted[i] = slots[i];
+        return sorted;
+    }
+
+    public void readKey(int slot, ChannelKey key) {
+        int offset = offsets[slot];
+        key.set(slab[offset], slab, offset + ENTRY_HEADER, readLength(offset));
+    }
+
+    public long getCount(int slot) {
+        return counts[slot];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /** Approximate heap used by the stored entries. */
+    public long getUsedBytes() {
+        return (long) slabUsed + 2L * BYTES_PER_SLOT * size;
+    }
+
+    public boolean isFull() {
+        return getUsedBytes() >= budgetBytes;
+    }
+
+    /** Removes all entries but keeps the allocated arrays for the next round. */
+    public void clear() {
+        Arrays.fill(offsets, EMPTY);
+        slabUsed = 0;
+        size = 0;
+    }
+}
@@ -0,0 +1,108 @@
+package de.uhh.lt.lefex.Utils;
+
+import org.apache.log4j.Logger;
+import org.apache.uima.analysis_component.AnalysisComponent;
+import org.apache.uima.analysis_engine.AnalysisEngine;
+import org.apache.uima.cas.CASException;
+import org.apache.uima.fit.factory.AnalysisEngineFactory;
+import org.apache.uima.jcas.JCas;
+import org.apache.uima.resource.ResourceInitializationException;
+import org.apache.uima.util.CasCreationUtils;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+import static org.apache.uima.fit.factory.TypeSystemDescriptionFactory.createTypeSystemDescription;
+
+/**
+ * Process-wide pool of analysis engines and CASes. Creating an engine loads its models, which takes seconds and
+ * much memory; when several map tasks run one after another in the same JVM (local mode, the LocalRunner, tests),
+ * a task takes the engines that the previous task returned instead of loading the models again.
+ *
+ * Engines are not thread-safe, so every mapper, or every thread of a MultithreadedMapper, has its own instances:
+ * acquire() hands out an idle engine of the same class and parameters or creates a new one, release() returns it
+ * in cleanup() and discard() drops it from the pool. The engines are created one after another, as loading the
+ * models is not thread-safe. With holing.engines.shared=false the engines are created for each mapper and not
+ * returned.
+ */
+public class EnginePool {
+    public static final String SHARED = "holing.engines.shared";
+
+    private static final Logger log = Logger.getLogger("de.uhh.lt.lefex");
+    private static final String CAS_KEY = "JCas";
+    private static final Map<String, ArrayDeque<Object>> idle = new HashMap<>();
+    private static final Map<Object, String> keys = new IdentityHashMap<>();
+    private static int created;
+    private static int reused;
+
+    private EnginePool() { }
+
+    /**
+     * Returns an engine of the class with the parameters, see AnalysisEngineFactory.createEngine().
+     * */
+    public static AnalysisEngine acquire(boolean shared, Class<? extends AnalysisComponent> engineClass,
+                                         Object... parameters) throws ResourceInitializationException {
+        StringBuilder key = new StringBuilder(engineClass.getName());
+        for (Object parameter : parameters) key.append('\t').append(parameter);
+        synchronized (EnginePool.class) {
+            AnalysisEngine engine = shared ? (AnalysisEngine) poll(key.toString()) : null;
+            if (engine != null) return engine;
+            engine = AnalysisEngineFactory.createEngine(engineClass, parameters);
+            created++;
+            if (shared) keys.put(engine, key.toString());
+            return engine;
+        }
+    }
+
+    /**
+     * Returns an empty CAS with the type system of all types on the class path.
+     * */
+    public static JCas acquireJCas(boolean shared) throws ResourceInitializationException, CASException {
+        synchronized (EnginePool.class) {
+            JCas jCas = shared ? (JCas) poll(CAS_KEY) : null;
+            if (jCas != null) return jCas;
+            jCas = CasCreationUtils.createCas(createTypeSystemDescription(), null, null).getJCas();
+            if (shared) keys.put(jCas, CAS_KEY);
+            return jCas;
+        }
+    }
+
+    private static Object poll(String key) {
+        ArrayDeque<Object> instances = idle.get(key);
+        Object instance = instances == null ? null : instances.poll();
+        if (instance != null) reused++;
+        return instance;
+    }
+
+    /**
+     * Returns engines and CASes to the pool. Nulls and instances that do not come from the pool are ignored.
+     * */
+    public static void release(Object... instances) {
+        synchronized (EnginePool.class) {
+            for (Object instance : instances) {
+                String key = instance == null ? null : keys.get(instance);
+                if (key == null) continue;
+                ArrayDeque<Object> pooled = idle.computeIfAbsent(key, k -> new ArrayDeque<>());
+                if (pooled.contains(instance)) continue; // released twice
+                if (instance instanceof JCas) ((JCas) instance).reset();
+                pooled.push(instance);
+            }
+            log.info("Engine pool: " + created + " engines created, " + reused + " instances reused");
+        }
+    }
+
+    /**
+     * Forgets engines and CASes that must not be handed out again, e.g. those that a thread abandoned by
+     * RecordWatchdog may still use, so that they are garbage collected once nothing uses them any more. Releasing
+     * them later has no effect.
+     * */
+    public static void discard(Object... instances) {
+        synchronized (EnginePool.class) {
+            for (Object instance : instances) {
+                String key = instance == null ? null : keys.remove(instance);
+                if (key != null && idle.containsKey(key)) idle.get(key).remove(instance);
+            }
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package de.uhh.lt.lefex.Utils;
+
+import org.apache.uima.analysis_engine.AnalysisEngine;
+import org.apache.uima.fit.component.NoOpAnnotator;
+import org.apache.uima.jcas.JCas;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class EnginePoolTest {
+
+    @Test
+    public void releasedEnginesAreReused() throws Exception {
+        AnalysisEngine first = EnginePool.acquire(true, NoOpAnnotator.class);
+        AnalysisEngine second = EnginePool.acquire(true, NoOpAnnotator.class);
+        assertNotSame("An engine must not be handed out twice.", first, second);
+        EnginePool.release(first, second, null);
+        AnalysisEngine reused = EnginePool.acquire(true, NoOpAnnotator.class);
+        assertTrue(reused == first || reused == second);
+        EnginePool.release(reused);
+    }
+
+    @Test
+    public void unsharedEnginesAreNotPooled() throws Exception {
+        AnalysisEngine engine = EnginePool.acquire(false, NoOpAnnotator.class);
+        EnginePool.release(engine);
+        AnalysisEngine other = EnginePool.acquire(false, NoOpAnnotator.class);
+        assertNotSame(engine, other);
+    }
+
+    @Test
+    public void discardedEnginesAreNotReused() throws Exception {
+        AnalysisEngine engine = EnginePool.acquire(true, NoOpAnnotator.class);
+        JCas jCas = EnginePool.acquireJCas(true);
+        EnginePool.discard(engine, jCas, null);
+        EnginePool.release(engine, jCas);
+        AnalysisEngine other = EnginePool.acquire(true, NoOpAnnotator.class);
+        JCas otherJCas = EnginePool.acquireJCas(true);
+        assertNotSame(engine, other);
+        assertNotSame(jCas, otherJCas);
+        EnginePool.release(other, otherJCas);
+    }
+
+    @Test
+    public void releasedCasesAreEmpty() throws Exception {
+        JCas jCas = EnginePool.acquireJCas(true);
+        jCas.setDocumentText("Some text.");
+        EnginePool.release(jCas);
+        JCas reused = EnginePool.acquireJCas(true);
+        assertSame(jCas, reused);
+        assertNull(reused.getDocumentText());
+        EnginePool.release(reused);
+    }
+}
@@ -0,0 +1,315 @@
+package de.uhh.lt.lefex.Utils;
+
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.DataInputBuffer;
+import org.apache.hadoop.io.DataOutputBuffer;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.WritableComparator;
+import org.apache.hadoop.io.WritableUtils;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Binary container for the "key<TAB>count" outputs of the counting jobs. The entries are stored in blocks of about
+ * fc.block_size bytes. Within a block each key is front-coded against the previous key and all numbers are varints,
+ * and a block can be deflated as a whole. An index with the offset, the number of entries and the first key of
+ * each block is written at the end of the file, so a file can be split at block boundaries and, if its keys are
+ * sorted, searched with a binary search over the blocks.
+ *
+ * Layout: blocks, index, trailer. A block is [vint raw length][vint stored length][stored bytes], the raw bytes
+ * are entries [vint shared prefix][vint suffix length][suffix][vlong count]. The index has one entry
+ * [vlong offset][vint entries][vint first key length][first key] per block. The trailer has a fixed size:
+ * [long index offset][long entries][int blocks][int flags][MAGIC].
+ */
+public class FrontCodedFile {
+    public static final String EXTENSION = ".fc";
+    public static final String BLOCK_SIZE = "fc.block_size";
+    public static final int DEFAULT_BLOCK_SIZE = 64 * 1024;
+
+    static final byte[] MAGIC = "LFXFC1".getBytes(StandardCharsets.US_ASCII);
+    static final int TRAILER_SIZE = 8 + 8 + 4 + 4 + MAGIC.length;
+    static final int FLAG_SORTED = 1;
+    static final int FLAG_DEFLATE = 2;
+
+    public static class Writer implements Closeable {
+        private final FSDataOutputStream out;
+        private final int blockSize;
+        private final boolean deflate;
+        private final DataOutputBuffer block = new DataOutputBuffer();
+        private final DataOutputBuffer index = new DataOutputBuffer();
+        private final Deflater deflater;
+        private byte[] stored = new byte[0];
+        private byte[] previous = new byte[64];
+        private int previousLength;
+        private int blockEntries;
+        private long entries;
+        private int blocks;
+        private boolean sorted = true;
+
+        public Writer(FSDataOutputStream out, int blockSize, boolean deflate) {
+            this.out = out;
+            this.blockSize = blockSize;
+            this.deflate = deflate;
+            this.deflater = deflate ? new Deflater(Deflater.DEFAULT_COMPRESSION) : null;
+        }
+
+        /** Appends an entry. Keys should come in ascending byte order, otherwise the file is marked as unsorted. */
+        public void append(byte[] key, int length, long count) throws IOException {
+            int shared = 0;
+            if (blockEntries > 0) {
+                int max = Math.min(length, previousLength);
+                while (shared < max && key[shared] == previous[shared]) shared++;
+            }
+            if (entries > 0 && WritableComparator.compareBytes(previous, 0, previousLength, key, 0, length) > 0) {
+                sorted = false;
+            }
+            if (blockEntries == 0) {
+                WritableUtils.writeVLong(index, out.getPos());
+                WritableUtils.writeVInt(index, length);
+                index.write(key, 0, length);
+            }
+            WritableUtils.writeVInt(block, shared);
+            WritableUtils.writeVInt(block, length - shared);
+            block.write(key, shared, length - shared);
+            WritableUtils.writeVLong(block, count);
+            blockEntries++;
+            entries++;
+
+            if (length > previous.length) previous = Arrays.copyOf(previous, Math.max(length, 2 * previous.length));
+            System.arraycopy(key, shared, previous, shared, length - shared);
+            previousLength = length;
+            if (block.getLength() >= blockSize) flushBlock();
+        }
+
+        public void append(Text key, long count) throws IOException {
+            append(key.getBytes(), key.getLength(), count);
+        }
+
+        private void flushBlock() throws IOException {
+            if (blockEntries == 0) return;
+            int storedLength = block.getLength();
+            byte[] storedBytes = block.getData();
+            if (deflate) {
+                deflater.reset();
+                deflater.setInput(block.getData(), 0, block.getLength());
+                deflater.finish();
+                storedLength = 0;
+                while (!deflater.finished()) {
+                    if (storedLength == stored.length) stored = Arrays.copyOf(stored, Math.max(4096, 2 * stored.length));
+                    storedLength += deflater.deflate(stored, storedLength, stored.length - storedLength);
+                }
+                storedBytes = stored;
+            }
+            WritableUtils.writeVInt(out, block.getLength());
+            WritableUtils.writeVInt(out, storedLength);
+            out.write(storedBytes, 0, storedLength);
+            // the index entry was started with the offset of the block, it ends with the number of entries
+            WritableUtils.writeVInt(index, blockEntries);
+            block.reset();
+            blockEntries = 0;
+            blocks++;
+        }
+
+        @Override
+        public void close() throws IOException {
+            flushBlock();
+            long indexOffset = out.getPos();
+            writeIndex();
+            out.writeLong(indexOffset);
+            out.writeLong(entries);
+            out.writeInt(blocks);
+            out.writeInt((sorted ? FLAG_SORTED : 0) | (deflate ? FLAG_DEFLATE : 0));
+            out.write(MAGIC);
+            out.close();
+            if (deflater != null) deflater.end();
+        }
+
+        /** Rewrites the collected index as [offset][entries][first key] per block. */
+        private void writeIndex() throws IOException {
+            DataInputBuffer in = new DataInputBuffer();
+            in.reset(index.getData(), index.getLength());
+            byte[] firstKey = new byte[64];
+            for (int i = 0; i < blocks; i++) {
+                long offset = WritableUtils.readVLong(in);
+                int length = WritableUtils.readVInt(in);
+                if (length > firstKey.length) firstKey = new byte[length];
+                in.readFully(firstKey, 0, length);
+                int numEntries = WritableUtils.readVInt(in);
+                WritableUtils.writeVLong(out, offset);
+                WritableUtils.writeVInt(out, numEntries);
+                WritableUtils.writeVInt(out, length);
+                out.write(firstKey, 0, length);
+            }
+        }
+    }
+
+    /**
+     * Reads the entries of a range of blocks in file order, or looks up single keys of a sorted file.
+     */
+    public static class Reader implements Closeable {
+        private final FSDataInputStream in;
+        private final long[] blockOffsets;
+        private final int[] blockEntries;
+        private final byte[][] firstKeys;
+        private final long entries;
+        private final boolean sorted;
+        private final boolean deflate;
+        private final Inflater inflater;
+        private byte[] stored = new byte[0];
+        private byte[] raw = new byte[0];
+        private final DataInputBuffer rawIn = new DataInputBuffer();
+        private byte[] key = new byte[64];
+        private int keyLength;
+        private int currentBlock = -1;
+        private int remainingInBlock;
+        private int endBlock;
+        private int nextBlock;
+
+        public Reader(FileSystem fs, Path path) throws IOException {
+            long fileLength = fs.getFileStatus(path).getLen();
+            in = fs.open(path);
+            in.seek(fileLength - TRAILER_SIZE);
+            long indexOffset = in.readLong();
+            entries = in.readLong();
+            int blocks = in.readInt();
+            int flags = in.readInt();
+            byte[] magic = new byte[MAGIC.length];
+            in.readFully(magic);
+            if (!Arrays.equals(magic, MAGIC)) throw new IOException("Not a front-coded file: " + path);
+            sorted = (flags & FLAG_SORTED) != 0;
+            deflate = (flags & FLAG_DEFLATE) != 0;
+            inflater = deflate ? new Inflater() : null;
+
+            in.seek(indexOffset);
+            blockOffsets = new long[blocks];
+            blockEntries = new int[blocks];
+            firstKeys = new byte[blocks][];
+            for (int i = 0; i < blocks; i++) {
+                blockOffsets[i] = WritableUtils.readVLong(in);
+                blockEntries[i] = WritableUtils.readVInt(in);
+                firstKeys[i] = new byte[WritableUtils.readVInt(in)];
+                in.readFully(firstKeys[i]);
+            }
+            setRange(0, blocks);
+        }
+
+        public int getNumBlocks() {
+            return blockOffsets.length;
+        }
+
+        public long getBlockOffset(int block) {
+            return blockOffsets[block];
+        }
+
+        public int getBlockEntries(int block) {
+            return blockEntries[block];
+        }
+
+        public long getNumEntries() {
+            return entries;
+        }
+
+        public boolean isSorted() {
+            return sorted;
+        }
+
+        /** Makes next() return the entries of the blocks from startBlock (inclusive) to endBlock (exclusive). */
+        public void setRange(int startBlock, int endBlock) {
+            this.nextBlock = startBlock;
+            this.endBlock = endBlock;
+            this.remainingInBlock = 0;
+        }
+
+        /** Returns the index of the block that next() reads from. */
+        public int getCurrentBlock() {
+            return currentBlock;
+        }
+
+        public boolean next(Text outKey, LongWritable outCount) throws IOException {
+            while (remainingInBlock == 0) {
+                if (nextBlock >= endBlock) return false;
+                readBlock(nextBlock++);
+            }
+            int shared = WritableUtils.readVInt(rawIn);
+            int suffix = WritableUtils.readVInt(rawIn);
+            if (shared + suffix > key.length) key = Arrays.copyOf(key, Math.max(shared + suffix, 2 * key.length));
+            rawIn.readFully(key, shared, suffix);
+            keyLength = shared + suffix;
+            outCount.set(WritableUtils.readVLong(rawIn));
+            outKey.set(key, 0, keyLength);
+            remainingInBlock--;
+            return true;
+        }
+
+        private void readBlock(int block) throws IOException {
+            in.seek(blockOffsets[block]);
+            int rawLength = WritableUtils.readVInt(in);
+            int storedLength = WritableUtils.readVInt(in);
+            if (raw.length < rawLength) raw = new byte[rawLength];
+            if (deflate) {
+                if (stored.length < storedLength) stored = new byte[storedLength];
+                in.readFully(stored, 0, storedLength);
+                inflater.reset();
+                inflater.setInput(stored, 0, storedLength);
+                try {
+                    if (inflater.inflate(raw, 0, rawLength) != rawLength) throw new IOException("Truncated block " + block);
+                } catch (DataFormatException e) {
+                    throw new IOException("Corrupt block " + block, e);
+                }
+            } else {
+                in.readFully(raw, 0, rawLength);
+            }
+            rawIn.reset(raw, rawLength);
+            keyLength = 0;
+            currentBlock = block;
+            remainingInBlock = blockEntries[block];
+        }
+
+        /**
+         * Returns the count of the key or -1 if the file does not contain it. Only works for sorted files.
+         * */
+        public long get(Text searchKey) throws IOException {
+            if (!sorted) throw new IllegalStateException("Binary search needs a sorted file");
+            byte[] bytes = searchKey.getBytes();
+            int length = searchKey.getLength();
+            int low = 0;
+            int high = firstKeys.length - 1;
+            int block = -1; // last block whose first key is <= the search key
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                if (WritableComparator.compareBytes(firstKeys[mid], 0, firstKeys[mid].length, bytes, 0, length) <= 0) {
+                    block = mid;
+                    low = mid + 1;
+                } else {
+                    high = mid - 1;
+                }
+            }
+            if (block < 0) return -1;
+
+            setRange(block, block + 1);
+            Text entryKey = new Text();
+            LongWritable count = new LongWritable();
+            while (next(entryKey, count)) {
+                int cmp = WritableComparator.compareBytes(entryKey.getBytes(), 0, entryKey.getLength(), bytes, 0, length);
+                if (cmp == 0) return count.get();
+                if (cmp > 0) break;
+            }
+            return -1;
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+            if (inflater != null) inflater.end();
+        }
+    }
+}
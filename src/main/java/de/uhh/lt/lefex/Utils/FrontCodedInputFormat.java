@@ -0,0 +1,76 @@
+package de.uhh.lt.lefex.Utils;
+
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapreduce.InputSplit;
+import org.apache.hadoop.mapreduce.RecordReader;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
+import org.apache.hadoop.mapreduce.lib.input.FileSplit;
+import java.io.IOException;
+
+/**
+ * Reads FrontCodedFile outputs as (key, count) records. The files are split at arbitrary offsets, a split reads
+ * the blocks that start in it.
+ */
+public class FrontCodedInputFormat extends FileInputFormat<Text, LongWritable> {
+    @Override
+    public RecordReader<Text, LongWritable> createRecordReader(InputSplit split, TaskAttemptContext context) {
+        return new FrontCodedRecordReader();
+    }
+
+    public static class FrontCodedRecordReader extends RecordReader<Text, LongWritable> {
+        private FrontCodedFile.Reader reader;
+        private int startBlock;
+        private int endBlock;
+        private final Text key = new Text();
+        private final LongWritable count = new LongWritable();
+
+        @Override
+        public void initialize(InputSplit genericSplit, TaskAttemptContext context) throws IOException {
+            FileSplit split = (FileSplit) genericSplit;
+            Path file = split.getPath();
+            reader = new FrontCodedFile.Reader(file.getFileSystem(context.getConfiguration()), file);
+            long start = split.getStart();
+            long end = start + split.getLength();
+            startBlock = reader.getNumBlocks();
+            endBlock = 0;
+            for (int i = 0; i < reader.getNumBlocks(); i++) {
+                long offset = reader.getBlockOffset(i);
+                if (offset >= start && offset < end) {
+                    startBlock = Math.min(startBlock, i);
+                    endBlock = i + 1;
+                }
+            }
+            if (endBlock < startBlock) endBlock = startBlock;
+            reader.setRange(startBlock, endBlock);
+        }
+
+        @Override
+        public boolean nextKeyValue() throws IOException {
+            return reader.next(key, count);
+        }
+
+        @Override
+        public Text getCurrentKey() {
+            return key;
+        }
+
+        @Override
+        public LongWritable getCurrentValue() {
+            return count;
+        }
+
+        @Override
+        public float getProgress() {
+            if (endBlock == startBlock) return 1.0f;
+            return Math.max(0, reader.getCurrentBlock() - startBlock) / (float) (endBlock - startBlock);
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (reader != null) reader.close();
+        }
+    }
+}
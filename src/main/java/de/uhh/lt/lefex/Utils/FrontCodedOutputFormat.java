@@ -0,0 +1,35 @@
+package de.uhh.lt.lefex.Utils;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapreduce.RecordWriter;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
+import java.io.IOException;
+
+/**
+ * Writes "key<TAB>count" outputs as FrontCodedFile. If output compression is enabled, the blocks are deflated.
+ */
+public class FrontCodedOutputFormat extends FileOutputFormat<Text, LongWritable> {
+    @Override
+    public RecordWriter<Text, LongWritable> getRecordWriter(TaskAttemptContext context) throws IOException {
+        Configuration conf = context.getConfiguration();
+        Path file = getDefaultWorkFile(context, FrontCodedFile.EXTENSION);
+        final FrontCodedFile.Writer writer = new FrontCodedFile.Writer(file.getFileSystem(conf).create(file, false),
+                conf.getInt(FrontCodedFile.BLOCK_SIZE, FrontCodedFile.DEFAULT_BLOCK_SIZE), getCompressOutput(context));
+
+        return new RecordWriter<Text, LongWritable>() {
+            @Override
+            public void write(Text key, LongWritable count) throws IOException {
+                writer.append(key, count.get());
+            }
+
+            @Override
+            public void close(TaskAttemptContext context) throws IOException {
+                writer.close();
+            }
+        };
+    }
+}
@@ -0,0 +1,63 @@
+package de.uhh.lt.lefex.Utils;
+
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapreduce.InputSplit;
+import org.apache.hadoop.mapreduce.RecordReader;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
+import java.io.IOException;
+
+/**
+ * Reads FrontCodedFile outputs as the "key<TAB>count" lines that TextOutputFormat would have written, so that jobs
+ * reading the text outputs with TextInputFormat can read both. The record keys are running entry numbers.
+ */
+public class FrontCodedTextInputFormat extends FileInputFormat<LongWritable, Text> {
+    private static final byte[] TAB = {'\t'};
+
+    @Override
+    public RecordReader<LongWritable, Text> createRecordReader(InputSplit split, TaskAttemptContext context) {
+        return new RecordReader<LongWritable, Text>() {
+            private final FrontCodedInputFormat.FrontCodedRecordReader entries = new FrontCodedInputFormat.FrontCodedRecordReader();
+            private final LongWritable number = new LongWritable(-1);
+            private final Text line = new Text();
+
+            @Override
+            public void initialize(InputSplit split, TaskAttemptContext context) throws IOException {
+                entries.initialize(split, context);
+            }
+
+            @Override
+            public boolean nextKeyValue() throws IOException {
+                if (!entries.nextKeyValue()) return false;
+                Text key = entries.getCurrentKey();
+                line.set(key.getBytes(), 0, key.getLength());
+                line.append(TAB, 0, 1);
+                byte[] count = Long.toString(entries.getCurrentValue().get()).getBytes();
+                line.append(count, 0, count.length);
+                number.set(number.get() + 1);
+                return true;
+            }
+
+            @Override
+            public LongWritable getCurrentKey() {
+                return number;
+            }
+
+            @Override
+            public Text getCurrentValue() {
+                return line;
+            }
+
+            @Override
+            public float getProgress() {
+                return entries.getProgress();
+            }
+
+            @Override
+            public void close() throws IOException {
+                entries.close();
+            }
+        };
+    }
+}
@@ -0,0 +1,194 @@
+package de.uhh.lt.lefex.Utils;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.compress.CompressionCodec;
+import org.apache.hadoop.io.compress.CompressionCodecFactory;
+import org.apache.hadoop.io.compress.GzipCodec;
+import org.apache.hadoop.mapreduce.MRJobConfig;
+import org.apache.hadoop.util.LineReader;
+import org.apache.hadoop.util.ReflectionUtils;
+import org.apache.hadoop.util.StringUtils;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.TreeMap;
+
+/**
+ * Keys of the counting job that are so frequent that their reducer lags behind the others, e.g. the features of
+ * "the" or the word "the#DT". With holing.skew=true, SaltingPartitioner sends the map outputs of a hot key
+ * round-robin to holing.skew.fanout reducers, each reducer writes its partial sum of the key to the side output
+ * Salted-r-* ("channel<TAB>key<TAB>count") and mergeSalted() adds them up into one extra file per channel,
+ * <Channel>-r-hot, after the job. Every key is still in exactly one output file of its channel.
+ *
+ * The list is a file with "channel<TAB>key" lines, e.g. "W<TAB>the#DT", either configured or found by
+ * findInSample() in the counts of a sample of the input.
+ */
+public class HotKeys {
+    public static final String CACHE_NAME = "hot_keys";
+    public static final String SALTED_OUTPUT = "Salted";
+    public static final String FILE_SUFFIX = "-r-hot";
+
+    private final HashSet<ChannelKey> keys = new HashSet<>();
+
+    public boolean contains(ChannelKey key) {
+        return keys.contains(key);
+    }
+
+    public int size() {
+        return keys.size();
+    }
+
+    public static HotKeys load(File file) throws IOException {
+        HotKeys hotKeys = new HotKeys();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                int tab = line.indexOf('\t');
+                if (tab <= 0) continue;
+                ChannelKey key = new ChannelKey();
+                key.set(ChannelKey.getChannel(line.substring(0, tab)), line.substring(tab + 1));
+                hotKeys.keys.add(key);
+            }
+        }
+        return hotKeys;
+    }
+
+    /**
+     * Returns the hot keys of a task from the cache file of the job, or null if the job has none.
+     * */
+    public static HotKeys fromCache(Configuration conf) throws IOException {
+        String[] cacheFiles = conf.getStrings(MRJobConfig.CACHE_FILES);
+        File file = cacheFiles == null ? null : Resources.getCacheFile(StringUtils.stringToURI(cacheFiles), CACHE_NAME);
+        return file == null ? null : load(file);
+    }
+
+    /**
+     * Writes the numKeys keys with the highest counts in all "key<TAB>count" outputs of countsDir to keysPath.
+     * Returns the number of keys written. Of the two orders of a CoocWF pair only the one that is shuffled is
+     * counted, the reducer writes the other one without receiving it (see MultiOutputLongSumReducer.mirror()).
+     * */
+    public static int findInSample(Configuration conf, Path countsDir, int numKeys, Path keysPath) throws IOException {
+        FileSystem fs = countsDir.getFileSystem(conf);
+        PriorityQueue<Map.Entry<String, Long>> top = new PriorityQueue<>(numKeys + 1, Map.Entry.comparingByValue());
+        for (byte channel = ChannelKey.W; channel <= ChannelKey.COOC_WF; channel++) {
+            String name = ChannelKey.getName(channel);
+            FileStatus[] files = fs.globStatus(new Path(countsDir, name + "-r-*"));
+            if (files == null) continue;
+            for (FileStatus file : files) {
+                boolean coocPairs = channel == ChannelKey.COOC_WF;
+                readCounts(conf, file.getPath(), (key, count) -> {
+                    if (top.size() == numKeys && count <= top.peek().getValue()) return;
+                    if (coocPairs && !isShuffledPair(key)) return;
+                    top.add(new AbstractMap.SimpleEntry<>(name + "\t" + key, count));
+                    if (top.size() > numKeys) top.poll();
+                });
+            }
+        }
+        int size = top.size();
+        try (FSDataOutputStream out = fs.create(keysPath, true)) {
+            while (!top.isEmpty()) out.write((top.poll().getKey() + "\n").getBytes(StandardCharsets.UTF_8));
+        }
+        return size;
+    }
+
+    private interface CountConsumer {
+        void accept(String key, long count) throws IOException;
+    }
+
+    /** Reads the "key<TAB>count" lines of a possibly compressed text file. */
+    private static void readCounts(Configuration conf, Path path, CountConsumer consumer) throws IOException {
+        InputStream stream = path.getFileSystem(conf).open(path);
+        CompressionCodec codec = new CompressionCodecFactory(conf).getCodec(path);
+        if (codec != null) stream = codec.createInputStream(stream);
+        Text line = new Text();
+        try (InputStream in = stream) {
+            LineReader reader = new LineReader(in);
+            while (reader.readLine(line) > 0) {
+                String str = line.toString();
+                int tab = str.lastIndexOf('\t');
+                if (tab >= 0) consumer.accept(str.substring(0, tab), Long.parseLong(str.substring(tab + 1)));
+            }
+        }
+    }
+
+    /**
+     * CoocCounter emits the pairs "a<TAB>b" with a <= b, as CountsMergeMap expects.
+     * */
+    static boolean isShuffledPair(String pair) {
+        int tab = pair.indexOf('\t');
+        return tab < 0 || pair.substring(0, tab).compareTo(pair.substring(tab + 1)) <= 0;
+    }
+
+    /**
+     * Adds up the partial sums in the Salted-r-* files of outDir, writes them sorted to <Channel>-r-hot in the
+     * output format of the job and deletes the Salted-r-* files. Returns the number of merged keys.
+     * */
+    public static int mergeSalted(Configuration conf, Path outDir, boolean compress, boolean frontCoded) throws IOException {
+        FileSystem fs = outDir.getFileSystem(conf);
+        FileStatus[] files = fs.globStatus(new Path(outDir, SALTED_OUTPUT + "-r-*"));
+        if (files == null) return 0;
+
+        TreeMap<Byte, TreeMap<Text, Long>> sums = new TreeMap<>();
+        for (FileStatus file : files) {
+            readCounts(conf, file.getPath(), (key, count) -> {
+                int tab = key.indexOf('\t');
+                byte channel = ChannelKey.getChannel(key.substring(0, tab));
+                sums.computeIfAbsent(channel, c -> new TreeMap<>()).merge(new Text(key.substring(tab + 1)), count, Long::sum);
+            });
+        }
+
+        int numKeys = 0;
+        ChannelKey channelKey = new ChannelKey();
+        for (Map.Entry<Byte, TreeMap<Text, Long>> channelSums : sums.entrySet()) {
+            byte channel = channelSums.getKey();
+            TreeMap<Text, Long> counts = channelSums.getValue();
+            numKeys += counts.size();
+            if (channel == ChannelKey.COOC_WF) {
+                // as in MultiOutputLongSumReducer, both orders of a pair are written
+                for (Map.Entry<Text, Long> entry : new TreeMap<>(counts).entrySet()) {
+                    Text mirrored = new Text();
+                    channelKey.set(channel, entry.getKey().getBytes(), 0, entry.getKey().getLength());
+                    if (MultiOutputLongSumReducer.mirror(channelKey, mirrored)) counts.put(mirrored, entry.getValue());
+                }
+            }
+            writeCounts(conf, new Path(outDir, ChannelKey.getName(channel) + FILE_SUFFIX), counts, compress, frontCoded);
+        }
+        for (FileStatus file : files) fs.delete(file.getPath(), false);
+        return numKeys;
+    }
+
+    private static void writeCounts(Configuration conf, Path path, TreeMap<Text, Long> counts, boolean compress,
+                                    boolean frontCoded) throws IOException {
+        FileSystem fs = path.getFileSystem(conf);
+        if (frontCoded) {
+            try (FrontCodedFile.Writer writer = new FrontCodedFile.Writer(fs.create(path.suffix(FrontCodedFile.EXTENSION), true),
+                    conf.getInt(FrontCodedFile.BLOCK_SIZE, FrontCodedFile.DEFAULT_BLOCK_SIZE), compress)) {
+                for (Map.Entry<Text, Long> entry : counts.entrySet()) writer.append(entry.getKey(), entry.getValue());
+            }
+            return;
+        }
+        CompressionCodec codec = compress ? ReflectionUtils.newInstance(GzipCodec.class, conf) : null;
+        OutputStream stream = fs.create(codec == null ? path : path.suffix(codec.getDefaultExtension()), true);
+        if (codec != null) stream = codec.createOutputStream(stream);
+        try (OutputStream out = stream) {
+            for (Map.Entry<Text, Long> entry : counts.entrySet()) {
+                out.write(entry.getKey().getBytes(), 0, entry.getKey().getLength());
+                out.write(("\t" + entry.getValue() + "\n").getBytes(StandardCharsets.UTF_8));
+            }
+        }
+    }
+}
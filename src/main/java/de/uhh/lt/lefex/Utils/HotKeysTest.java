@@ -0,0 +1,32 @@
+package de.uhh.lt.lefex.Utils;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.junit.Test;
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class HotKeysTest {
+
+    @Test
+    public void sampleKeepsOnlyShuffledCoocPairs() throws Exception {
+        File dir = Files.createTempDirectory("hot-keys").toFile();
+        FileUtils.writeLines(new File(dir, "W-r-00000"), Arrays.asList("a\t5", "b\t1"));
+        // the reducer writes "b<TAB>a" next to "a<TAB>b" without receiving it
+        FileUtils.writeLines(new File(dir, "CoocWF-r-00000"), Arrays.asList("a\tb\t9", "b\ta\t9", "c\tc\t7"));
+
+        File keysFile = new File(dir, "keys");
+        int numKeys = HotKeys.findInSample(new Configuration(), new Path(dir.getAbsolutePath()), 3,
+                new Path(keysFile.getAbsolutePath()));
+        assertEquals(3, numKeys);
+        List<String> keys = FileUtils.readLines(keysFile, "UTF-8");
+        keys.sort(null);
+        assertEquals(Arrays.asList("CoocWF\ta\tb", "CoocWF\tc\tc", "W\ta"), keys);
+        FileUtils.deleteDirectory(dir);
+    }
+}
@@ -0,0 +1,116 @@
+package de.uhh.lt.lefex.Utils;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Task-local counters of a mapper. Looking up a Hadoop counter for every token is costly, so the mappers get
+ * their counters once in setup() and increment plain long fields; the values are added to the Hadoop counters
+ * every metrics.publish_every records and at the end of the task. Besides plain counters there are timers that
+ * sum up the nanoseconds spent in each NLP stage and a histogram of the holing time of the sentences by sentence
+ * length in tokens. The engines annotate whole records, so their time per sentence is not known and only the time
+ * after them is in the histogram: the holing, or the writing of the CoNLL lines in the CoNLL job.
+ *
+ * Time the stages of a record like this:
+ * long t = System.nanoTime(); segmenter.process(jCas); t = segmenterTime.stop(t); parser.process(jCas); t = parserTime.stop(t);
+ */
+public class MapperMetrics {
+    public static final String TIME_GROUP = "de.uhh.lt.lefex.StageNanos";
+    public static final String HOLING_LATENCY_GROUP = "de.uhh.lt.lefex.SentenceHolingLatency";
+    private static final int[] TOKEN_BUCKETS = {5, 10, 20, 40, 80}; // upper bounds, the last bucket is open
+
+    private final List<Counter> counters = new ArrayList<>();
+    private final Counter[] sentences = new Counter[TOKEN_BUCKETS.length + 1];
+    private final Counter[] sentenceNanos = new Counter[TOKEN_BUCKETS.length + 1];
+    private final int publishEvery;
+    private int unpublishedRecords;
+
+    public static class Counter {
+        final String group;
+        final String name;
+        long value;
+
+        Counter(String group, String name) {
+            this.group = group;
+            this.name = name;
+        }
+
+        public void increment(long delta) {
+            value += delta;
+        }
+    }
+
+    public static class Timer extends Counter {
+        Timer(String stage) {
+            super(TIME_GROUP, stage);
+        }
+
+        /** Adds the time since start and returns the current time, which is the start of the next stage. */
+        public long stop(long start) {
+            long now = System.nanoTime();
+            value += now - start;
+            return now;
+        }
+    }
+
+    public MapperMetrics(Configuration conf) {
+        publishEvery = conf.getInt("metrics.publish_every", 1000);
+        for (int i = 0; i <= TOKEN_BUCKETS.length; i++) {
+            String bucket = i < TOKEN_BUCKETS.length ? "TOKENS_LE_" + TOKEN_BUCKETS[i] : "TOKENS_GT_" + TOKEN_BUCKETS[i - 1];
+            sentences[i] = counter(HOLING_LATENCY_GROUP, "SENTENCES_" + bucket);
+            sentenceNanos[i] = counter(HOLING_LATENCY_GROUP, "NANOS_" + bucket);
+        }
+    }
+
+    public Counter counter(String group, String name) {
+        for (Counter counter : counters) {
+            if (counter.group.equals(group) && counter.name.equals(name)) return counter;
+        }
+        Counter counter = new Counter(group, name);
+        counters.add(counter);
+        return counter;
+    }
+
+    public Timer timer(String stage) {
+        Timer timer = new Timer(stage);
+        counters.add(timer);
+        return timer;
+    }
+
+    /** Adds the holing time of a sentence with the given number of tokens to the histogram. */
+    public void sentenceHoling(int tokens, long nanos) {
+        int bucket = 0;
+        while (bucket < TOKEN_BUCKETS.length && tokens > TOKEN_BUCKETS[bucket]) bucket++;
+        sentences[bucket].value++;
+        sentenceNanos[bucket].value += nanos;
+    }
+
+    /**
+     * Adds the values of other to the counters and timers of the same name and resets them, e.g. the metrics of
+     * an analysis that ran in another thread.
+     * */
+    public void add(MapperMetrics other) {
+        for (Counter counter : other.counters) {
+            if (counter.value == 0) continue;
+            counter(counter.group, counter.name).value += counter.value;
+            counter.value = 0;
+        }
+    }
+
+    /** Counts a processed record and publishes the counters every metrics.publish_every records. */
+    public void record(TaskAttemptContext context) {
+        if (++unpublishedRecords >= publishEvery) publish(context);
+    }
+
+    /** Adds the local values to the Hadoop counters and resets them. Call it in cleanup(). */
+    public void publish(TaskAttemptContext context) {
+        for (Counter counter : counters) {
+            if (counter.value == 0) continue;
+            context.getCounter(counter.group, counter.name).increment(counter.value);
+            counter.value = 0;
+        }
+        unpublishedRecords = 0;
+    }
+}
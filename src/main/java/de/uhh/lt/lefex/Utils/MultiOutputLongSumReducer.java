@@ -0,0 +1,74 @@
+package de.uhh.lt.lefex.Utils;
+
+import java.io.IOException;
+
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.VLongWritable;
+import org.apache.hadoop.io.WritableComparator;
+import org.apache.hadoop.mapreduce.Reducer;
+import org.apache.hadoop.mapreduce.lib.output.MultipleOutputs;
+
+public class MultiOutputLongSumReducer extends Reducer<ChannelKey, VLongWritable, Text, LongWritable> {
+	private static final byte[] TAB = {'\t'};
+	private MultipleOutputs<Text, LongWritable> mos;
+	private final Text outKey = new Text();
+	private final Text mirroredKey = new Text();
+	private final LongWritable outValue = new LongWritable();
+	private HotKeys hotKeys;
+	
+	@Override
+	public void setup(Context context) throws IOException {
+		mos = new MultipleOutputs<Text, LongWritable>(context);
+		hotKeys = HotKeys.fromCache(context.getConfiguration());
+	}
+	
+	@Override
+	public void cleanup(Context context) throws IOException, InterruptedException {
+		mos.close();
+	}
+
+	@Override
+	public void reduce(ChannelKey key, Iterable<VLongWritable> values, Context context)
+			throws IOException, InterruptedException {
+		// key is for example channel WF with payload "word<TAB>feature" or channel W with payload "word"
+		long sum = 0;
+		for(VLongWritable i : values) {
+			sum += i.get();
+		}
+		outValue.set(sum);
+		if (hotKeys != null && hotKeys.contains(key)) {
+			// a partial sum, the key was salted over several reducers (see HotKeys)
+			outKey.set(key.getChannelName());
+			outKey.append(TAB, 0, 1);
+			outKey.append(key.getBytes(), 0, key.getLength());
+			mos.write(HotKeys.SALTED_OUTPUT, outKey, outValue);
+			return;
+		}
+		outKey.set(key.getBytes(), 0, key.getLength());
+		mos.write(key.getChannelName(), outKey, outValue);
+		if (key.getChannel() == ChannelKey.COOC_WF && mirror(key, mirroredKey)) {
+			mos.write(key.getChannelName(), mirroredKey, outValue);
+		}
+	}
+
+	/**
+	 * Co-occurrences are emitted once per unordered pair "a<TAB>b". Sets mirroredKey to "b<TAB>a" and returns
+	 * true, unless a and b are the same word. The mirrored key is written right after the pair, in the file of the
+	 * reducer of the pair, so it does not go through the shuffle: the CoocWF files of the reducers are not sorted and
+	 * the lines "b<TAB>a" are not in the file that the partitioner would pick for them.
+	 */
+	public static boolean mirror(ChannelKey key, Text mirroredKey) {
+		byte[] bytes = key.getBytes();
+		int length = key.getLength();
+		int tab = 0;
+		while (tab < length && bytes[tab] != '\t') tab++;
+		int secondLength = length - tab - 1;
+		if (tab == length || (tab == secondLength &&
+				WritableComparator.compareBytes(bytes, 0, tab, bytes, tab + 1, secondLength) == 0)) return false;
+		mirroredKey.set(bytes, tab + 1, secondLength);
+		mirroredKey.append(bytes, tab, 1);
+		mirroredKey.append(bytes, 0, tab);
+		return true;
+	}
+}
@@ -0,0 +1,152 @@
+package de.uhh.lt.lefex.Utils;
+
+import org.apache.hadoop.io.NullWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapreduce.InputSplit;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.MRJobConfig;
+import org.apache.hadoop.mapreduce.MapContext;
+import org.apache.hadoop.mapreduce.lib.input.FileSplit;
+import org.apache.hadoop.mapreduce.lib.map.MultithreadedMapper;
+import org.apache.hadoop.mapreduce.lib.output.MultipleOutputs;
+import org.apache.hadoop.mapreduce.lib.output.TextOutputFormat;
+import org.apache.log4j.Logger;
+import java.io.IOException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Budgets of a mapper for a single input record, so that one pathological record (a huge document, a sentence the
+ * parser is stuck on) does not run into the task timeout and make the whole split run again:
+ * - a record longer than holing.record.max_bytes is not processed at all,
+ * - the analysis of a record by the engines runs in a worker thread and is abandoned after
+ *   holing.record.timeout_ms milliseconds.
+ * Both budgets are off (0) by default. A skipped record is counted (NUM_SKIPPED_RECORDS_BY_SIZE,
+ * NUM_SKIPPED_RECORDS_BY_TIME) and written as "file<TAB>offset<TAB>bytes<TAB>reason" to the side output
+ * <output>/_skipped/SkippedRecords-m-* of the job, see addSkippedOutput(), or logged if the job has none. Like
+ * _SUCCESS, the directory is ignored by the jobs that read the output as their input.
+ *
+ * The engines cannot be interrupted: the worker of an abandoned record runs on until the engine returns. It may
+ * still use the engines, the CAS and the metrics it was given, so the mapper continues with new ones and drops
+ * the old ones from the EnginePool with discard(); they are garbage collected when the worker is done.
+ */
+public class RecordWatchdog {
+    public static final String TIMEOUT = "holing.record.timeout_ms";
+    public static final String MAX_BYTES = "holing.record.max_bytes";
+    public static final String SKIPPED_OUTPUT = "SkippedRecords";
+    public static final String SKIPPED_DIR = "_skipped";
+
+    private static final String SKIPPED_OUTPUT_ENABLED = "holing.record.skipped_output";
+    private static final long PROGRESS_INTERVAL_MS = 10000;
+    private static final AtomicInteger numWatchdogs = new AtomicInteger();
+    private static final Logger log = Logger.getLogger("de.uhh.lt.lefex");
+
+    private final MapContext<?, ?, ?, ?> context;
+    private final String counterGroup;
+    private final long timeoutMs;
+    private final long maxBytes;
+    private final String skippedPath; // base name of the side output, one per mapper of a MultithreadedMapper
+    private MultipleOutputs<?, ?> skippedOutput; // opened with the first skipped record
+    private ExecutorService worker;
+
+    public RecordWatchdog(MapContext<?, ?, ?, ?> context, String counterGroup) {
+        this.context = context;
+        this.counterGroup = counterGroup;
+        timeoutMs = context.getConfiguration().getLong(TIMEOUT, 0);
+        maxBytes = context.getConfiguration().getLong(MAX_BYTES, 0);
+        boolean multithreaded = MultithreadedMapper.class.getName().equals(context.getConfiguration().get(MRJobConfig.MAP_CLASS_ATTR));
+        skippedPath = SKIPPED_DIR + "/" + SKIPPED_OUTPUT + (multithreaded ? "-" + numWatchdogs.incrementAndGet() : "");
+    }
+
+    /**
+     * Adds the side output of the skipped records to a job whose mappers use a RecordWatchdog.
+     * */
+    public static void addSkippedOutput(Job job) {
+        MultipleOutputs.addNamedOutput(job, SKIPPED_OUTPUT, TextOutputFormat.class, Text.class, NullWritable.class);
+        job.getConfiguration().setBoolean(SKIPPED_OUTPUT_ENABLED, true);
+    }
+
+    public long getTimeoutMs() {
+        return timeoutMs;
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    /**
+     * Returns true and skips the record if it is longer than holing.record.max_bytes.
+     * */
+    public boolean skipBySize(long offset, int bytes) throws IOException, InterruptedException {
+        if (maxBytes <= 0 || bytes <= maxBytes) return false;
+        skip(offset, bytes, "SIZE");
+        return true;
+    }
+
+    /**
+     * Runs the analysis of a record and returns its result, which must not be null. If the analysis takes longer
+     * than holing.record.timeout_ms, its worker thread is abandoned, the record is skipped and null is returned:
+     * the caller must not use the engines and the CAS of the analysis any more. Exceptions of the analysis are
+     * thrown as they are.
+     * */
+    public <T> T call(Callable<T> analysis, long offset, int bytes) throws Exception {
+        if (timeoutMs <= 0) return analysis.call();
+        if (worker == null) {
+            worker = Executors.newSingleThreadExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "record-worker");
+                thread.setDaemon(true); // a stuck engine must not keep the task from exiting
+                return thread;
+            });
+        }
+        Future<T> future = worker.submit(analysis);
+        long deadline = System.currentTimeMillis() + timeoutMs;
+        while (true) {
+            long remaining = deadline - System.currentTimeMillis();
+            try {
+                return future.get(Math.max(0, Math.min(remaining, PROGRESS_INTERVAL_MS)), TimeUnit.MILLISECONDS);
+            } catch (TimeoutException e) {
+                if (remaining > PROGRESS_INTERVAL_MS) {
+                    context.progress(); // a budget above the task timeout must not fail the task
+                    continue;
+                }
+                future.cancel(true);
+                worker.shutdownNow();
+                worker = null;
+                skip(offset, bytes, "TIME");
+                return null;
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof Error) throw (Error) e.getCause();
+                throw (Exception) e.getCause();
+            }
+        }
+    }
+
+    private void skip(long offset, int bytes, String reason) throws IOException, InterruptedException {
+        context.getCounter(counterGroup, "NUM_SKIPPED_RECORDS_BY_" + reason).increment(1);
+        InputSplit split = context.getInputSplit();
+        String file = split instanceof FileSplit ? ((FileSplit) split).getPath().toString() : String.valueOf(split);
+        String line = file + "\t" + offset + "\t" + bytes + "\t" + reason.toLowerCase();
+        if (!context.getConfiguration().getBoolean(SKIPPED_OUTPUT_ENABLED, false)) {
+            log.warn("Skipped record: " + line);
+            return;
+        }
+        if (skippedOutput == null) skippedOutput = new MultipleOutputs<>(context);
+        skippedOutput.write(SKIPPED_OUTPUT, new Text(line), NullWritable.get(), skippedPath);
+    }
+
+    /**
+     * Closes the side output and stops the worker thread, call it in cleanup().
+     * */
+    public void close() throws IOException, InterruptedException {
+        if (worker != null) worker.shutdownNow();
+        worker = null;
+        if (skippedOutput != null) skippedOutput.close();
+        skippedOutput = null;
+    }
+}
@@ -0,0 +1,95 @@
+package de.uhh.lt.lefex.Utils;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.mapreduce.Counter;
+import org.apache.hadoop.mapreduce.Counters;
+import org.apache.hadoop.mapreduce.StatusReporter;
+import org.apache.hadoop.mapreduce.TaskAttemptID;
+import org.apache.hadoop.mapreduce.lib.input.FileSplit;
+import org.apache.hadoop.mapreduce.task.MapContextImpl;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class RecordWatchdogTest {
+
+    private static class CountingReporter extends StatusReporter {
+        final Counters counters = new Counters();
+
+        @Override
+        public Counter getCounter(Enum<?> name) {
+            return counters.findCounter(name);
+        }
+
+        @Override
+        public Counter getCounter(String group, String name) {
+            return counters.findCounter(group, name);
+        }
+
+        @Override
+        public void progress() { }
+
+        @Override
+        public float getProgress() {
+            return 0;
+        }
+
+        @Override
+        public void setStatus(String status) { }
+    }
+
+    private static RecordWatchdog createWatchdog(Configuration conf, StatusReporter reporter) {
+        FileSplit split = new FileSplit(new Path("file:///corpus.txt"), 0, 1000, null);
+        return new RecordWatchdog(new MapContextImpl<>(conf, new TaskAttemptID(), null, null, null, reporter, split), "test");
+    }
+
+    @Test
+    public void slowRecordsAreAbandoned() throws Exception {
+        Configuration conf = new Configuration();
+        conf.setLong(RecordWatchdog.TIMEOUT, 100);
+        CountingReporter reporter = new CountingReporter();
+        RecordWatchdog watchdog = createWatchdog(conf, reporter);
+
+        long start = System.currentTimeMillis();
+        Boolean result = watchdog.call(() -> {
+            Thread.sleep(60000);
+            return true;
+        }, 42, 10);
+        assertNull(result);
+        assertTrue("The record was not abandoned in time.", System.currentTimeMillis() - start < 10000);
+        assertEquals(1, reporter.getCounter("test", "NUM_SKIPPED_RECORDS_BY_TIME").getValue());
+
+        // the next record runs in a new worker
+        assertEquals("fast", watchdog.call(() -> "fast", 52, 10));
+        assertEquals(1, reporter.getCounter("test", "NUM_SKIPPED_RECORDS_BY_TIME").getValue());
+        watchdog.close();
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void exceptionsOfTheAnalysisAreThrown() throws Exception {
+        Configuration conf = new Configuration();
+        conf.setLong(RecordWatchdog.TIMEOUT, 10000);
+        RecordWatchdog watchdog = createWatchdog(conf, new CountingReporter());
+        try {
+            watchdog.call(() -> {
+                throw new IllegalStateException("analysis failed");
+            }, 0, 10);
+        } finally {
+            watchdog.close();
+        }
+    }
+
+    @Test
+    public void recordsWithinTheBudgetAreKept() throws Exception {
+        Configuration conf = new Configuration();
+        conf.setLong(RecordWatchdog.MAX_BYTES, 100);
+        CountingReporter reporter = new CountingReporter();
+        RecordWatchdog watchdog = createWatchdog(conf, reporter);
+        assertFalse(watchdog.skipBySize(0, 100));
+        assertTrue(watchdog.skipBySize(100, 101));
+        assertEquals(1, reporter.getCounter("test", "NUM_SKIPPED_RECORDS_BY_SIZE").getValue());
+        assertEquals("run", watchdog.call(() -> "run", 0, 100)); // no time budget: runs in the calling thread
+        watchdog.close();
+    }
+}
@@ -6,6 +6,7 @@ import org.apache.hadoop.fs.Path;
 import java.io.BufferedReader;
 import java.io.File;
 import java.io.InputStreamReader;
+import java.net.URI;
 import java.util.HashSet;
 
 public class Resources{
@@ -16,6 +17,21 @@ public class Resources{
         return file.getAbsolutePath();
     }
 
+    /**
+     * Returns the local copy of the cache file that was added with the given #name fragment, or null if the job
+     * has no such cache file. Outside of a Hadoop task there is no local copy and a local file is returned as is.
+     * */
+    public static File getCacheFile(URI[] cacheFiles, String name) {
+        if (cacheFiles == null) return null;
+        for (URI uri : cacheFiles) {
+            if (!name.equals(uri.getFragment())) continue;
+            File local = new File(name);
+            boolean localScheme = uri.getScheme() == null || uri.getScheme().equals("file");
+            return !local.exists() && localScheme ? new File(uri.getPath()) : local;
+        }
+        return null;
+    }
+
     public static HashSet<String> loadVoc(String mwePath) {
         HashSet<String> voc = new HashSet<>();
         try {
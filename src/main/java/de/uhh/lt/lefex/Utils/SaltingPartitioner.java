@@ -0,0 +1,45 @@
+package de.uhh.lt.lefex.Utils;
+
+import org.apache.hadoop.conf.Configurable;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.VLongWritable;
+import org.apache.hadoop.mapreduce.Partitioner;
+import java.io.IOException;
+
+/**
+ * Hash partitioner that spreads the map outputs of the HotKeys of the job round-robin over holing.skew.fanout
+ * consecutive partitions (all partitions by default), starting at the hash partition of the key. The other keys
+ * are partitioned like by the HashPartitioner.
+ */
+public class SaltingPartitioner extends Partitioner<ChannelKey, VLongWritable> implements Configurable {
+    public static final String FANOUT = "holing.skew.fanout";
+
+    private Configuration conf;
+    private HotKeys hotKeys;
+    private int fanout;
+    private int salt;
+
+    @Override
+    public void setConf(Configuration conf) {
+        this.conf = conf;
+        try {
+            hotKeys = HotKeys.fromCache(conf);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        fanout = conf.getInt(FANOUT, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public Configuration getConf() {
+        return conf;
+    }
+
+    @Override
+    public int getPartition(ChannelKey key, VLongWritable value, int numPartitions) {
+        int partition = (key.hashCode() & Integer.MAX_VALUE) % numPartitions;
+        if (hotKeys == null || !hotKeys.contains(key)) return partition;
+        salt = (salt + 1) % Math.min(fanout, numPartitions);
+        return (partition + salt) % numPartitions;
+    }
+}
@@ -0,0 +1,193 @@
+package de.uhh.lt.lefex.Utils;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.compress.CompressionCodec;
+import org.apache.hadoop.io.compress.CompressionCodecFactory;
+import org.apache.hadoop.mapreduce.InputSplit;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.JobContext;
+import org.apache.hadoop.mapreduce.RecordReader;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
+import org.apache.hadoop.mapreduce.lib.input.FileSplit;
+import org.apache.hadoop.util.LineReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Text input that reads only a deterministic sample of the lines. Uncompressed files are cut into chunks of
+ * sample.chunk_size bytes and a chunk is read only if a hash of the seed, the file name and the chunk index selects
+ * it, so the other chunks are skipped with a seek and never read. As the chunks are aligned to file offsets and
+ * not to splits, the sample does not depend on the split layout. Compressed files can not be seeked: all their
+ * lines are decompressed, but only the lines selected by a hash of their offset are passed to the mapper.
+ */
+public class SampledTextInputFormat extends FileInputFormat<LongWritable, Text> {
+    public static final String FRACTION = "sample.fraction";
+    public static final String SEED = "sample.seed";
+    public static final String CHUNK_SIZE = "sample.chunk_size";
+
+    /**
+     * Makes the job read a sample of its input if sample.fraction is below 1.
+     * */
+    public static boolean configure(Job job) {
+        float fraction = job.getConfiguration().getFloat(FRACTION, 1.0f);
+        if (fraction >= 1.0f) return false;
+        System.out.println("Sampled fraction of the input: " + fraction);
+        job.setInputFormatClass(SampledTextInputFormat.class);
+        return true;
+    }
+
+    /**
+     * Returns true if the unit (a chunk or a line offset) of the file belongs to the sample.
+     * */
+    static boolean isSelected(long seed, String fileName, long unit, double fraction) {
+        long h = seed ^ (fileName.hashCode() * 0x9E3779B97F4A7C15L) ^ (unit * 0xC2B2AE3D27D4EB4FL);
+        h = (h ^ (h >>> 30)) * 0xBF58476D1CE4E5B9L;
+        h = (h ^ (h >>> 27)) * 0x94D049BB133111EBL;
+        h = h ^ (h >>> 31);
+        return (h >>> 11) * 0x1.0p-53 < fraction;
+    }
+
+    @Override
+    public RecordReader<LongWritable, Text> createRecordReader(InputSplit split, TaskAttemptContext context) {
+        return new SampledLineRecordReader();
+    }
+
+    @Override
+    protected boolean isSplitable(JobContext context, Path file) {
+        return new CompressionCodecFactory(context.getConfiguration()).getCodec(file) == null;
+    }
+
+    public static class SampledLineRecordReader extends RecordReader<LongWritable, Text> {
+        private Configuration conf;
+        private TaskAttemptContext context;
+        private double fraction;
+        private long seed;
+        private long chunkSize;
+        private byte[] delimiter;
+        private String fileName;
+        private FSDataInputStream fileIn;
+        private LineReader in;
+        private boolean compressed;
+        private long start;
+        private long end;
+        private long nextSegmentStart;
+        private long segmentEnd;
+        private long pos;
+        private final LongWritable key = new LongWritable();
+        private final Text value = new Text();
+
+        @Override
+        public void initialize(InputSplit genericSplit, TaskAttemptContext context) throws IOException {
+            FileSplit split = (FileSplit) genericSplit;
+            this.context = context;
+            conf = context.getConfiguration();
+            fraction = conf.getFloat(FRACTION, 1.0f);
+            seed = conf.getLong(SEED, 42);
+            chunkSize = conf.getLong(CHUNK_SIZE, 1024 * 1024);
+            String delimiterStr = conf.get("textinputformat.record.delimiter");
+            if (delimiterStr != null) delimiter = delimiterStr.getBytes(StandardCharsets.UTF_8);
+
+            start = split.getStart();
+            end = start + split.getLength();
+            Path file = split.getPath();
+            fileName = file.getName();
+            FileSystem fs = file.getFileSystem(conf);
+            fileIn = fs.open(file);
+
+            CompressionCodec codec = new CompressionCodecFactory(conf).getCodec(file);
+            compressed = codec != null;
+            if (compressed) {
+                in = newLineReader(codec.createInputStream(fileIn));
+                pos = 0;
+            } else {
+                nextSegmentStart = start;
+                segmentEnd = -1;
+                pos = start;
+            }
+        }
+
+        private LineReader newLineReader(java.io.InputStream stream) throws IOException {
+            return delimiter == null ? new LineReader(stream, conf) : new LineReader(stream, conf, delimiter);
+        }
+
+        @Override
+        public boolean nextKeyValue() throws IOException {
+            if (compressed) {
+                while (true) {
+                    long lineStart = pos;
+                    int n = in.readLine(value);
+                    if (n == 0) return false;
+                    pos += n;
+                    if (isSelected(seed, fileName, lineStart, fraction)) {
+                        key.set(lineStart);
+                        return true;
+                    }
+                }
+            }
+
+            while (true) {
+                if (in != null && pos <= segmentEnd) {
+                    key.set(pos);
+                    int n = in.readLine(value);
+                    if (n == 0) return false; // end of file
+                    pos += n;
+                    return true;
+                }
+                if (!nextSegment()) return false;
+            }
+        }
+
+        /**
+         * Seeks to the next selected part of the split that lies in one chunk. Like in LineRecordReader, a segment
+         * [a, b) owns the lines that start in (a, b], or in [0, b] for the first segment of the file.
+         * */
+        private boolean nextSegment() throws IOException {
+            while (nextSegmentStart < end) {
+                long segmentStart = nextSegmentStart;
+                long chunk = segmentStart / chunkSize;
+                nextSegmentStart = Math.min((chunk + 1) * chunkSize, end);
+                if (!isSelected(seed, fileName, chunk, fraction)) {
+                    context.getCounter("de.uhh.lt.lefex", "SAMPLING_SKIPPED_BYTES").increment(nextSegmentStart - segmentStart);
+                    continue;
+                }
+                fileIn.seek(segmentStart); // the previous line reader is dropped, closing it would close fileIn
+                in = newLineReader(fileIn);
+                pos = segmentStart;
+                if (segmentStart != 0) pos += in.readLine(new Text()); // the first line belongs to the previous segment
+                segmentEnd = nextSegmentStart;
+                context.getCounter("de.uhh.lt.lefex", "SAMPLING_READ_SEGMENTS").increment(1);
+                return true;
+            }
+            return false;
+        }
+
+        @Override
+        public LongWritable getCurrentKey() {
+            return key;
+        }
+
+        @Override
+        public Text getCurrentValue() {
+            return value;
+        }
+
+        @Override
+        public float getProgress() throws IOException {
+            if (start == end) return 0.0f;
+            long position = compressed ? fileIn.getPos() : Math.min(Math.max(pos, start), end);
+            return Math.min(1.0f, (position - start) / (float) (end - start));
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (compressed) in.close();
+            else if (fileIn != null) fileIn.close();
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package de.uhh.lt.lefex.Utils;
+
+import de.tudarmstadt.ukp.dkpro.core.api.segmentation.type.Sentence;
+import de.tudarmstadt.ukp.dkpro.core.api.segmentation.type.Token;
+import org.apache.uima.fit.util.JCasUtil;
+import org.apache.uima.jcas.JCas;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Removes sentences with too many tokens from a segmented CAS. The tagger, lemmatizer, NER and parser annotate the
+ * tokens sentence by sentence, so they do not spend any time on the removed sentences. Sentences can also be hidden
+ * from some engines only, e.g. the parser, and restored for the engines after them.
+ */
+public class SentenceFilter {
+    /**
+     * Removes the sentences with more than maxTokens tokens and their tokens from the indexes of the CAS. The number
+     * of removed sentences and tokens is added to the given counters of the mapper.
+     * */
+    public static void removeLongSentences(JCas jCas, int maxTokens, MapperMetrics.Counter numSentences,
+                                           MapperMetrics.Counter numTokens) {
+        List<Sentence> longSentences = new ArrayList<>();
+        List<Token> longTokens = new ArrayList<>();
+        for (Sentence sentence : JCasUtil.select(jCas, Sentence.class)) {
+            List<Token> tokens = JCasUtil.selectCovered(jCas, Token.class, sentence);
+            if (tokens.size() > maxTokens) {
+                longSentences.add(sentence);
+                longTokens.addAll(tokens);
+            }
+        }
+        if (longSentences.isEmpty()) return;
+
+        for (Sentence sentence : longSentences) sentence.removeFromIndexes();
+        for (Token token : longTokens) token.removeFromIndexes();
+        numSentences.increment(longSentences.size());
+        numTokens.increment(longTokens.size());
+    }
+
+    /**
+     * Removes the sentences with more than maxTokens tokens from the indexes of the CAS, but not their tokens, and
+     * returns them. The engines that run until restoreSentences() skip them.
+     * */
+    public static List<Sentence> hideLongSentences(JCas jCas, int maxTokens) {
+        List<Sentence> longSentences = new ArrayList<>();
+        for (Sentence sentence : JCasUtil.select(jCas, Sentence.class)) {
+            if (JCasUtil.selectCovered(jCas, Token.class, sentence).size() > maxTokens) longSentences.add(sentence);
+        }
+        for (Sentence sentence : longSentences) sentence.removeFromIndexes();
+        return longSentences;
+    }
+
+    /**
+     * Adds the sentences returned by hideLongSentences() to the indexes again.
+     * */
+    public static void restoreSentences(List<Sentence> sentences) {
+        for (Sentence sentence : sentences) sentence.addToIndexes();
+    }
+}
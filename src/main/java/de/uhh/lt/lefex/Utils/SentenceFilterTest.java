@@ -0,0 +1,66 @@
+package de.uhh.lt.lefex.Utils;
+
+import de.tudarmstadt.ukp.dkpro.core.api.segmentation.type.Sentence;
+import de.tudarmstadt.ukp.dkpro.core.api.segmentation.type.Token;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.uima.fit.util.JCasUtil;
+import org.apache.uima.jcas.JCas;
+import org.junit.Test;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class SentenceFilterTest {
+
+    /** Adds a sentence of whitespace-separated tokens starting at begin, returns its end. */
+    private static int addSentence(JCas jCas, int begin) {
+        String text = jCas.getDocumentText();
+        int end = text.indexOf('.', begin) + 1;
+        for (int start = begin; start < end; ) {
+            int tokenEnd = text.indexOf(' ', start);
+            if (tokenEnd < 0 || tokenEnd > end) tokenEnd = end;
+            new Token(jCas, start, tokenEnd).addToIndexes();
+            start = tokenEnd + 1;
+        }
+        new Sentence(jCas, begin, end).addToIndexes();
+        return end;
+    }
+
+    @Test
+    public void longSentencesAreRemovedWithTheirTokens() throws Exception {
+        JCas jCas = EnginePool.acquireJCas(false);
+        jCas.setDocumentText("A short one. This sentence is a lot longer. Another short one.");
+        addSentence(jCas, addSentence(jCas, addSentence(jCas, 0) + 1) + 1);
+
+        MapperMetrics metrics = new MapperMetrics(new Configuration());
+        MapperMetrics.Counter numSentences = metrics.counter("test", "NUM_SKIPPED_SENTENCES_BY_SIZE");
+        MapperMetrics.Counter numTokens = metrics.counter("test", "NUM_SKIPPED_TOKENS_BY_SIZE");
+        SentenceFilter.removeLongSentences(jCas, 3, numSentences, numTokens);
+        assertEquals(2, JCasUtil.select(jCas, Sentence.class).size());
+        assertEquals(6, JCasUtil.select(jCas, Token.class).size());
+        for (Token token : JCasUtil.select(jCas, Token.class)) assertFalse(token.getCoveredText().equals("longer."));
+        assertEquals(1, numSentences.value);
+        assertEquals(6, numTokens.value);
+
+        SentenceFilter.removeLongSentences(jCas, 3, numSentences, numTokens);
+        assertEquals(1, numSentences.value);
+        assertEquals(6, numTokens.value);
+    }
+
+    @Test
+    public void hiddenSentencesKeepTheirTokens() throws Exception {
+        JCas jCas = EnginePool.acquireJCas(false);
+        jCas.setDocumentText("A short one. This sentence is a lot longer.");
+        addSentence(jCas, addSentence(jCas, 0) + 1);
+
+        List<Sentence> hidden = SentenceFilter.hideLongSentences(jCas, 3);
+        assertEquals(1, hidden.size());
+        assertEquals("This sentence is a lot longer.", hidden.get(0).getCoveredText());
+        assertEquals(1, JCasUtil.select(jCas, Sentence.class).size());
+        assertEquals(9, JCasUtil.select(jCas, Token.class).size());
+
+        SentenceFilter.restoreSentences(hidden);
+        assertEquals(2, JCasUtil.select(jCas, Sentence.class).size());
+        assertEquals(6, JCasUtil.selectCovered(jCas, Token.class, hidden.get(0)).size());
+    }
+}
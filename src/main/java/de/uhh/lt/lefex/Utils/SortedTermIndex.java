@@ -0,0 +1,58 @@
+package de.uhh.lt.lefex.Utils;
+
+import org.apache.hadoop.io.WritableComparator;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Maps terms to dense integer ids: the UTF-8 bytes of the terms are added in ascending byte order into one slab
+ * and the id of a term is its position in that order. Lookups use binary search on the raw bytes, so encoding
+ * a term does not create any String objects and the index takes little more memory than the terms themselves.
+ */
+public class SortedTermIndex {
+    private byte[] slab = new byte[1 << 16];
+    private int slabUsed;
+    private int[] offsets = new int[1 << 10];
+    private int size;
+
+    /**
+     * Adds the next term, which must be greater than all terms added so far. Returns its id.
+     * */
+    public int add(byte[] utf8, int start, int len) {
+        if (size > 0 && compare(size - 1, utf8, start, len) >= 0) {
+            throw new IllegalArgumentException("Terms must be added in ascending order without duplicates: "
+                    + new String(utf8, start, len, StandardCharsets.UTF_8));
+        }
+        if (slabUsed + len > slab.length) slab = Arrays.copyOf(slab, Math.max(slabUsed + len, 2 * slab.length));
+        if (size + 1 >= offsets.length) offsets = Arrays.copyOf(offsets, 2 * offsets.length);
+        System.arraycopy(utf8, start, slab, slabUsed, len);
+        offsets[size] = slabUsed;
+        slabUsed += len;
+        offsets[size + 1] = slabUsed;
+        return size++;
+    }
+
+    /**
+     * Returns the id of the term or -1 if it is unknown.
+     * */
+    public int find(byte[] utf8, int start, int len) {
+        int low = 0;
+        int high = size - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int cmp = compare(mid, utf8, start, len);
+            if (cmp < 0) low = mid + 1;
+            else if (cmp > 0) high = mid - 1;
+            else return mid;
+        }
+        return -1;
+    }
+
+    private int compare(int id, byte[] utf8, int start, int len) {
+        return WritableComparator.compareBytes(slab, offsets[id], offsets[id + 1] - offsets[id], utf8, start, len);
+    }
+
+    public int size() {
+        return size;
+    }
+}
@@ -0,0 +1,22 @@
+package de.uhh.lt.lefex.Utils;
+
+import org.apache.hadoop.io.VLongWritable;
+import org.apache.hadoop.mapreduce.Reducer;
+import java.io.IOException;
+
+/**
+ * Sums up the counts of a key, the combiner of the counting jobs. The counts are variable-length longs: most
+ * counts in the shuffle are small and take one byte instead of four, and the sums of frequent words and features
+ * do not overflow.
+ */
+public class VLongSumReducer<KEY> extends Reducer<KEY, VLongWritable, KEY, VLongWritable> {
+    private final VLongWritable sum = new VLongWritable();
+
+    @Override
+    public void reduce(KEY key, Iterable<VLongWritable> counts, Context context) throws IOException, InterruptedException {
+        long total = 0;
+        for (VLongWritable count : counts) total += count.get();
+        sum.set(total);
+        context.write(key, sum);
+    }
+}